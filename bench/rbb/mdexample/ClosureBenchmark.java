@@ -0,0 +1,129 @@
+/**
+ * The JMH benchmarks of calculating the dependencies and generating the output of the DependencyEvaluator
+ * for each closure mode, run on graphs from the GraphGenerator.  ParseBenchmark covers the input.
+ *
+ * Each trial generates the rows, loads them and calculates once, and the benchmarks reuse the evaluator,
+ * so only the phase itself is measured.
+ *
+ * Run them with 'ant bench', passing JMH options in bench.args, for example
+ * ant bench -Dbench.args="-p shape=CHAIN -p nodeCount=100000 calculate"
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class ClosureBenchmark {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	@Param({ "CHAIN", "WIDE_TREE", "DENSE_DAG", "HEAVY_CYCLES" })
+	public GraphGenerator.Shape shape;
+
+	// The output grows with the square of the nodes, 2000 nodes of a cyclic shape is already about 20MB.
+	@Param({ "2000" })
+	public int nodeCount;
+
+	@Param({ "4" })
+	public int fanOut;
+
+	@Param({ "20" })
+	public int depth;
+
+	@Param({ "0.01" })
+	public double cycleDensity;
+
+	// The NODES modes are left out, they are far slower and do not finish on some circular references.
+	@Param({ "TRAVERSAL", "BITSET", "PARALLEL", "SORTED", "STREAMING" })
+	public ClosureMode mode;
+
+	// The storage only applies to the bitset modes, compare the storages with -p storage=HEAP,DIRECT,MAPPED.
+	@Param({ "HEAP" })
+	public ClosureStorage storage;
+
+	private List<String> mRows;
+	private DependencyEvaluator mEvaluator;
+
+	@Setup
+	public void setup() {
+		// The evaluator logs each phase at INFO, which would be measured too.
+		LOGGER.setLevel(Level.WARNING);
+		mRows = new GraphGenerator(shape, nodeCount, fanOut, depth, cycleDensity, 1).generate();
+		mEvaluator = new DependencyEvaluator();
+		mEvaluator.setClosureMode(mode);
+		mEvaluator.setStorage(storage);
+		mEvaluator.setInputData(mRows);
+		mEvaluator.calculate();
+	}
+
+	/**
+	 * Free a closure stored off the heap, so the next trial starts with the memory it had.
+	 */
+	@TearDown
+	public void tearDown() {
+		mEvaluator.close();
+	}
+
+	/**
+	 * Calculate the closure of the loaded graph.  The graph itself is built by the first calculate() in setup.
+	 */
+	@Benchmark
+	public DependencyEvaluator calculate() {
+		mEvaluator.calculate();
+		return mEvaluator;
+	}
+
+	@Benchmark
+	public String generateOutput() {
+		return mEvaluator.generateOutput();
+	}
+
+	/**
+	 * Stream the output to a stream that discards it, which measures the output without holding it.
+	 */
+	@Benchmark
+	public long writeOutput() throws IOException {
+		CountingStream output = new CountingStream();
+		mEvaluator.writeOutput(output);
+		return output.mCount;
+	}
+
+	private static class CountingStream extends OutputStream {
+		private long mCount = 0;
+
+		@Override
+		public void write(int b) {
+			mCount++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			mCount += len;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * The GraphGenerator makes synthetic input rows in the 'Key dependency [dependency...]' form for the
+ * benchmarks, so each phase can be measured on graphs of a known size and shape.
+ *
+ * The nodes N0 to N(nodeCount - 1) are spread evenly over depth levels, and the edges run from each level
+ * to the levels below it, so without back edges the graph is acyclic and its longest path is depth - 1 edges.
+ * The shape decides which nodes are the children:
+ * CHAIN         Every node points at the next one and fanOut - 1 others just below it, ignoring depth.
+ * WIDE_TREE     Every node has fanOut children and a single parent, ignoring depth.
+ * DENSE_DAG     Every node on a level above the last has on average fanOut children anywhere below it.
+ * HEAVY_CYCLES  As DENSE_DAG, and the nodes of each level also point at the next node on their level
+ *               in a ring, so every level is one large circular reference.
+ * Each edge then points back up to a random node at or above its parent's level with the probability
+ * cycleDensity, making circular references of random sizes.
+ *
+ * The same parameters and seed always generate the same rows.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GraphGenerator {
+
+	public enum Shape {
+		CHAIN,
+		WIDE_TREE,
+		DENSE_DAG,
+		HEAVY_CYCLES;
+	}
+
+	private final Shape mShape;
+	private final int mNodeCount;
+	private final int mFanOut;
+	private final int mDepth;
+	private final double mCycleDensity;
+	private final long mSeed;
+
+	/**
+	 * Construct the generator.
+	 *
+	 * @param shape         The shape of the graph.
+	 * @param nodeCount     The number of nodes, at least 1.
+	 * @param fanOut        The average number of children of a parent, at least 1.
+	 * @param depth         The number of levels for the DENSE_DAG and HEAVY_CYCLES shapes, at least 1.
+	 * @param cycleDensity  The probability of an edge pointing back up, from 0 to 1.
+	 * @param seed          The seed of the random choices.
+	 */
+	public GraphGenerator(Shape shape, int nodeCount, int fanOut, int depth, double cycleDensity, long seed) {
+		if (nodeCount < 1 || fanOut < 1 || depth < 1) {
+			throw new IllegalArgumentException("Node count, fan out and depth must be at least 1: "
+					+ nodeCount + ", " + fanOut + ", " + depth);
+		}
+		if (cycleDensity < 0 || cycleDensity > 1) {
+			throw new IllegalArgumentException("Cycle density must be from 0 to 1: " + cycleDensity);
+		}
+		mShape = shape;
+		mNodeCount = nodeCount;
+		mFanOut = fanOut;
+		mDepth = Math.min(depth, nodeCount);
+		mCycleDensity = cycleDensity;
+		mSeed = seed;
+	}
+
+	/**
+	 * Generate the rows, one for each node with children.
+	 *
+	 * @return The rows in node order.
+	 */
+	public List<String> generate() {
+		Random random = new Random(mSeed);
+		List<String> rows = new ArrayList<>();
+		StringBuilder row = new StringBuilder();
+		for (int node = 0; node < mNodeCount; node++) {
+			row.setLength(0);
+			row.append('N').append(node);
+			int childCount = 0;
+			int children = childCount(node, random);
+			for (int i = 0; i < children; i++) {
+				int child = child(node, i, random);
+				if (child >= 0) {
+					if (random.nextDouble() < mCycleDensity) {
+						child = random.nextInt(levelEnd(level(node)));
+					}
+					row.append(' ').append('N').append(child);
+					childCount++;
+				}
+			}
+			if (mShape == Shape.HEAVY_CYCLES) {
+				int level = level(node);
+				int next = node + 1 < levelEnd(level) ? node + 1 : levelStart(level);
+				if (next != node) {
+					row.append(' ').append('N').append(next);
+					childCount++;
+				}
+			}
+			if (childCount > 0) {
+				rows.add(row.toString());
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the number of children to generate for the node.
+	 */
+	private int childCount(int node, Random random) {
+		switch (mShape) {
+		case CHAIN:
+		case WIDE_TREE:
+			return mFanOut;
+		default:
+			// From 1 to 2 * fanOut - 1, so the average is fanOut.
+			return level(node) + 1 < mDepth ? 1 + random.nextInt(2 * mFanOut - 1) : 0;
+		}
+	}
+
+	/**
+	 * Returns the i'th child of the node, or -1 if it has none.
+	 */
+	private int child(int node, int i, Random random) {
+		int child;
+		switch (mShape) {
+		case CHAIN:
+			child = i == 0 ? node + 1 : node + 1 + random.nextInt(Math.max(1, 4 * mFanOut));
+			break;
+		case WIDE_TREE:
+			child = (int) Math.min(Integer.MAX_VALUE, (long) node * mFanOut + 1 + i);
+			break;
+		default:
+			int below = levelEnd(level(node));
+			child = below + random.nextInt(mNodeCount - below);
+			break;
+		}
+		return child < mNodeCount ? child : -1;
+	}
+
+	private int level(int node) {
+		return (int) ((long) node * mDepth / mNodeCount);
+	}
+
+	/**
+	 * Returns the first node of the level.
+	 */
+	private int levelStart(int level) {
+		return (int) (((long) level * mNodeCount + mDepth - 1) / mDepth);
+	}
+
+	/**
+	 * Returns the node after the last node of the level.
+	 */
+	private int levelEnd(int level) {
+		return levelStart(level + 1);
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * The JMH benchmarks of parsing the input of the DependencyEvaluator, from rows and from a stream of
+ * bytes, run on graphs from the GraphGenerator.  Each trial generates the rows once.
+ *
+ * Run them with 'ant bench', passing JMH options in bench.args, for example
+ * ant bench -Dbench.args="-p nodeCount=1000000 ParseBenchmark"
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class ParseBenchmark {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	@Param({ "CHAIN", "WIDE_TREE", "DENSE_DAG", "HEAVY_CYCLES" })
+	public GraphGenerator.Shape shape;
+
+	@Param({ "100000" })
+	public int nodeCount;
+
+	@Param({ "4" })
+	public int fanOut;
+
+	@Param({ "20" })
+	public int depth;
+
+	@Param({ "0.01" })
+	public double cycleDensity;
+
+	private List<String> mRows;
+	private byte[] mBytes;
+
+	@Setup
+	public void setup() {
+		// The evaluator logs each phase at INFO, which would be measured too.
+		LOGGER.setLevel(Level.WARNING);
+		mRows = new GraphGenerator(shape, nodeCount, fanOut, depth, cycleDensity, 1).generate();
+		mBytes = String.join("\n", mRows).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parse the rows with setInputData().
+	 */
+	@Benchmark
+	public DependencyEvaluator parseRows() {
+		DependencyEvaluator evaluator = new DependencyEvaluator();
+		evaluator.setInputData(mRows);
+		return evaluator;
+	}
+
+	/**
+	 * Parse the same rows as bytes from a stream.
+	 */
+	@Benchmark
+	public DependencyEvaluator parseStream() throws IOException {
+		DependencyEvaluator evaluator = new DependencyEvaluator();
+		evaluator.addInput(new ByteArrayInputStream(mBytes));
+		return evaluator;
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * A Closure that stores the descendants of each node as a word packed bitset indexed by node id.
+ *
+ * Bit d of node n is set when d is a descendant of n.  Nodes without descendants have a null bitset.
+ * Several nodes may share the same bitset array when their closures are known to be identical.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public class BitSetClosure implements Closure {
+
+	private final long[][] mBits;
+
+	/**
+	 * Construct the closure from the per node bitsets.  The arrays are used directly, not copied.
+	 *
+	 * @param bits  The bitsets indexed by node id, null for nodes without descendants.
+	 */
+	BitSetClosure(long[][] bits) {
+		mBits = bits;
+	}
+
+	/**
+	 * Returns the bitsets indexed by node id, which must not be changed.  Used to save the closure.
+	 */
+	long[][] bits() {
+		return mBits;
+	}
+
+	/**
+	 * Returns the number of words needed for a bitset holding nodeCount bits.
+	 */
+	static int words(int nodeCount) {
+		return (nodeCount + 63) >>> 6;
+	}
+
+	@Override
+	public int size(int node) {
+		long[] bits = mBits[node];
+		int size = 0;
+		if (null != bits) {
+			for (long word : bits) {
+				size += Long.bitCount(word);
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		int[] descendants = new int[size(node)];
+		long[] bits = mBits[node];
+		int count = 0;
+		if (null != bits) {
+			for (int w = 0; w < bits.length; w++) {
+				long word = bits[w];
+				while (word != 0) {
+					descendants[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+		}
+		return descendants;
+	}
+
+	@Override
+	public long memoryBytes() {
+		return SetInterner.memoryBytes(mBits);
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		long[] bits = mBits[node];
+		return null != bits && (bits[descendant >>> 6] & (1L << descendant)) != 0;
+	}
+}
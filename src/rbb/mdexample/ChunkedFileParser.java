@@ -0,0 +1,182 @@
+/**
+ * The ChunkedFileParser parses one input file on several threads.
+ *
+ * The file is split into byte ranges that each end just after a new line, so no row is split between ranges.
+ * Each range is memory mapped and parsed by its own InputParser into its own KeyTable and GraphBuilder.
+ * The partial tables are then merged into the target GraphBuilder in file order, which gives the keys the same
+ * ids a single InputParser would have given them and combines the rows for the same key across ranges the
+ * same way as rows within one range.
+ *
+ * Each range's errors are held back until the number of lines before the range is known, so the reported
+ * line numbers match those of a single InputParser.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ChunkedFileParser {
+
+	// Ranges are at least this big, so small files are not split into pointless pieces.
+	private static final long MIN_CHUNK = 1024 * 1024;
+	// Ranges are at most this big, so each fits in one mapping.
+	private static final long MAX_CHUNK = 1024 * 1024 * 1024;
+	// Split the file into this many ranges per thread to even out the work.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final GraphBuilder mBuilder;
+	private final int mParallelism;
+	private long mMinChunk = MIN_CHUNK;
+	private int mLineNumber = 0;
+	private int mErrorCount = 0;
+
+	/**
+	 * Construct the parser.
+	 *
+	 * @param builder      The builder the rows are added to.
+	 * @param parallelism  The number of threads to parse with.
+	 */
+	public ChunkedFileParser(GraphBuilder builder, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		mBuilder = builder;
+		mParallelism = parallelism;
+	}
+
+	/**
+	 * Set the smallest range worth giving to a thread. Mostly useful for testing with small files.
+	 *
+	 * @param minChunk  The minimum range size in bytes.
+	 */
+	void setMinChunk(long minChunk) {
+		mMinChunk = minChunk;
+	}
+
+	/**
+	 * Returns the number of lines parsed.
+	 * @return
+	 */
+	public int getLineNumber() {
+		return mLineNumber;
+	}
+
+	/**
+	 * Returns the number of rows that were skipped because they were invalid.
+	 * @return
+	 */
+	public int getErrorCount() {
+		return mErrorCount;
+	}
+
+	/**
+	 * Parse all the rows of the file.
+	 *
+	 * @param path  The input file.
+	 * @throws IOException
+	 */
+	public void parseFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			List<Long> boundaries = split(channel);
+			ExecutorService executor = Executors.newFixedThreadPool(mParallelism);
+			try {
+				List<Future<InputParser>> results = new ArrayList<>();
+				for (int i = 0; i + 1 < boundaries.size(); i++) {
+					long start = boundaries.get(i);
+					long end = boundaries.get(i + 1);
+					results.add(executor.submit(() -> parseRange(channel, start, end)));
+				}
+
+				// Merge in file order as each range completes.
+				for (Future<InputParser> result : results) {
+					InputParser parser = result.get();
+					GraphBuilder partial = parser.getBuilder();
+					mBuilder.addAll(partial, mBuilder.getKeys().internAll(partial.getKeys()));
+					parser.reportErrors(mLineNumber);
+					mLineNumber += parser.getLineNumber();
+					mErrorCount += parser.getErrorCount();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted parsing " + path, e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Error parsing " + path, e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Parse the rows in file[start, end) into a new GraphBuilder.
+	 *
+	 * @return The parser, holding the builder, line count and deferred errors for the range.
+	 */
+	private static InputParser parseRange(FileChannel channel, long start, long end) throws IOException {
+		InputParser parser = new InputParser(new GraphBuilder());
+		parser.deferErrors();
+		if (end - start > Integer.MAX_VALUE) {
+			throw new IOException("Line starting at byte " + start + " is longer than " + Integer.MAX_VALUE + " bytes");
+		}
+		parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), true);
+		return parser;
+	}
+
+	/**
+	 * Split the file into ranges that each end just after a new line, or at the end of the file.
+	 *
+	 * @return The start of each range followed by the size of the file.
+	 */
+	private List<Long> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = (size + mParallelism * CHUNKS_PER_THREAD - 1) / (mParallelism * CHUNKS_PER_THREAD);
+		chunkSize = Math.min(MAX_CHUNK, Math.max(mMinChunk, chunkSize));
+
+		List<Long> boundaries = new ArrayList<>();
+		boundaries.add(0L);
+		long boundary = 0;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (boundary + chunkSize < size) {
+			boundary = nextLineStart(channel, boundary + chunkSize, size, buffer);
+			boundaries.add(boundary);
+		}
+		if (boundary < size) {
+			boundaries.add(size);
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Returns the position just after the first new line at or after position, or size if there is none.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * A Closure holds the fully expanded descendants of every node in a DependencyGraph.
+ *
+ * The nodes and descendants are the interned integer ids of the graph the closure was calculated from.
+ * The descendants are not in any particular order; the DependencyEvaluator orders them by key for output.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public interface Closure {
+
+	/**
+	 * Returns the number of descendants of the node.
+	 */
+	int size(int node);
+
+	/**
+	 * Returns a new array holding the descendants of the node.
+	 */
+	int[] descendants(int node);
+
+	/**
+	 * Returns true if descendant is in the closure of the node.
+	 */
+	boolean contains(int node, int descendant);
+
+	/**
+	 * Returns an estimate of the bytes used to hold the descendants, counting shared sets only once.
+	 */
+	long memoryBytes();
+}
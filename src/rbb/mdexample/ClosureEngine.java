@@ -0,0 +1,20 @@
+/**
+ * A ClosureEngine calculates the transitive closure of a DependencyGraph.
+ *
+ * Each engine must produce the same descendants for each node; they differ only in how the
+ * descendants are calculated and stored.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public interface ClosureEngine {
+
+	/**
+	 * Calculate the descendants of every node in the graph.
+	 *
+	 * @param graph  The graph to evaluate.
+	 * @return       The calculated closure.
+	 */
+	Closure calculate(DependencyGraph graph);
+}
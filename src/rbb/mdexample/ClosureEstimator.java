@@ -0,0 +1,319 @@
+/**
+ * The ClosureEstimator estimates the number of descendants of every node, and from them the size of the
+ * output and of the calculated closure, without calculating the closure.
+ *
+ * The graph is condensed, and each component gets a HyperLogLog sketch of the nodes it and its descendants
+ * hold, merged from its successors' sketches in reverse topological order the same way the
+ * BitSetClosureEngine merges bitsets.  A sketch is only 2^precision bytes, whatever the number of nodes,
+ * and is released as soon as the last component that needs it has merged it, so the whole pass takes
+ * O((nodes + edges) * 2^precision) time and much less memory than any closure.
+ *
+ * Each estimate is kept between the largest of its successors' sizes and their sum, and a component with no
+ * successor or a single one is counted exactly, so chains, trees and the leaves of the graph have exact sizes.
+ * The estimates of the other components have a standard error of about 1.04 / sqrt(2^precision).
+ *
+ * recommendMode() uses the estimates to choose the closure mode that fits in the memory available.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+
+public class ClosureEstimator {
+
+	// 64 registers, a standard error of about 13%.
+	public static final int DEFAULT_PRECISION = 6;
+
+	// The approximate size of an array header and of a reference on a 64 bit JVM with compressed references.
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+
+	private final DependencyGraph mGraph;
+	private final Condensation mCondensation;
+	private final int mPrecision;
+	// The estimated number of descendants of each component.
+	private final long[] mSizes;
+
+	/**
+	 * Estimate the closure sizes with the default precision.
+	 *
+	 * @param graph  The graph to estimate.
+	 */
+	public ClosureEstimator(DependencyGraph graph) {
+		this(graph, DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Estimate the closure sizes.
+	 *
+	 * @param graph      The graph to estimate.
+	 * @param precision  The number of index bits of each sketch, from 4 to 16.
+	 */
+	public ClosureEstimator(DependencyGraph graph, int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("Precision must be from 4 to 16: " + precision);
+		}
+		mGraph = graph;
+		mCondensation = new Condensation(graph);
+		mPrecision = precision;
+		mSizes = new long[mCondensation.componentCount()];
+		estimate();
+	}
+
+	/**
+	 * Merge the sketches of the components in reverse topological order.
+	 */
+	private void estimate() {
+		Condensation condensation = mCondensation;
+		int componentCount = condensation.componentCount();
+		int[] successors = condensation.successors();
+		int[] members = condensation.members();
+
+		// The number of components still to merge each sketch, so it can be released after the last.
+		int[] remaining = new int[componentCount];
+		for (int successor : successors) {
+			remaining[successor]++;
+		}
+		// The sketch of the members and descendants of each component, null when it has no successors
+		// and so holds just its members.
+		byte[][] sketches = new byte[componentCount][];
+		// The number of members and descendants of each component, and whether that number is exact.
+		long[] below = new long[componentCount];
+		boolean[] exact = new boolean[componentCount];
+		long nodeCount = mGraph.nodeCount();
+
+		for (int c = 0; c < componentCount; c++) {
+			int successorStart = condensation.successorStart(c);
+			int successorEnd = condensation.successorEnd(c);
+			long memberCount = condensation.memberEnd(c) - condensation.memberStart(c);
+			long largest = 0;
+			long sum = 0;
+			byte[] sketch = null;
+			for (int i = successorStart; i < successorEnd; i++) {
+				int successor = successors[i];
+				largest = Math.max(largest, below[successor]);
+				sum += below[successor];
+				byte[] successorSketch = sketches[successor];
+				if (--remaining[successor] == 0) {
+					sketches[successor] = null;
+				}
+				if (null == sketch && null != successorSketch && remaining[successor] == 0) {
+					// Nothing else needs the successor's sketch, so take it over instead of copying it.
+					sketch = successorSketch;
+					continue;
+				}
+				if (null == sketch) {
+					sketch = new byte[1 << mPrecision];
+				}
+				if (null == successorSketch) {
+					addMembers(sketch, successor, members);
+				} else {
+					for (int r = 0; r < sketch.length; r++) {
+						sketch[r] = (byte) Math.max(sketch[r], successorSketch[r]);
+					}
+				}
+			}
+
+			if (successorEnd - successorStart <= 1 && (successorStart == successorEnd || exact[successors[successorStart]])) {
+				// The successor does not reach this component, so their nodes are distinct.
+				below[c] = memberCount + sum;
+				exact[c] = true;
+			}
+			if (successorStart != successorEnd) {
+				addMembers(sketch, c, members);
+				sketches[c] = sketch;
+				if (!exact[c]) {
+					long estimate = Math.round(count(sketch));
+					below[c] = Math.max(largest + memberCount, Math.min(Math.min(sum + memberCount, nodeCount), estimate));
+				}
+			}
+			// The members of a cyclic component are descendants of themselves, otherwise the single member is not.
+			mSizes[c] = condensation.isCyclic(c) ? below[c] : below[c] - 1;
+		}
+	}
+
+	/**
+	 * Add the members of the component to the sketch.
+	 */
+	private void addMembers(byte[] sketch, int component, int[] members) {
+		for (int m = mCondensation.memberStart(component); m < mCondensation.memberEnd(component); m++) {
+			long hash = mix(members[m]);
+			int register = (int) (hash >>> (64 - mPrecision));
+			int rank = Math.min(Long.numberOfLeadingZeros(hash << mPrecision), 64 - mPrecision) + 1;
+			if (rank > sketch[register]) {
+				sketch[register] = (byte) rank;
+			}
+		}
+	}
+
+	/**
+	 * Returns the HyperLogLog estimate of the number of nodes added to the sketch, using linear counting
+	 * for the small numbers the raw estimate overstates.
+	 */
+	private static double count(byte[] sketch) {
+		int m = sketch.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte rank : sketch) {
+			sum += Math.scalb(1.0, -rank);
+			if (rank == 0) {
+				zeros++;
+			}
+		}
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Spread the node id over all 64 bits, the SplitMix64 finalizer.
+	 */
+	private static long mix(int node) {
+		long hash = (node + 1) * 0x9e3779b97f4a7c15L;
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		return hash ^ (hash >>> 31);
+	}
+
+	/**
+	 * Returns the graph that was estimated.
+	 * @return
+	 */
+	public DependencyGraph getGraph() {
+		return mGraph;
+	}
+
+	/**
+	 * Returns the estimated number of descendants of the node.
+	 */
+	public long estimatedSize(int node) {
+		return mSizes[mCondensation.component(node)];
+	}
+
+	/**
+	 * Returns the estimated number of descendants of all the parent nodes, the number of keys after the
+	 * first on all the lines of the output.
+	 * @return
+	 */
+	public long estimatedTotalSize() {
+		long total = 0;
+		for (int node = 0; node < mGraph.nodeCount(); node++) {
+			if (mGraph.isParent(node)) {
+				total += estimatedSize(node);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the estimated number of UTF-8 bytes of the output, taking each descendant to have the average
+	 * key length.
+	 * @return
+	 */
+	public long estimatedOutputBytes() {
+		KeyTable keys = mGraph.getKeys();
+		int nodeCount = mGraph.nodeCount();
+		long keyBytes = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			keyBytes += keys.keyLength(node);
+		}
+		double averageKey = nodeCount == 0 ? 0 : (double) keyBytes / nodeCount;
+		double bytes = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			if (mGraph.isParent(node)) {
+				// The key, a space and a newline, then a space before each descendant.
+				bytes += keys.keyLength(node) + 2 + estimatedSize(node) * (1 + averageKey);
+			}
+		}
+		return Math.round(bytes);
+	}
+
+	/**
+	 * Returns the estimated bytes of a closure that stores a sorted id list for each node, as the
+	 * TraversalClosureEngine does, before any lists are shared.
+	 * @return
+	 */
+	public long estimatedIdListBytes() {
+		long bytes = ARRAY_HEADER + (long) REFERENCE * mGraph.nodeCount();
+		for (int node = 0; node < mGraph.nodeCount(); node++) {
+			long size = estimatedSize(node);
+			if (size > 0) {
+				bytes += ARRAY_HEADER + Integer.BYTES * size;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of a closure that stores a bitset for each component, as the
+	 * BitSetClosureEngine does, before any bitsets are shared.
+	 * @return
+	 */
+	public long estimatedBitSetBytes() {
+		long bitSet = ARRAY_HEADER + Long.BYTES * (long) BitSetClosure.words(mGraph.nodeCount());
+		long bytes = ARRAY_HEADER + (long) REFERENCE * mGraph.nodeCount();
+		for (long size : mSizes) {
+			if (size > 0) {
+				bytes += bitSet;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the parent nodes with the most descendants, most first and in id order when the same.
+	 *
+	 * @param count  The most nodes to return.
+	 * @return       The node ids.
+	 */
+	public int[] heaviest(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Count must not be negative: " + count);
+		}
+		// Keep the heaviest found so far in order, inserting each heavier node into place.
+		int[] heaviest = new int[count];
+		int found = 0;
+		for (int node = 0; node < mGraph.nodeCount() && count > 0; node++) {
+			if (!mGraph.isParent(node)) {
+				continue;
+			}
+			long size = estimatedSize(node);
+			if (found == count && size <= estimatedSize(heaviest[count - 1])) {
+				continue;
+			}
+			int i = found < count ? found++ : count - 1;
+			while (i > 0 && estimatedSize(heaviest[i - 1]) < size) {
+				heaviest[i] = heaviest[i - 1];
+				i--;
+			}
+			heaviest[i] = node;
+		}
+		return found == count ? heaviest : Arrays.copyOf(heaviest, found);
+	}
+
+	/**
+	 * Returns the closure mode to calculate the output with.  The mode that stores the smaller closure is
+	 * chosen if it fits in the memory, the bitsets of the BITSET or PARALLEL modes for dense closures and the
+	 * id lists of the TRAVERSAL mode for sparse ones.  Otherwise the STREAMING mode searches for each line's
+	 * descendants as it is written, without storing them.
+	 *
+	 * @param memoryBytes  The memory available for the closure.
+	 * @param parallelism  The number of threads available.
+	 * @return             The mode.
+	 */
+	public ClosureMode recommendMode(long memoryBytes, int parallelism) {
+		long idListBytes = estimatedIdListBytes();
+		long bitSetBytes = estimatedBitSetBytes();
+		if (Math.min(idListBytes, bitSetBytes) > memoryBytes) {
+			return ClosureMode.STREAMING;
+		}
+		if (bitSetBytes < idListBytes) {
+			return parallelism > 1 ? ClosureMode.PARALLEL : ClosureMode.BITSET;
+		}
+		return ClosureMode.TRAVERSAL;
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * The ways the DependencyEvaluator can calculate the dependencies.
+ *
+ * NODES           - The original evaluation using a TreeMap of DependencyNodes, each holding TreeSets of keys.
+ * NODES_ITERATIVE - The NODES evaluation using an explicit stack instead of recursion, for very deep dependencies.
+ * TRAVERSAL       - Walk the interned integer graph from each parent node, storing each closure as an id list.
+ * BITSET          - Condense the cycles, then merge word packed bitsets once in reverse topological order.
+ * PARALLEL        - The BITSET evaluation, merging each level of the condensed graph in parallel on a ForkJoinPool.
+ * SORTED          - The BITSET evaluation over ids relabeled in key order, so the output needs no sort per line.
+ * STREAMING       - Search the graph for each line's descendants as it is written, keeping only a bounded cache,
+ *                   for closures too large to store.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public enum ClosureMode {
+	NODES,
+	NODES_ITERATIVE,
+	TRAVERSAL,
+	BITSET,
+	PARALLEL,
+	SORTED,
+	STREAMING;
+
+	/**
+	 * Returns true if the mode evaluates the DependencyNode tree rather than the integer graph.
+	 */
+	public boolean usesNodes() {
+		return this == NODES || this == NODES_ITERATIVE;
+	}
+
+	/**
+	 * Returns true if the mode keeps the descendants of every node once they are calculated, so they can be
+	 * updated incrementally, saved and shared by snapshots.
+	 */
+	public boolean storesClosure() {
+		return !usesNodes() && this != STREAMING;
+	}
+
+	/**
+	 * Returns true if the mode stores the closure as bitsets, which the ClosureStorage can place off the heap.
+	 */
+	public boolean usesBitSets() {
+		return this == BITSET || this == PARALLEL || this == SORTED;
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * A ClosureQuery limits the output of the DependencyEvaluator to part of the closure.
+ *
+ * maxDepth - Only descendants within this many hops of the key are listed, 1 for the direct dependencies.
+ * include  - Only keys that match are listed.  Keys that do not are not searched through either, so
+ *            anything only reachable through them is left out.
+ * exclude  - Keys that match are left out, and not searched through, in the same way.
+ * roots    - Only the lines for these keys are written.  Unknown keys and keys without dependencies are ignored.
+ *
+ * The filters apply to the keys of the lines as well as to their descendants.  A new ClosureQuery lists
+ * everything, so the output is the same as the output without a query.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+public class ClosureQuery {
+
+	// The maximum depth that does not limit the descendants at all.
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private int mMaxDepth = UNBOUNDED;
+	private Predicate<String> mInclude = null;
+	private Predicate<String> mExclude = null;
+	private Collection<String> mRoots = null;
+
+	/**
+	 * Set the most hops from a key to the descendants listed for it.
+	 *
+	 * @param maxDepth  The depth, 1 for the direct dependencies only, or UNBOUNDED.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Max depth must not be negative: " + maxDepth);
+		}
+		mMaxDepth = maxDepth;
+	}
+
+	/**
+	 * @return
+	 */
+	public int getMaxDepth() {
+		return mMaxDepth;
+	}
+
+	/**
+	 * Set the keys to list, or null to list every key.
+	 *
+	 * @param include
+	 */
+	public void setInclude(Predicate<String> include) {
+		mInclude = include;
+	}
+
+	/**
+	 * @return
+	 */
+	public Predicate<String> getInclude() {
+		return mInclude;
+	}
+
+	/**
+	 * Set the keys to leave out, or null to leave none out.
+	 *
+	 * @param exclude
+	 */
+	public void setExclude(Predicate<String> exclude) {
+		mExclude = exclude;
+	}
+
+	/**
+	 * @return
+	 */
+	public Predicate<String> getExclude() {
+		return mExclude;
+	}
+
+	/**
+	 * Set the keys to write the lines for, or null to write the line for every key with dependencies.
+	 *
+	 * @param roots
+	 */
+	public void setRoots(Collection<String> roots) {
+		mRoots = roots;
+	}
+
+	/**
+	 * @return
+	 */
+	public Collection<String> getRoots() {
+		return mRoots;
+	}
+
+	/**
+	 * Returns true if the query lists everything, the same as no query.
+	 */
+	public boolean isUnbounded() {
+		return mMaxDepth == UNBOUNDED && null == mInclude && null == mExclude && null == mRoots;
+	}
+
+	/**
+	 * Returns true if the key passes the include and exclude filters.
+	 */
+	public boolean accepts(String key) {
+		return (null == mInclude || mInclude.test(key)) && (null == mExclude || !mExclude.test(key));
+	}
+
+	/**
+	 * Returns a predicate matching the keys that start with any of the prefixes.
+	 *
+	 * @param prefixes  The prefixes, for example the prefix of the third party keys.
+	 */
+	public static Predicate<String> startsWith(String... prefixes) {
+		String[] copy = prefixes.clone();
+		return key -> {
+			for (String prefix : copy) {
+				if (key.startsWith(prefix)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+}
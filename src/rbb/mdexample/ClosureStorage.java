@@ -0,0 +1,19 @@
+/**
+ * Where the DependencyEvaluator stores the calculated closure of the BITSET, PARALLEL and SORTED modes.
+ *
+ * HEAP   - Bitsets of long[] on the Java heap.
+ * DIRECT - Bitsets in direct ByteBuffers outside the heap, which the garbage collector never scans or copies.
+ * MAPPED - Bitsets in a scratch file mapped into memory, so the closure can be larger than the memory and is
+ *          paged in and out by the operating system.  The file is deleted when the closure is freed.
+ *
+ * The off heap closures are freed when the evaluator is cleared, closed or calculated again.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public enum ClosureStorage {
+	HEAP,
+	DIRECT,
+	MAPPED;
+}
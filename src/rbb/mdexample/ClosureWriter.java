@@ -0,0 +1,177 @@
+/**
+ * The ClosureWriter writes the calculated closure, one line per parent node, straight to a channel or Writer.
+ *
+ * Each line is the parent key, a space, then a space before each descendant key, with the parents and the
+ * descendants in key order.  The lines are written as they are generated, so the memory used depends on
+ * the size of the graph and not on the size of the output.
+ *
+ * The channel output copies the UTF-8 key bytes straight from the KeyTable into one reusable buffer,
+ * so no Strings are created for the keys at all.
+ *
+ * The keys are ranked once, and each line's descendants are mapped to their ranks and sorted.  A RankedClosure
+ * already has the ranks and keeps its descendants in rank order, so then neither is needed.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+public class ClosureWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final KeyTable mKeys;
+	private final IntPredicate mParents;
+	private final Closure mClosure;
+	private final RankedClosure mRanked;  // The closure if it is a RankedClosure, otherwise null.
+	private final int[] mOrder;   // The node ids in key order.
+	private final int[] mRank;    // The position of each node id in mOrder.
+
+	/**
+	 * Construct the writer and rank the keys.
+	 *
+	 * @param graph    The graph the closure was calculated from.
+	 * @param closure  The closure to write.
+	 */
+	public ClosureWriter(DependencyGraph graph, Closure closure) {
+		this(graph.getKeys(), graph::isParent, closure);
+	}
+
+	/**
+	 * Construct the writer for a closure that is not tied to a DependencyGraph and rank the keys.
+	 *
+	 * @param keys     The key table the ids were interned in.
+	 * @param parents  Tests whether a node is listed in the output.
+	 * @param closure  The closure to write.
+	 */
+	ClosureWriter(KeyTable keys, IntPredicate parents, Closure closure) {
+		mKeys = keys;
+		mParents = parents;
+		mClosure = closure;
+		if (closure instanceof RankedClosure) {
+			mRanked = (RankedClosure) closure;
+			mOrder = mRanked.order();
+			mRank = mRanked.rank();
+		} else {
+			mRanked = null;
+			mOrder = keys.sortedIds();
+			mRank = new int[mOrder.length];
+			for (int r = 0; r < mOrder.length; r++) {
+				mRank[mOrder[r]] = r;
+			}
+		}
+	}
+
+	/**
+	 * Write the output as UTF-8 bytes to the channel.  The channel is not closed.
+	 *
+	 * @param channel  The channel to write to.
+	 * @return         The number of bytes written.
+	 * @throws IOException
+	 */
+	public long write(WritableByteChannel channel) throws IOException {
+		KeyTable keys = mKeys;
+		ChannelBuffer out = new ChannelBuffer(channel);
+		for (int node : mOrder) {
+			if (mParents.test(node)) {
+				keys.putKey(node, out.room(keys.keyLength(node) + 1));
+				out.mBuffer.put((byte) ' ');
+				for (int r : sortedDescendants(node)) {
+					int descendant = mOrder[r];
+					out.room(keys.keyLength(descendant) + 1).put((byte) ' ');
+					keys.putKey(descendant, out.mBuffer);
+				}
+				out.room(1).put((byte) '\n');
+			}
+		}
+		out.flush();
+		return out.mWritten;
+	}
+
+	/**
+	 * Write the output to the Writer.  The writer is not closed or flushed.
+	 *
+	 * @param writer  The writer to write to.
+	 * @return        The number of characters written.
+	 * @throws IOException
+	 */
+	public long write(Writer writer) throws IOException {
+		String[] keys = mKeys.getKeys();
+		StringBuilder line = new StringBuilder();
+		long written = 0;
+		for (int node : mOrder) {
+			if (mParents.test(node)) {
+				line.setLength(0);
+				line.append(keys[node]);
+				line.append(" ");
+				for (int r : sortedDescendants(node)) {
+					line.append(" ").append(keys[mOrder[r]]);
+				}
+				line.append("\n");
+				writer.append(line);
+				written += line.length();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Returns the ranks of the node's descendants, sorted so they are in key order.
+	 */
+	private int[] sortedDescendants(int node) {
+		if (null != mRanked) {
+			return mRanked.rankedDescendants(mRank[node]);
+		}
+		int[] descendants = mClosure.descendants(node);
+		for (int i = 0; i < descendants.length; i++) {
+			descendants[i] = mRank[descendants[i]];
+		}
+		Arrays.sort(descendants);
+		return descendants;
+	}
+
+	/**
+	 * The reusable output buffer for a channel, counting the bytes written.
+	 */
+	private static class ChannelBuffer {
+		final WritableByteChannel mChannel;
+		ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long mWritten = 0;
+
+		ChannelBuffer(WritableByteChannel channel) {
+			mChannel = channel;
+		}
+
+		/**
+		 * Make room for length more bytes, writing out the buffer first if needed.
+		 * @return The buffer to put the bytes in, larger than before if length bytes would not fit at all.
+		 */
+		ByteBuffer room(int length) throws IOException {
+			if (mBuffer.remaining() < length) {
+				flush();
+				if (mBuffer.capacity() < length) {
+					mBuffer = ByteBuffer.allocate(length);
+				}
+			}
+			return mBuffer;
+		}
+
+		/**
+		 * Write out everything in the buffer and clear it.
+		 */
+		void flush() throws IOException {
+			mBuffer.flip();
+			mWritten += mBuffer.remaining();
+			while (mBuffer.hasRemaining()) {
+				mChannel.write(mBuffer);
+			}
+			mBuffer.clear();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * The ConcurrentDependencyEvaluator lets many threads query the dependencies while another thread updates them.
+ *
+ * The queries are answered from the latest published DependencySnapshot, an immutable version of the
+ * calculated dependencies read from a volatile field, so they take no locks and never see an update half
+ * applied.  A thread that needs several answers from the same version can hold on to getSnapshot().
+ *
+ * The updates are applied one batch at a time to a DependencyEvaluator that only the writer sees, using its
+ * incremental updates, and then the next version is published in one write of the field.  Once the closure
+ * is updated incrementally, publishing shares the keys, the edges and the descendants with the writer, which
+ * copies only the chunks of them it changes afterwards, so a version after a small update costs little more
+ * than the update.  The first version, and the first after an update that has to calculate the closure again,
+ * build the reverse graph for the ancestor queries.  Changes made together should still be applied in one
+ * update() instead of one call each.
+ *
+ * The closure mode must store the closure to share on the heap, which the modes that use the DependencyNodes,
+ * the STREAMING mode and the ClosureStorage outside the heap do not.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ConcurrentDependencyEvaluator {
+
+	// Guards mEvaluator and the version numbers; readers never take it.
+	private final Object mWriteLock = new Object();
+	private final DependencyEvaluator mEvaluator;
+	private volatile DependencySnapshot mSnapshot;
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Construct the evaluator without any input data.
+	 */
+	public ConcurrentDependencyEvaluator() {
+		this(new DependencyEvaluator());
+	}
+
+	/**
+	 * Construct the evaluator from one that has been loaded, calculating it if necessary, and publish
+	 * the first version.  The evaluator must not be used by anything else afterwards.
+	 *
+	 * @param evaluator  The evaluator to take over.
+	 * @throws IllegalArgumentException if its closure mode does not store the closure, or stores it off the heap.
+	 */
+	public ConcurrentDependencyEvaluator(DependencyEvaluator evaluator) {
+		if (!evaluator.getClosureMode().storesClosure()) {
+			throw new IllegalArgumentException("A concurrent evaluator needs a closure mode that stores the closure: "
+					+ evaluator.getClosureMode());
+		}
+		if (evaluator.isOffHeap()) {
+			throw new IllegalArgumentException("A concurrent evaluator needs the closure stored on the heap: "
+					+ evaluator.getStorage());
+		}
+		mEvaluator = evaluator;
+		mSnapshot = evaluator.snapshot(1);
+	}
+
+	/**
+	 * Returns the latest published version of the dependencies.
+	 * @return
+	 */
+	public DependencySnapshot getSnapshot() {
+		return mSnapshot;
+	}
+
+	/**
+	 * Returns the descendants of the key in the latest version, in key order.
+	 *
+	 * @param key  The key to query.
+	 * @return     The keys of its descendants, empty if the key is unknown.
+	 */
+	public List<String> descendantsOf(String key) {
+		return mSnapshot.descendantsOf(key);
+	}
+
+	/**
+	 * Returns the union of the descendants of the keys in the latest version, in key order.
+	 *
+	 * @param keys  The keys to query.  Unknown keys are ignored.
+	 * @return      The keys of their descendants.
+	 */
+	public List<String> descendantsOf(Collection<String> keys) {
+		return mSnapshot.descendantsOf(keys);
+	}
+
+	/**
+	 * Returns the ancestors of the key in the latest version, in key order.
+	 *
+	 * @param key  The key to query.
+	 * @return     The keys of its ancestors, empty if the key is unknown.
+	 */
+	public List<String> ancestorsOf(String key) {
+		return mSnapshot.ancestorsOf(key);
+	}
+
+	/**
+	 * Returns the union of the ancestors of the keys in the latest version, in key order.
+	 *
+	 * @param keys  The keys to query.  Unknown keys are ignored.
+	 * @return      The keys of their ancestors.
+	 */
+	public List<String> ancestorsOf(Collection<String> keys) {
+		return mSnapshot.ancestorsOf(keys);
+	}
+
+	/**
+	 * Returns true if the key depends on the dependency in the latest version.
+	 *
+	 * @param key         The key to query.
+	 * @param dependency  The possible dependency.
+	 */
+	public boolean dependsOn(String key, String dependency) {
+		return mSnapshot.dependsOn(key, dependency);
+	}
+
+	/**
+	 * Generate the output of the latest version.
+	 */
+	public String generateOutput() {
+		return mSnapshot.generateOutput();
+	}
+
+	/**
+	 * Apply the updates to the evaluator and publish the result as the next version.  Only one update is
+	 * applied at a time, and the queries keep answering from the previous version until it is published.
+	 * If the updates throw, nothing is published, and the changes they made so far are published with the
+	 * next version.
+	 *
+	 * @param updates  Changes the evaluator, for example by adding input or edges.  The evaluator must not
+	 *                 be kept after it returns.
+	 * @return         The version published.
+	 * @throws IllegalStateException if the updates change to a closure mode that does not store the closure.
+	 */
+	public DependencySnapshot update(Consumer<DependencyEvaluator> updates) {
+		synchronized (mWriteLock) {
+			updates.accept(mEvaluator);
+			DependencySnapshot snapshot = mEvaluator.snapshot(mSnapshot.getVersion() + 1);
+			mSnapshot = snapshot;
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Published version " + snapshot.getVersion() + " with " + snapshot.keyCount() + " keys");
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Add the rows and publish the next version.
+	 *
+	 * @param rows  The rows, each in the form 'Key dependency [dependency dependency]'.
+	 */
+	public void addInput(List<String> rows) {
+		update(evaluator -> evaluator.addInput(rows.iterator()));
+	}
+
+	/**
+	 * Add the rows of the input file and publish the next version.
+	 *
+	 * @param path  The input file.
+	 * @throws IOException
+	 */
+	public void loadInputFile(Path path) throws IOException {
+		try {
+			update(evaluator -> {
+				try {
+					evaluator.loadInputFile(path);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Add the parent -> child dependency and publish the next version.
+	 *
+	 * @param parent  The key of the parent.
+	 * @param child   The key of the dependency.
+	 */
+	public void addEdge(String parent, String child) {
+		update(evaluator -> evaluator.addEdge(parent, child));
+	}
+
+	/**
+	 * Remove the parent -> child dependency and publish the next version.
+	 *
+	 * @param parent  The key of the parent.
+	 * @param child   The key of the dependency.
+	 */
+	public void removeEdge(String parent, String child) {
+		update(evaluator -> evaluator.removeEdge(parent, child));
+	}
+
+	/**
+	 * Add a key without any dependencies and publish the next version.
+	 *
+	 * @param key  The key to add.
+	 */
+	public void addNode(String key) {
+		update(evaluator -> evaluator.addNode(key));
+	}
+
+	/**
+	 * Remove every dependency to or from the key and publish the next version.
+	 *
+	 * @param key  The key to remove.
+	 */
+	public void removeNode(String key) {
+		update(evaluator -> evaluator.removeNode(key));
+	}
+
+	/**
+	 * Remove all the input data and publish the empty version.
+	 */
+	public void clear() {
+		update(DependencyEvaluator::clear);
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * The Condensation collapses each strongly connected component (each set of circularly dependent nodes)
+ * of a DependencyGraph into one component, leaving an acyclic graph of components.
+ *
+ * The components are found with Tarjan's algorithm, run with an explicit stack so it is not limited by
+ * the thread stack depth.  Tarjan completes a component only after every component it reaches, so the
+ * component ids are in reverse topological order: the successors of component c all have ids lower than c.
+ * Processing the components in increasing id order therefore sees every successor before its parents.
+ *
+ * A component is cyclic when it has more than one member or its single member depends on itself.
+ * Every member of a cyclic component is a descendant of every other member, including itself.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+
+public class Condensation {
+
+	private final DependencyGraph mGraph;
+	private final int mComponentCount;
+	private final int[] mComponents;         // Component id of each node.
+	private final int[] mMemberOffsets;      // CSR of the members of each component.
+	private final int[] mMembers;
+	private final int[] mSuccessorOffsets;   // CSR of the distinct successor components of each component.
+	private final int[] mSuccessors;
+	private final boolean[] mCyclic;
+
+	/**
+	 * Condense the graph.
+	 *
+	 * @param graph  The graph to condense.
+	 */
+	public Condensation(DependencyGraph graph) {
+		mGraph = graph;
+		int nodeCount = graph.nodeCount();
+		mComponents = new int[nodeCount];
+		mComponentCount = findComponents(graph, mComponents);
+
+		// Group the members of each component.
+		mMemberOffsets = new int[mComponentCount + 1];
+		for (int node = 0; node < nodeCount; node++) {
+			mMemberOffsets[mComponents[node] + 1]++;
+		}
+		for (int c = 0; c < mComponentCount; c++) {
+			mMemberOffsets[c + 1] += mMemberOffsets[c];
+		}
+		mMembers = new int[nodeCount];
+		int[] next = Arrays.copyOf(mMemberOffsets, mComponentCount);
+		for (int node = 0; node < nodeCount; node++) {
+			mMembers[next[mComponents[node]]++] = node;
+		}
+
+		// Collect the distinct successor components and note the cyclic components.
+		int[] targets = graph.targets();
+		int[] mark = new int[mComponentCount];
+		int[] successors = new int[Math.max(16, mComponentCount)];
+		int count = 0;
+		mSuccessorOffsets = new int[mComponentCount + 1];
+		mCyclic = new boolean[mComponentCount];
+		for (int c = 0; c < mComponentCount; c++) {
+			mCyclic[c] = mMemberOffsets[c + 1] - mMemberOffsets[c] > 1;
+			for (int m = mMemberOffsets[c]; m < mMemberOffsets[c + 1]; m++) {
+				int node = mMembers[m];
+				for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+					int successor = mComponents[targets[i]];
+					if (successor == c) {
+						mCyclic[c] = true;
+					} else if (mark[successor] != c + 1) {
+						mark[successor] = c + 1;
+						if (count == successors.length) {
+							successors = Arrays.copyOf(successors, count * 2);
+						}
+						successors[count++] = successor;
+					}
+				}
+			}
+			mSuccessorOffsets[c + 1] = count;
+		}
+		mSuccessors = Arrays.copyOf(successors, count);
+	}
+
+	/**
+	 * Returns the graph that was condensed.
+	 * @return
+	 */
+	public DependencyGraph getGraph() {
+		return mGraph;
+	}
+
+	/**
+	 * Returns the number of components.  All component ids are in the range [0, componentCount()).
+	 * @return
+	 */
+	public int componentCount() {
+		return mComponentCount;
+	}
+
+	/**
+	 * Returns the component id of the node.
+	 */
+	public int component(int node) {
+		return mComponents[node];
+	}
+
+	/**
+	 * Returns the index in members() of the first member of the component.
+	 */
+	public int memberStart(int component) {
+		return mMemberOffsets[component];
+	}
+
+	/**
+	 * Returns the index in members() just past the last member of the component.
+	 */
+	public int memberEnd(int component) {
+		return mMemberOffsets[component + 1];
+	}
+
+	/**
+	 * Returns the shared array of members for all components, indexed by memberStart()/memberEnd().
+	 * The array must not be modified.
+	 * @return
+	 */
+	public int[] members() {
+		return mMembers;
+	}
+
+	/**
+	 * Returns the index in successors() of the first successor of the component.
+	 */
+	public int successorStart(int component) {
+		return mSuccessorOffsets[component];
+	}
+
+	/**
+	 * Returns the index in successors() just past the last successor of the component.
+	 */
+	public int successorEnd(int component) {
+		return mSuccessorOffsets[component + 1];
+	}
+
+	/**
+	 * Returns the shared array of successor components, indexed by successorStart()/successorEnd().
+	 * Each successor has a lower id than the component it belongs to.  The array must not be modified.
+	 * @return
+	 */
+	public int[] successors() {
+		return mSuccessors;
+	}
+
+	/**
+	 * Returns true if the members of the component depend on themselves.
+	 */
+	public boolean isCyclic(int component) {
+		return mCyclic[component];
+	}
+
+	/**
+	 * Find the strongly connected components with an iterative version of Tarjan's algorithm.
+	 *
+	 * @param graph       The graph to search.
+	 * @param components  Filled with the component id of each node.
+	 * @return            The number of components.
+	 */
+	private static int findComponents(DependencyGraph graph, int[] components) {
+		int nodeCount = graph.nodeCount();
+		int[] targets = graph.targets();
+		int[] index = new int[nodeCount];
+		int[] low = new int[nodeCount];
+		boolean[] onStack = new boolean[nodeCount];
+		int[] componentStack = new int[nodeCount];
+		int[] callStack = new int[nodeCount];
+		int[] nextChild = new int[nodeCount];
+		Arrays.fill(index, -1);
+
+		int counter = 0;
+		int componentCount = 0;
+		int componentTop = 0;
+		for (int root = 0; root < nodeCount; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int callTop = 0;
+			index[root] = low[root] = counter++;
+			componentStack[componentTop++] = root;
+			onStack[root] = true;
+			callStack[callTop] = root;
+			nextChild[callTop++] = graph.childStart(root);
+
+			while (callTop > 0) {
+				int node = callStack[callTop - 1];
+				int i = nextChild[callTop - 1];
+				if (i < graph.childEnd(node)) {
+					nextChild[callTop - 1] = i + 1;
+					int child = targets[i];
+					if (index[child] == -1) {
+						// Descend into the child.
+						index[child] = low[child] = counter++;
+						componentStack[componentTop++] = child;
+						onStack[child] = true;
+						callStack[callTop] = child;
+						nextChild[callTop++] = graph.childStart(child);
+					} else if (onStack[child]) {
+						low[node] = Math.min(low[node], index[child]);
+					}
+				} else {
+					// All children are done, close the component if this node is its root.
+					callTop--;
+					if (low[node] == index[node]) {
+						int member;
+						do {
+							member = componentStack[--componentTop];
+							onStack[member] = false;
+							components[member] = componentCount;
+						} while (member != node);
+						componentCount++;
+					}
+					if (callTop > 0) {
+						int parent = callStack[callTop - 1];
+						low[parent] = Math.min(low[parent], low[node]);
+					}
+				}
+			}
+		}
+		return componentCount;
+	}
+}
@@ -5,34 +5,108 @@
  * From each row of parent -> child dependencies, it will create a node in a dependency set.
  * 
  * void   setInputData() can be used to set the input data.
+ * void   addInput() / appendInput() add rows from a stream, Reader or Iterator as they arrive.
  * void   calculate() is used to generate the dependency lists.
  * String generateOutput() will generate the output string, calling calculate() first if necessary.
+ * void   writeOutput() streams the output to a Writer, OutputStream or channel instead.
+ *        Both also take a ClosureQuery to limit the output to some keys, filtered keys or a maximum depth.
+ * void   addEdge() / removeEdge() / addNode() / removeNode() change the graph after calculate(), updating
+ *        only the descendants of the changed node's ancestors instead of calculating everything again.
+ * void   clear() removes all the input data so another data set can be evaluated.
+ * void   close() frees the off heap memory of a closure stored outside the heap with setStorage().
+ * List   descendantsOf() answers the query for one key without calculating every node, caching the answers.
+ * List   ancestorsOf() answers the reverse query, the keys that depend on a key, the same way.
+ *        Both also take a set of keys and return the union of their answers.
+ * bool   dependsOn() answers whether one key depends on another from a ReachabilityIndex, without
+ *        storing the descendants of every node.
+ * ClosureEstimator estimate() estimates the size of every closure and of the output without calculating them.
+ * List   shortestPath() / pathsBetween() explain why one key depends on another with the shortest chains
+ *        of dependencies between them, searched for in the graph within a limit on the keys and time.
  * 
- * @author reed
+ * The keys are interned into dense integer ids as the input is read and the edges are kept in a compact
+ * DependencyGraph.  The closure is calculated over the ids by the engine selected with setClosureMode(),
+ * and the ids are only mapped back to keys when the output is generated.  ClosureMode.NODES and
+ * NODES_ITERATIVE still evaluate the original DependencyNode tree.
  * 
- * TODO - consider adding a clear() to all evaluating multiple input data sets.
+ * @author reed
  */
 package rbb.mdexample;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class DependencyEvaluator {
+import rbb.mdexample.EvaluatorMetrics.Counter;
+import rbb.mdexample.EvaluatorMetrics.Phase;
+
+public class DependencyEvaluator implements Closeable {
 
 	// TreeMap is expensive for processing time, but makes a ordering the output data easy.  
 	// For larger data sets, use a HashSet() and Collections.sort just before output. 
+	// Only used by the ClosureMode.NODES modes, built from the graph when calculate() is called.
 	private Map<String, DependencyNode> mNodes = new TreeMap<>();
 
+	// The interned keys and edges collected from the input data.
+	private GraphBuilder mBuilder = new GraphBuilder();
+	private DependencyGraph mGraph = null;
+	private Closure mClosure = null;
+	// The closure kept up to date by the incremental updates made after calculate(), or null before the first.
+	private IncrementalClosure mIncremental = null;
+	// Answers descendantsOf() before calculate(), or null until the first query after the input changes.
+	private LazyClosure mLazy = null;
+	// Answers ancestorsOf() from the reverse graph, or null until the first query after the input changes.
+	private LazyClosure mReverseLazy = null;
+	// Answers dependsOn() before calculate(), or null until the first query after the input changes.
+	private ReachabilityIndex mReachability = null;
+	private int mQueryCacheSize = LazyClosure.DEFAULT_CACHE_SIZE;
+	private int mPathMaxVisited = PathFinder.DEFAULT_MAX_VISITED;
+	private long mPathTimeoutMillis = PathFinder.DEFAULT_TIMEOUT_MILLIS;
+	private ClosureMode mClosureMode = ClosureMode.TRAVERSAL;
+	private int mParallelism = Runtime.getRuntime().availableProcessors();
+	private boolean mParallelLoad = false;
+	private ClosureStorage mStorage = ClosureStorage.HEAP;
+	private Path mScratchDirectory = null;
+	// The store holding the calculated closure when it is off the heap, or null.
+	private OffHeapStore mStore = null;
+
 	private boolean mCalculated = false;
 
-	private static final String FIELD_DELIMITER = " ";
-	
+	// The parser for the stream of chunks passed to appendInput().
+	private InputParser mStreamParser = null;
+
+	// The initial size of the buffer used to read rows from a Reader.
+	private static final int READ_SIZE = 8 * 1024;
+	// replaceInputFile() recalculates everything when more than 1 in this many dependencies have changed.
+	private static final int MAX_CHANGED_FRACTION = 8;
+	// The size of the buffer used to write the output of the NODES modes to a channel.
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private final static EvaluatorMetrics METRICS = EvaluatorMetrics.getInstance();
 	
 	/**
 	 * Default Constructor
@@ -50,7 +124,169 @@ public class DependencyEvaluator {
     DependencyEvaluator(List<String> inputData) {
     	setInputData(inputData);
     }
+
+    /**
+     * Set the way the dependencies are calculated.  Takes effect the next time calculate() is called.
+     * 
+     * @param closureMode
+     */
+    public void setClosureMode(ClosureMode closureMode) {
+    	mClosureMode = closureMode;
+    	mCalculated = false;
+    }
+
+    /**
+     * Returns the way the dependencies are calculated.
+     * @return
+     */
+    public ClosureMode getClosureMode() {
+    	return mClosureMode;
+    }
+
+    /**
+     * Set the number of threads used by ClosureMode.PARALLEL.  Defaults to the number of available processors.
+     * 
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+    	if (parallelism < 1) {
+    		throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    	}
+    	mParallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used by ClosureMode.PARALLEL.
+     * @return
+     */
+    public int getParallelism() {
+    	return mParallelism;
+    }
+
+    /**
+     * Set where the BITSET, PARALLEL and SORTED modes store the closure.  Any off heap closure already
+     * calculated is freed, and the next calculate() uses the new storage.
+     * 
+     * @param storage
+     */
+    public void setStorage(ClosureStorage storage) {
+    	freeStore();
+    	mStorage = storage;
+    	mCalculated = false;
+    }
+
+    /**
+     * Returns where the BITSET, PARALLEL and SORTED modes store the closure.
+     * @return
+     */
+    public ClosureStorage getStorage() {
+    	return mStorage;
+    }
+
+    /**
+     * Set the directory for the scratch file of ClosureStorage.MAPPED.  Defaults to the temporary directory.
+     * 
+     * @param directory  The directory, or null for the default.
+     */
+    public void setScratchDirectory(Path directory) {
+    	mScratchDirectory = directory;
+    }
+
+    /**
+     * Returns the directory for the scratch file of ClosureStorage.MAPPED, or null for the temporary directory.
+     * @return
+     */
+    public Path getScratchDirectory() {
+    	return mScratchDirectory;
+    }
+
+    /**
+     * Returns true if the closure mode and storage place the closure outside the heap.  Such a closure is
+     * calculated again after updates instead of being updated, and can not be shared by snapshots.
+     * @return
+     */
+    public boolean isOffHeap() {
+    	return mStorage != ClosureStorage.HEAP && mClosureMode.usesBitSets();
+    }
+
+    /**
+     * Set whether loadInputFile() splits the file into ranges that are parsed on getParallelism() threads.
+     * 
+     * @param parallelLoad
+     */
+    public void setParallelLoad(boolean parallelLoad) {
+    	mParallelLoad = parallelLoad;
+    }
+
+    /**
+     * Returns true if loadInputFile() parses the file on several threads.
+     * @return
+     */
+    public boolean isParallelLoad() {
+    	return mParallelLoad;
+    }
 	
+    /**
+     * Set the most descendant ids kept by the descendantsOf() cache, and by the STREAMING mode's cache.
+     * Takes effect for the next input data.
+     * 
+     * @param cacheSize
+     */
+    public void setQueryCacheSize(int cacheSize) {
+    	if (cacheSize < 0) {
+    		throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+    	}
+    	mQueryCacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the most descendant ids kept by the descendantsOf() cache.
+     * @return
+     */
+    public int getQueryCacheSize() {
+    	return mQueryCacheSize;
+    }
+
+    /**
+     * Set the most keys each search for a path between two keys may visit.
+     * 
+     * @param maxVisited
+     */
+    public void setPathMaxVisited(int maxVisited) {
+    	if (maxVisited < 2) {
+    		throw new IllegalArgumentException("Max visited must be at least 2: " + maxVisited);
+    	}
+    	mPathMaxVisited = maxVisited;
+    }
+
+    /**
+     * Returns the most keys each search for a path between two keys may visit.
+     * @return
+     */
+    public int getPathMaxVisited() {
+    	return mPathMaxVisited;
+    }
+
+    /**
+     * Set the time allowed for each shortestPath() or pathsBetween() query.
+     * 
+     * @param timeoutMillis
+     */
+    public void setPathTimeout(long timeoutMillis) {
+    	if (timeoutMillis <= 0) {
+    		throw new IllegalArgumentException("Timeout must be positive: " + timeoutMillis);
+    	}
+    	mPathTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the time allowed for each shortestPath() or pathsBetween() query.
+     * @return
+     */
+    public long getPathTimeout() {
+    	return mPathTimeoutMillis;
+    }
+
     /** 
      * Set the input data for the DepenencyEvaluator
      * 
@@ -58,65 +294,722 @@ public class DependencyEvaluator {
      */
     public void setInputData(List<String> inputData) {
     	LOGGER.info("Processing input");
-    	int i = 1;
-    	
-    	if (inputData.size() > 0) {
-    		for (String inputLine : inputData) {
-    			try {
-    				processInputLine(inputLine);
-    				i++;
-    			} catch (InputValidationException ive) {
-    				// Perhaps throw again if desire to exit without results generated if that is desired behavior.
-    				LOGGER.severe("Exception encounterered processing input on line " + (i) + ": " + ive.getMessage());
+    	addInput(inputData.iterator());
+    }
+
+    /**
+     * Add each row from the iterator as it is returned, so the rows never need to be held in memory together.
+     * Rows that are not valid are reported with their line number and skipped.
+     * 
+     * @param rows  The rows to add, each in the form 'Key dependency [dependency dependency]'
+     */
+    public void addInput(Iterator<? extends CharSequence> rows) {
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		int i = 1;
+    		while (rows.hasNext()) {
+    			CharSequence row = rows.next();
+    			if (null != row) {
+    				addInputLine(row, 0, row.length(), i);
+    			}
+    			i++;
+    		}
+    	} finally {
+    		timer.close();
+    	}
+    	inputChanged();
+    }
+
+    /**
+     * Read the rows from the reader until it is exhausted, adding each row as soon as it is complete.
+     * Only the current block of characters is held in memory.  The reader is not closed.
+     * 
+     * @param reader  The source of the rows.
+     * @throws IOException
+     */
+    public void addInput(Reader reader) throws IOException {
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		char[] buffer = new char[READ_SIZE];
+    		CharBuffer chars = CharBuffer.wrap(buffer);
+    		int filled = 0;
+    		int i = 1;
+    		int read;
+    		while ((read = reader.read(buffer, filled, buffer.length - filled)) >= 0) {
+    			int end = filled + read;
+    			int start = 0;
+    			for (int c = filled; c < end; c++) {
+    				if (buffer[c] == '\n') {
+    					addInputLine(chars, start, c, i++);
+    					start = c + 1;
+    				}
+    			}
+    			// Move the incomplete row to the front, doubling the buffer if one row fills all of it.
+    			filled = end - start;
+    			if (filled == buffer.length) {
+    				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    				chars = CharBuffer.wrap(buffer);
+    			} else {
+    				System.arraycopy(buffer, start, buffer, 0, filled);
     			}
     		}
+    		if (filled > 0) {
+    			addInputLine(chars, 0, filled, i);
+    		}
+    	} finally {
+    		timer.close();
+    	}
+    	inputChanged();
+    }
+
+    /**
+     * Read the UTF-8 rows from the stream until it is exhausted, adding each row as soon as it is complete.
+     * The stream is not closed.
+     * 
+     * @param input  The source of the rows.
+     * @throws IOException
+     */
+    public void addInput(InputStream input) throws IOException {
+    	addInput(Channels.newChannel(input));
+    }
+
+    /**
+     * Read the UTF-8 rows from the channel until it is exhausted, adding each row as soon as it is complete.
+     * The channel is not closed.
+     * 
+     * @param channel  The source of the rows.
+     * @throws IOException
+     */
+    public void addInput(ReadableByteChannel channel) throws IOException {
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		new InputParser(mBuilder).parse(channel);
+    	} finally {
+    		timer.close();
+    	}
+    	inputChanged();
+    }
+
+    /**
+     * Append the next chunk of a UTF-8 byte stream.  The complete rows are added straight away and any
+     * incomplete row at the end is kept until it is completed by a later chunk or finishInput() is called.
+     * The chunk is fully consumed, so the caller is free to reuse it.
+     * 
+     * @param chunk  The next bytes of the input.
+     */
+    public void appendInput(ByteBuffer chunk) {
+    	if (null == mStreamParser) {
+    		mStreamParser = new InputParser(mBuilder);
+    	}
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		mStreamParser.append(chunk);
+    	} finally {
+    		timer.close();
+    	}
+    	inputChanged();
+    }
+
+    /**
+     * Finish the stream of chunks passed to appendInput(), adding any incomplete last row.
+     * A later call to appendInput() starts a new stream.
+     */
+    public void finishInput() {
+    	if (null != mStreamParser) {
+    		EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    		try {
+    			mStreamParser.finish();
+    		} finally {
+    			timer.close();
+    		}
+    		mStreamParser = null;
+    	}
+    }
+    
+    /**
+     * Memory map the input file and add all of its rows, without reading the file into Strings first.
+     * Rows that are not valid are reported and skipped the same way as setInputData().
+     * When parallel load is set, ranges of the file are parsed on separate threads and then merged.
+     * 
+     * @param path  The input file.
+     * @throws IOException
+     */
+    public void loadInputFile(Path path) throws IOException {
+    	LOGGER.info("Processing input file " + path);
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		parseFile(mBuilder, path);
+    	} finally {
+    		timer.close();
+    	}
+    	inputChanged();
+    }
+
+    /**
+     * Replace the input data with a graph file written by saveGraph(), memory mapping it instead of parsing it.
+     * A closure saved with the graph is used as the calculated result, unless the closure mode uses the
+     * DependencyNodes, so calculate() is not needed before the output or queries.
+     * 
+     * @param path  The graph file.
+     * @throws IOException if the file can not be read or is not a graph file.
+     */
+    public void loadGraph(Path path) throws IOException {
+    	LOGGER.info("Loading graph file " + path);
+    	GraphFile file;
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		file = GraphFile.load(path);
+    	} finally {
+    		timer.close();
+    	}
+    	clear();
+    	mBuilder = new GraphBuilder(file.getGraph());
+    	mGraph = file.getGraph();
+    	if (null != file.getClosure() && !mClosureMode.usesNodes()) {
+    		mClosure = file.getClosure();
+    		mCalculated = true;
+    	}
+    }
+
+    /**
+     * Replace the input data with the rows of the file, keeping the calculated closure when few of the
+     * dependencies have changed.  The file is parsed into a new graph and compared with the current one, and
+     * only the dependencies that differ are added and removed, so only the nodes they reach are recalculated.
+     * When more than 1 in MAX_CHANGED_FRACTION of the dependencies differ, calculating again is likely to be
+     * quicker, so the new input simply replaces the old and is calculated by the next calculate().
+     * 
+     * @param path  The input file.
+     * @return      True if the closure was kept and updated.
+     * @throws IOException
+     */
+    public boolean replaceInputFile(Path path) throws IOException {
+    	LOGGER.info("Replacing input with file " + path);
+    	GraphBuilder builder = new GraphBuilder();
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.PARSE);
+    	try {
+    		parseFile(builder, path);
+    	} finally {
+    		timer.close();
+    	}
+    	DependencyGraph graph = getGraph();
+    	GraphDiff diff = new GraphDiff(graph, build(builder));
+    	if (!mCalculated || !mClosureMode.storesClosure() || null != mStore
+    			|| diff.size() > graph.edgeCount() / MAX_CHANGED_FRACTION) {
+    		clear();
+    		mBuilder = builder;
+    		return false;
+    	}
+    	LOGGER.info("Updating " + diff.size() + " changed dependencies");
+    	diff.forEachRemoved(this::removeEdge);
+    	diff.forEachAdded(this::addEdge);
+    	return true;
+    }
+
+    /**
+     * Save the graph of the input data to a graph file that loadGraph() can load without parsing.
+     * 
+     * @param path            The file to write, replaced if it exists.
+     * @param includeClosure  True to save the closure too, calculating it first if necessary.  The closure is
+     *                        not saved by the modes that do not store it.
+     * @throws IOException
+     */
+    public void saveGraph(Path path, boolean includeClosure) throws IOException {
+    	Closure closure = null;
+    	if (includeClosure && mClosureMode.storesClosure()) {
+    		if (!mCalculated) {
+    			calculate();
+    		}
+    		closure = mClosure;
+    	}
+    	LOGGER.info("Saving graph file " + path);
+    	GraphFile.save(path, getGraph(), closure);
+    }
+
+    /**
+     * Add the parent -> child dependency.  Once calculated, only the descendants of the parent and its
+     * ancestors are updated; otherwise the dependency is included in the next calculate().
+     * 
+     * @param parent  The key of the parent, which is listed in the output from now on.
+     * @param child   The key of the dependency.
+     */
+    public void addEdge(String parent, String child) {
+    	KeyTable keys = mBuilder.getKeys();
+    	int parentId = keys.intern(parent);
+    	int childId = keys.intern(child);
+    	mBuilder.addParent(parentId);
+    	mBuilder.addEdge(parentId, childId);
+    	IncrementalClosure incremental = getIncrementalClosure();
+    	if (null != incremental) {
+    		EvaluatorMetrics.Timer timer = METRICS.time(Phase.UPDATE);
+    		try {
+    			incremental.addEdge(parentId, childId);
+    		} finally {
+    			timer.close();
+    		}
+    	}
+    }
+
+    /**
+     * Remove the parent -> child dependency.  Once calculated, only the descendants of the parent and its
+     * ancestors are recalculated.  A parent left without dependencies is no longer listed in the output.
+     * 
+     * @param parent  The key of the parent.
+     * @param child   The key of the dependency.
+     */
+    public void removeEdge(String parent, String child) {
+    	KeyTable keys = mBuilder.getKeys();
+    	int parentId = keys.find(parent);
+    	int childId = keys.find(child);
+    	if (parentId < 0 || childId < 0) {
+    		return;
+    	}
+    	mBuilder.removeEdge(parentId, childId);
+    	IncrementalClosure incremental = getIncrementalClosure();
+    	if (null != incremental) {
+    		EvaluatorMetrics.Timer timer = METRICS.time(Phase.UPDATE);
+    		try {
+    			incremental.removeEdge(parentId, childId);
+    		} finally {
+    			timer.close();
+    		}
+    	}
+    }
+
+    /**
+     * Add a key without any dependencies.  It is not listed in the output until it has a dependency.
+     * 
+     * @param key  The key to add.
+     */
+    public void addNode(String key) {
+    	int id = mBuilder.getKeys().intern(key);
+    	IncrementalClosure incremental = getIncrementalClosure();
+    	if (null != incremental) {
+    		EvaluatorMetrics.Timer timer = METRICS.time(Phase.UPDATE);
+    		try {
+    			incremental.addNode(id);
+    		} finally {
+    			timer.close();
+    		}
+    	}
+    }
+
+    /**
+     * Remove every dependency to or from the key.  Once calculated, only the descendants of its ancestors
+     * are recalculated.
+     * 
+     * @param key  The key to remove.
+     */
+    public void removeNode(String key) {
+    	int id = mBuilder.getKeys().find(key);
+    	if (id < 0) {
+    		return;
+    	}
+    	mBuilder.removeNode(id);
+    	IncrementalClosure incremental = getIncrementalClosure();
+    	if (null != incremental) {
+    		EvaluatorMetrics.Timer timer = METRICS.time(Phase.UPDATE);
+    		try {
+    			incremental.removeNode(id);
+    		} finally {
+    			timer.close();
+    		}
+    	}
+    }
+
+    /**
+     * Remove all the input data and results so a new data set can be evaluated.
+     * The closure mode, parallelism, storage and load settings are kept, and a closure off the heap is freed.
+     */
+    public void clear() {
+    	mNodes = new TreeMap<>();
+    	mBuilder = new GraphBuilder();
+    	mGraph = null;
+    	mClosure = null;
+    	mIncremental = null;
+    	mStreamParser = null;
+    	inputChanged();
+    }
+
+    /**
+     * Free the off heap memory of the closure, if it is stored off the heap.  The input data and settings are
+     * kept, so the evaluator can still be used and calculates the closure again when it is next needed.
+     */
+    @Override
+    public void close() {
+    	freeStore();
+    }
+
+    /**
+     * Returns the closure to apply an incremental update to, starting one from the calculated closure if needed.
+     * Returns null if nothing is calculated yet, or the mode does not store the closure, in which case the
+     * update is left to the next calculate().  A closure off the heap is freed rather than copied onto the
+     * heap to be updated.
+     */
+    private IncrementalClosure getIncrementalClosure() {
+    	if (!mCalculated || !mClosureMode.storesClosure() || null != mStore) {
+    		inputChanged();
+    		return null;
+    	}
+    	if (null == mIncremental) {
+    		mIncremental = new IncrementalClosure(mGraph, mClosure);
+    		mClosure = mIncremental;
+    	}
+    	// The closure is kept up to date, but the graph and the query closures no longer match the input.
+    	mGraph = null;
+    	mLazy = null;
+    	mReverseLazy = null;
+    	mReachability = null;
+    	return mIncremental;
+    }
+
+    /**
+     * Note that the input data has changed, so everything calculated from it has to be calculated again.
+     */
+    private void inputChanged() {
+    	freeStore();
+    	mCalculated = false;
+    	mGraph = null;
+    	mLazy = null;
+    	mReverseLazy = null;
+    	mReachability = null;
+    }
+
+    /**
+     * Free the store holding the closure off the heap, and the closure with it.
+     */
+    private void freeStore() {
+    	if (null != mStore) {
+    		try {
+    			mStore.close();
+    		} catch (IOException e) {
+    			LOGGER.log(Level.WARNING, "Could not free the off heap closure", e);
+    		}
+    		mStore = null;
+    		mClosure = null;
+    		mCalculated = false;
+    	}
+    }
+
+    /**
+     * Returns the graph of the current input data, building it if the input has changed since it was last built.
+     */
+    private DependencyGraph getGraph() {
+    	if (null == mGraph) {
+    		mGraph = build(mBuilder);
+    	}
+    	return mGraph;
+    }
+
+    /**
+     * Build the graph from the builder, counting its nodes and edges.
+     */
+    private static DependencyGraph build(GraphBuilder builder) {
+    	DependencyGraph graph;
+    	EvaluatorMetrics.Timer timer = METRICS.time(Phase.BUILD);
+    	try {
+    		graph = builder.build();
+    	} finally {
+    		timer.close();
+    	}
+    	METRICS.add(Counter.NODES, graph.nodeCount());
+    	METRICS.add(Counter.EDGES, graph.edgeCount());
+    	METRICS.add(Counter.GRAPH_BYTES, graph.memoryBytes());
+    	return graph;
+    }
+
+    /**
+     * Parse the input file into the builder, in ranges on separate threads when parallel load is set.
+     */
+    private void parseFile(GraphBuilder builder, Path path) throws IOException {
+    	if (mParallelLoad && mParallelism > 1) {
+    		new ChunkedFileParser(builder, mParallelism).parseFile(path);
+    	} else {
+    		new InputParser(builder).parseFile(path);
+    	}
+    }
+
+    /**
+     * Process the line in chars[start, end), reporting and skipping it if it is not valid.
+     */
+    private void addInputLine(CharSequence chars, int start, int end, int lineNumber) {
+    	try {
+    		processInputLine(chars, start, end);
+    	} catch (InputValidationException ive) {
+    		// Perhaps throw again if desire to exit without results generated if that is desired behavior.
+    		LOGGER.severe("Exception encounterered processing input on line " + lineNumber + ": " + ive.getMessage());
     	}
     }
     
     /**
-     * Process a single line of input data into a node.  Do not evaluate the children immediately,
+     * Process a single line of input data into the graph.  Do not evaluate the children immediately,
      * Wait until all input data is added and the calculate method is called.  
-     * Once the data is parsed, create a node & put it into the collection of nodes;
+     * The fields are interned as they are scanned, without splitting the line into an array first.
      * 
-     * A single line of input is Key Dependency [Dependency...]
-     * @param line
+     * A single line of input is Key Dependency [Dependency...], the fields separated by spaces or tabs.
+     * @param chars  The characters holding the line.
+     * @param start  The index of the start of the line.
+     * @param end    The index of the end of the line, not including any new line.
      * @throws InputValidationException 
      */
-	private void processInputLine(String line) throws InputValidationException {
-		LOGGER.finer(line);
-		
-		if (null != line) {		
-			String[] elements = line.split(FIELD_DELIMITER);
+	private void processInputLine(CharSequence chars, int start, int end) throws InputValidationException {
+		KeyTable keys = mBuilder.getKeys();
+		int keyStart = -1;
+		int keyEnd = -1;
+		int parent = -1;
+		int i = start;
+		while (i < end) {
+			// Skip the delimiters before the field.
+			while (i < end && isDelimiter(chars.charAt(i))) {
+				i++;
+			}
+			if (i == end) {
+				break;
+			}
+			int fieldStart = i;
+			while (i < end && !isDelimiter(chars.charAt(i))) {
+				i++;
+			}
 			
-			String key = elements[0];
-			if (!key.isEmpty()) {
-				// Make sure there are children in the input line
-				if (elements.length > 1) {			
-					// Wrap Arrays.asList in ArrayList to allow for modifications.
-					ArrayList<String> children = new ArrayList<>(Arrays.asList(elements));
-					//Since doing a bulk add of all entries on the line, remove the key from the list of children.
-					//This also handles the case where a key is part of the children.
-					children.remove(key); 
-					
-					LOGGER.finer("Getting descendents of " + key + " - " + children);
-					DependencyNode node = mNodes.get(key);
-					if (null == node) {
-						node = new DependencyNode(key, children);
-						mNodes.put(key, node);
-					} else { // The node already exists, so add the children to the list.
-						node.addChildren(children);
-					}
-				} else {
-					throw new InputValidationException("Row with key \'" + key + "\' does not contain any dependencies");
+			if (keyStart < 0) {
+				keyStart = fieldStart;
+				keyEnd = i;
+			} else {
+				// Intern the key once the row is known to have children; 
+				// rows for a key that already exists simply add more edges.
+				if (parent < 0) {
+					parent = keys.intern(chars, keyStart, keyEnd);
+					mBuilder.addParent(parent);
 				}
+				mBuilder.addEdge(parent, keys.intern(chars, fieldStart, i));
 			}
 		}
+		
+		// Make sure there are children in the input line
+		if (keyStart >= 0 && parent < 0) {
+			throw new InputValidationException("Row with key \'" + chars.subSequence(keyStart, keyEnd) 
+					+ "\' does not contain any dependencies");
+		}
+	}
+
+	private static boolean isDelimiter(char c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	/**
+	 * Returns the descendants of the key, in key order, or an empty list if the key is unknown.
+	 * 
+	 * Once calculate() has been called the calculated closure is used.  Before then, only the part of the
+	 * graph the key reaches is searched and the answer is cached, so a few queries on a large graph do not
+	 * pay for calculating every node.
+	 * 
+	 * @param key  The key to query.
+	 * @return     The keys of its descendants.
+	 */
+	public List<String> descendantsOf(String key) {
+		return descendantsOf(Collections.singleton(key));
+	}
+
+	/**
+	 * Returns the union of the descendants of the keys, in key order.  Unknown keys are ignored.
+	 * 
+	 * @param keys  The keys to query.
+	 * @return      The keys of their descendants.
+	 */
+	public List<String> descendantsOf(Collection<String> keys) {
+		int[] nodes = findNodes(keys);
+		if (mCalculated && !mClosureMode.usesNodes()) {
+			return toKeys(union(mClosure, nodes));
+		}
+		if (null == mLazy) {
+			mLazy = new LazyClosure(getGraph(), mQueryCacheSize);
+		}
+		return toKeys(mLazy.descendants(nodes));
+	}
+
+	/**
+	 * Returns the ancestors of the key, every key that depends on it directly or indirectly, in key order.
+	 * These are the keys affected by a change to the key.  The answer is searched for in the reverse graph
+	 * and cached the same way as descendantsOf(), and a key in a circular reference is its own ancestor.
+	 * 
+	 * @param key  The key to query.
+	 * @return     The keys of its ancestors.
+	 */
+	public List<String> ancestorsOf(String key) {
+		return ancestorsOf(Collections.singleton(key));
+	}
+
+	/**
+	 * Returns the union of the ancestors of the keys, in key order.  Unknown keys are ignored.
+	 * 
+	 * @param keys  The keys to query, for example the keys that changed.
+	 * @return      The keys of their ancestors.
+	 */
+	public List<String> ancestorsOf(Collection<String> keys) {
+		int[] nodes = findNodes(keys);
+		if (null == mReverseLazy) {
+			mReverseLazy = new LazyClosure(getGraph().reverse(), mQueryCacheSize);
+		}
+		return toKeys(mReverseLazy.descendants(nodes));
+	}
+
+	/**
+	 * Returns true if the key depends on the dependency, directly or indirectly.  A key only depends on
+	 * itself if it is part of a circular reference.  Unknown keys do not depend on anything.
+	 * 
+	 * Once calculate() has been called the calculated closure is used.  Before then the query is answered
+	 * by a ReachabilityIndex, which takes memory in proportion to the size of the graph instead of the
+	 * size of every node's descendants.
+	 * 
+	 * @param key         The key to query.
+	 * @param dependency  The possible dependency.
+	 */
+	public boolean dependsOn(String key, String dependency) {
+		KeyTable keys = mBuilder.getKeys();
+		int node = keys.find(key);
+		int descendant = keys.find(dependency);
+		if (node < 0 || descendant < 0) {
+			return false;
+		}
+		if (mCalculated && !mClosureMode.usesNodes()) {
+			return mClosure.contains(node, descendant);
+		}
+		if (null == mReachability) {
+			mReachability = new ReachabilityIndex(getGraph());
+		}
+		return mReachability.dependsOn(node, descendant);
+	}
+
+	/**
+	 * Returns the estimated sizes of the descendants of every key, and of the output, for the current input.
+	 * The estimate takes time and memory in proportion to the size of the graph, so it can be used to
+	 * choose a closure mode before calling calculate().
+	 * 
+	 * @return The estimator.
+	 */
+	public ClosureEstimator estimate() {
+		LOGGER.info("Estimating Dependencies");
+		return new ClosureEstimator(getGraph());
+	}
+
+	/**
+	 * Returns a shortest chain of dependencies from the key to the dependency, which explains why the
+	 * dependency is one of the key's descendants.  The chain from a key to itself is a circular reference.
+	 * 
+	 * The chain is searched for in the graph from both ends, so nothing needs to be calculated first,
+	 * and the search is limited by setPathMaxVisited() and setPathTimeout().
+	 * 
+	 * @param key         The key to query.
+	 * @param dependency  The dependency.
+	 * @return            The keys of the chain, starting with the key and ending with the dependency,
+	 *                    or an empty list if the key does not depend on it or either key is unknown.
+	 * @throws SearchLimitException if the search visits too many keys or takes too long.
+	 */
+	public List<String> shortestPath(String key, String dependency) {
+		List<List<String>> paths = pathsBetween(key, dependency, 1);
+		return paths.isEmpty() ? Collections.<String>emptyList() : paths.get(0);
+	}
+
+	/**
+	 * Returns the shortest chains of dependencies from the key to the dependency, shortest first.  Each chain
+	 * only goes through a key once, and the chains are searched for the same way as shortestPath().
+	 * 
+	 * @param key         The key to query.
+	 * @param dependency  The dependency.
+	 * @param count       The most chains to return.
+	 * @return            The keys of each chain, empty if the key does not depend on the dependency or either
+	 *                    key is unknown.
+	 * @throws SearchLimitException if a search visits too many keys or the query takes too long.
+	 */
+	public List<List<String>> pathsBetween(String key, String dependency, int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Path count must be positive: " + count);
+		}
+		KeyTable keys = mBuilder.getKeys();
+		int node = keys.find(key);
+		int descendant = keys.find(dependency);
+		List<List<String>> paths = new ArrayList<>();
+		if (node < 0 || descendant < 0) {
+			return paths;
+		}
+		PathFinder finder = new PathFinder(getGraph(), mPathMaxVisited, mPathTimeoutMillis);
+		for (int[] path : finder.shortestPaths(node, descendant, count)) {
+			List<String> pathKeys = new ArrayList<>(path.length);
+			for (int id : path) {
+				pathKeys.add(keys.getKey(id));
+			}
+			paths.add(pathKeys);
+		}
+		return paths;
+	}
+
+	/**
+	 * Returns the ids of the keys that are known.
+	 */
+	private int[] findNodes(Collection<String> keys) {
+		KeyTable table = mBuilder.getKeys();
+		int[] nodes = new int[keys.size()];
+		int count = 0;
+		for (String key : keys) {
+			int node = table.find(key);
+			if (node >= 0) {
+				nodes[count++] = node;
+			}
+		}
+		return Arrays.copyOf(nodes, count);
+	}
+
+	/**
+	 * Returns the union of the descendants of the nodes in the closure.
+	 */
+	private static int[] union(Closure closure, int[] nodes) {
+		if (nodes.length == 1) {
+			return closure.descendants(nodes[0]);
+		}
+		BitSet union = new BitSet();
+		for (int node : nodes) {
+			for (int descendant : closure.descendants(node)) {
+				union.set(descendant);
+			}
+		}
+		return union.stream().toArray();
+	}
+
+	/**
+	 * Returns the keys of the ids, sorted in key order.
+	 */
+	private List<String> toKeys(int[] ids) {
+		KeyTable table = mBuilder.getKeys();
+		String[] keys = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			keys[i] = table.getKey(ids[i]);
+		}
+		Arrays.sort(keys);
+		return Arrays.asList(keys);
 	}
 
 	/**
 	 * Generate the output from the dependency set.  
+	 * For large outputs use writeOutput() instead, which does not hold the whole output in memory.
 	 */
 	public String generateOutput() {
+		StringWriter output = new StringWriter();
+		try {
+			writeOutput(output);
+		} catch (IOException e) {
+			// A StringWriter does not throw IOExceptions.
+			throw new UncheckedIOException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Write the output to the writer a line at a time, calling calculate() first if necessary.
+	 * The writer is flushed but not closed.
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeOutput(Writer writer) throws IOException {
 		LOGGER.info("Generating Output");
 		// If we haven't calculated, do the calculation.  
 		if (!mCalculated) {
@@ -126,18 +1019,195 @@ public class DependencyEvaluator {
 		/** 
 		 * Generate a line for each of the parent nodes listing all of the expanded descendants.
 		 */
-		StringBuilder output = new StringBuilder();
-		for (DependencyNode node : mNodes.values()) {
-			output.append(node.getKey());
-			output.append(" ");
-			for (String dependency : node.getAllDescendants()) {
-				output.append(" ").append(dependency);
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.OUTPUT);
+		try {
+			long written = 0;
+			if (mClosureMode.usesNodes()) {
+				StringBuilder line = new StringBuilder();
+				for (DependencyNode node : mNodes.values()) {
+					line.setLength(0);
+					line.append(node.getKey());
+					line.append(" ");
+					for (String dependency : node.getAllDescendants()) {
+						line.append(" ").append(dependency);
+					}
+					line.append("\n");
+					writer.append(line);
+					written += line.length();
+				}
+			} else {
+				written = createWriter().write(writer);
 			}
-			output.append("\n");
+			writer.flush();
+			METRICS.add(Counter.OUTPUT_BYTES, written);
+		} finally {
+			timer.close();
+		}
+	}
+
+	/**
+	 * Write the output as UTF-8 to the stream a line at a time, calling calculate() first if necessary.
+	 * The stream is not closed.
+	 * 
+	 * @param output
+	 * @throws IOException
+	 */
+	public void writeOutput(OutputStream output) throws IOException {
+		writeOutput(Channels.newChannel(output));
+		output.flush();
+	}
+
+	/**
+	 * Write the output as UTF-8 to the channel through one reusable buffer, calling calculate() first if necessary.
+	 * The channel is not closed.
+	 * 
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeOutput(WritableByteChannel channel) throws IOException {
+		if (mClosureMode.usesNodes() || !mCalculated) {
+			if (!mCalculated) {
+				calculate();
+			}
+			if (mClosureMode.usesNodes()) {
+				writeOutput(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE));
+				return;
+			}
+		}
+		LOGGER.info("Generating Output");
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.OUTPUT);
+		try {
+			METRICS.add(Counter.OUTPUT_BYTES, createWriter().write(channel));
+		} finally {
+			timer.close();
+		}
+	}
+
+	/**
+	 * Generate the output for the part of the dependencies the query asks for.
+	 * The query searches the graph from its roots, so nothing needs to be calculated first.
+	 * 
+	 * @param query  The depth, filters and keys to limit the output to.
+	 */
+	public String generateOutput(ClosureQuery query) {
+		StringWriter output = new StringWriter();
+		try {
+			writeOutput(output, query);
+		} catch (IOException e) {
+			// A StringWriter does not throw IOExceptions.
+			throw new UncheckedIOException(e);
 		}
-		
 		return output.toString();
 	}
+
+	/**
+	 * Write the output for the part of the dependencies the query asks for to the writer a line at a time.
+	 * An unbounded query writes the same output as writeOutput(writer).  The writer is flushed but not closed.
+	 * 
+	 * @param writer
+	 * @param query   The depth, filters and keys to limit the output to.
+	 * @throws IOException
+	 */
+	public void writeOutput(Writer writer, ClosureQuery query) throws IOException {
+		if (query.isUnbounded()) {
+			writeOutput(writer);
+			return;
+		}
+		ClosureWriter closureWriter = createWriter(query);
+		LOGGER.info("Generating Output");
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.OUTPUT);
+		try {
+			METRICS.add(Counter.OUTPUT_BYTES, closureWriter.write(writer));
+			writer.flush();
+		} finally {
+			timer.close();
+		}
+	}
+
+	/**
+	 * Write the output for the part of the dependencies the query asks for as UTF-8 to the channel.
+	 * An unbounded query writes the same output as writeOutput(channel).  The channel is not closed.
+	 * 
+	 * @param channel
+	 * @param query    The depth, filters and keys to limit the output to.
+	 * @throws IOException
+	 */
+	public void writeOutput(WritableByteChannel channel, ClosureQuery query) throws IOException {
+		if (query.isUnbounded()) {
+			writeOutput(channel);
+			return;
+		}
+		ClosureWriter closureWriter = createWriter(query);
+		LOGGER.info("Generating Output");
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.OUTPUT);
+		try {
+			METRICS.add(Counter.OUTPUT_BYTES, closureWriter.write(channel));
+		} finally {
+			timer.close();
+		}
+	}
+
+	/**
+	 * Search the current graph for the closure of the query's roots, and create the writer for their lines.
+	 */
+	private ClosureWriter createWriter(ClosureQuery query) {
+		LOGGER.info("Calculating Dependencies for the query");
+		DependencyGraph graph = getGraph();
+		QueryClosureEngine engine = new QueryClosureEngine(query);
+		BitSet roots = engine.roots(graph);
+		Closure closure;
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.CLOSURE);
+		try {
+			closure = engine.calculate(graph, roots);
+		} finally {
+			timer.close();
+		}
+		return new ClosureWriter(graph.getKeys(), roots::get, closure);
+	}
+
+	/**
+	 * Create the writer for the calculated closure, which is no longer tied to the graph once it has been updated.
+	 */
+	private ClosureWriter createWriter() {
+		if (null != mIncremental) {
+			return new ClosureWriter(mBuilder.getKeys(), mIncremental::isParent, mIncremental);
+		}
+		return new ClosureWriter(mGraph, mClosure);
+	}
+	
+	/**
+	 * Returns an immutable snapshot of the current dependencies, calculating them first if necessary.
+	 * The snapshot shares the keys interned so far and the arrays that are never modified, and once the
+	 * closure is updated incrementally it shares the closure's lists too, so later updates do not change
+	 * it and a snapshot after a small update costs little more than the update.
+	 *
+	 * @param version  The version of the snapshot.
+	 * @throws IllegalStateException if the closure mode does not store the closure, or stores it off the heap.
+	 */
+	DependencySnapshot snapshot(long version) {
+		if (!mClosureMode.storesClosure()) {
+			throw new IllegalStateException("A snapshot needs a closure mode that stores the closure: " + mClosureMode);
+		}
+		if (isOffHeap()) {
+			throw new IllegalStateException("A snapshot needs the closure stored on the heap: " + mStorage);
+		}
+		if (!mCalculated) {
+			calculate();
+		}
+		if (null != mIncremental) {
+			return new DependencySnapshot(version, mBuilder.getKeys().share(), mIncremental.snapshot());
+		}
+		DependencyGraph graph = getGraph();
+		return new DependencySnapshot(version, graph.withKeys(graph.getKeys().share()), mClosure);
+	}
+
+	/**
+	 * Returns true if the dependencies are calculated and kept up to date by the updates since.
+	 * @return
+	 */
+	public boolean isCalculated() {
+		return mCalculated;
+	}
 	
 	/**
 	 * Process the nodes recursively processing dependencies.  
@@ -148,15 +1218,109 @@ public class DependencyEvaluator {
 	 */
 	public void calculate() {
 		LOGGER.info("Calculating Dependencies");
+		mGraph = getGraph();
+		mIncremental = null;
+		// The previous closure is replaced, so free it before allocating the next.
+		freeStore();
+
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.CLOSURE);
+		try {
+			if (mClosureMode.usesNodes()) {
+				mNodes = createNodes(mGraph);
 
-		// Set the initial list of nodes to process
-		Collection<DependencyNode> nodesToProcess = mNodes.values();
-		while (!nodesToProcess.isEmpty()) {
-			LOGGER.finer("List of nodes to process " + nodesToProcess.toString());
-			// Process the list and keep a list of nodes that are not complete;
-			Collection<DependencyNode> reprocessingList = processNodes(nodesToProcess);
-			nodesToProcess = reprocessingList;
+				// Set the initial list of nodes to process
+				Collection<DependencyNode> nodesToProcess = mNodes.values();
+				long passes = 0;
+				long merges = 0;
+				while (!nodesToProcess.isEmpty()) {
+					if (LOGGER.isLoggable(Level.FINER)) {
+						LOGGER.finer("List of nodes to process " + nodesToProcess.toString());
+					}
+					// Each node merges the descendants of each of its children.
+					for (DependencyNode node : nodesToProcess) {
+						merges += node.getChildren().size();
+					}
+					// Process the list and keep a list of nodes that are not complete;
+					Collection<DependencyNode> reprocessingList = processNodes(nodesToProcess);
+					nodesToProcess = reprocessingList;
+					passes++;
+				}
+				// The first pass is not a reprocessing pass.
+				METRICS.add(Counter.REPROCESSING_PASSES, Math.max(0, passes - 1));
+				METRICS.add(Counter.SET_MERGES, merges);
+			} else {
+				mClosure = createEngine().calculate(mGraph);
+			}
+		} finally {
+			timer.close();
+		}
+		if (!mClosureMode.usesNodes() && (METRICS.isDetailed() || LOGGER.isLoggable(Level.INFO))) {
+			long bytes = mClosure.memoryBytes();
+			METRICS.add(Counter.CLOSURE_BYTES, bytes);
+			LOGGER.info("Closure of " + mGraph.nodeCount() + " nodes uses about " + bytes + " bytes");
+		}
+		mCalculated = true;
+	}
+
+	/**
+	 * Create the ClosureEngine for the current closure mode.
+	 */
+	private ClosureEngine createEngine() {
+		if (isOffHeap()) {
+			mStore = createStore();
+		}
+		switch (mClosureMode) {
+		case BITSET:
+			return null == mStore ? new BitSetClosureEngine() : new OffHeapClosureEngine(mStore);
+		case PARALLEL:
+			return null == mStore ? new ParallelClosureEngine(mParallelism) : new OffHeapClosureEngine(mStore, mParallelism);
+		case SORTED:
+			return new RankedClosureEngine(null == mStore ? new BitSetClosureEngine() : new OffHeapClosureEngine(mStore));
+		case STREAMING:
+			// Nothing is calculated up front, each line's descendants are searched for as it is written.
+			int cacheSize = mQueryCacheSize;
+			return graph -> new LazyClosure(graph, cacheSize);
+		case TRAVERSAL:
+		default:
+			return new TraversalClosureEngine();
+		}
+	}
+
+	/**
+	 * Create the store for the closure in the current storage.
+	 */
+	private OffHeapStore createStore() {
+		if (mStorage == ClosureStorage.DIRECT) {
+			return OffHeapStore.direct();
+		}
+		Path directory = null == mScratchDirectory ? Paths.get(System.getProperty("java.io.tmpdir")) : mScratchDirectory;
+		try {
+			return OffHeapStore.mapped(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Create a DependencyNode for each parent in the graph, mapping the ids back to keys.
+	 * 
+	 * @param graph  The graph built from the input data.
+	 * @return       The nodes keyed by the parent key.
+	 */
+	private Map<String, DependencyNode> createNodes(DependencyGraph graph) {
+		Map<String, DependencyNode> nodes = new TreeMap<>();
+		KeyTable keys = graph.getKeys();
+		int[] targets = graph.targets();
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			if (graph.isParent(node)) {
+				List<String> children = new ArrayList<>();
+				for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+					children.add(keys.getKey(targets[i]));
+				}
+				nodes.put(keys.getKey(node), new DependencyNode(keys.getKey(node), children));
+			}
 		}
+		return nodes;
 	}
 	
 	/**
@@ -169,8 +1333,10 @@ public class DependencyEvaluator {
 
 		// Iterate thru the nodes and determine all descendants of each node. 
 		// Each node will determine the descendants for its children and children's children, etc. 
+		boolean iterative = mClosureMode == ClosureMode.NODES_ITERATIVE;
 		for (DependencyNode node : nodes) {
-			if (!node.determineDescendents(mNodes)) {
+			boolean expanded = iterative ? node.determineDescendentsIterative(mNodes) : node.determineDescendents(mNodes);
+			if (!expanded) {
 				incompleteNodes.add(node);
 			}
 		}
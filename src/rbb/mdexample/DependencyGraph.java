@@ -0,0 +1,150 @@
+/**
+ * The DependencyGraph is a compact, read only view of the dependencies using the interned integer ids.
+ *
+ * The edges are stored in compressed sparse row (CSR) form:
+ * the children of node n are mTargets[mOffsets[n]] .. mTargets[mOffsets[n + 1] - 1].
+ * The children of each node are sorted by id and contain no duplicates.
+ *
+ * mParents marks the nodes that were the key of at least one input row.  Only those nodes are listed
+ * in the output; nodes that only appear as children have no children of their own.
+ *
+ * reverse() builds the same graph with every edge turned around, so the children of a node in the reverse
+ * graph are its parents.  It is built the first time it is asked for and kept with the graph.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class DependencyGraph {
+
+	private final KeyTable mKeys;
+	private final int mNodeCount;
+	private final int[] mOffsets;
+	private final int[] mTargets;
+	private final BitSet mParents;
+	private DependencyGraph mReverse = null;
+
+	/**
+	 * Construct the graph from CSR arrays.  The arrays are used directly, not copied.
+	 *
+	 * @param keys     The key table the ids were interned in.
+	 * @param offsets  The start of each node's children in targets, with offsets[nodeCount] == edge count.
+	 * @param targets  The children of all the nodes.
+	 * @param parents  The nodes that were the key of an input row.
+	 */
+	DependencyGraph(KeyTable keys, int[] offsets, int[] targets, BitSet parents) {
+		mKeys = keys;
+		mNodeCount = offsets.length - 1;
+		mOffsets = offsets;
+		mTargets = targets;
+		mParents = parents;
+	}
+
+	/**
+	 * Returns the same graph with another key table holding the same ids, sharing the CSR arrays.
+	 *
+	 * @param keys  The key table, such as a copy of this graph's key table.
+	 * @return      The graph.
+	 */
+	DependencyGraph withKeys(KeyTable keys) {
+		return new DependencyGraph(keys, mOffsets, mTargets, mParents);
+	}
+
+	/**
+	 * Returns the key table used to map the ids back to keys.
+	 * @return
+	 */
+	public KeyTable getKeys() {
+		return mKeys;
+	}
+
+	/**
+	 * Returns the number of nodes.  All node ids are in the range [0, nodeCount()).
+	 * @return
+	 */
+	public int nodeCount() {
+		return mNodeCount;
+	}
+
+	/**
+	 * Returns the number of distinct edges.
+	 * @return
+	 */
+	public int edgeCount() {
+		return mOffsets[mNodeCount];
+	}
+
+	/**
+	 * Returns the index in targets() of the first child of the node.
+	 */
+	public int childStart(int node) {
+		return mOffsets[node];
+	}
+
+	/**
+	 * Returns the index in targets() just past the last child of the node.
+	 */
+	public int childEnd(int node) {
+		return mOffsets[node + 1];
+	}
+
+	/**
+	 * Returns the shared array of children for all nodes, indexed by childStart()/childEnd().
+	 * The array must not be modified.
+	 * @return
+	 */
+	public int[] targets() {
+		return mTargets;
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by the graph and its keys, not counting the reverse graph.
+	 * @return
+	 */
+	public long memoryBytes() {
+		return Integer.BYTES * ((long) mOffsets.length + mTargets.length) + mParents.size() / Byte.SIZE
+				+ mKeys.memoryBytes();
+	}
+
+	/**
+	 * Returns true if the node was the key of an input row.
+	 */
+	public boolean isParent(int node) {
+		return mParents.get(node);
+	}
+
+	/**
+	 * Returns the graph with every edge reversed, building it the first time.  The reverse of the reverse
+	 * is this graph.  A node is a parent in the reverse graph if it is the child of any node in this graph.
+	 * @return
+	 */
+	public synchronized DependencyGraph reverse() {
+		if (null == mReverse) {
+			// Count the parents of each node and turn the counts into offsets.
+			int[] offsets = new int[mNodeCount + 1];
+			for (int i = 0; i < edgeCount(); i++) {
+				offsets[mTargets[i] + 1]++;
+			}
+			for (int n = 0; n < mNodeCount; n++) {
+				offsets[n + 1] += offsets[n];
+			}
+
+			// Visiting the parents in id order leaves each range sorted.
+			int[] sources = new int[edgeCount()];
+			int[] next = Arrays.copyOf(offsets, mNodeCount);
+			BitSet parents = new BitSet(mNodeCount);
+			for (int node = 0; node < mNodeCount; node++) {
+				for (int i = mOffsets[node]; i < mOffsets[node + 1]; i++) {
+					sources[next[mTargets[i]]++] = node;
+					parents.set(mTargets[i]);
+				}
+			}
+			mReverse = new DependencyGraph(mKeys, offsets, sources, parents);
+			mReverse.mReverse = this;
+		}
+		return mReverse;
+	}
+}
@@ -13,11 +13,15 @@
  */
 package rbb.mdexample;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DependencyNode {
@@ -50,8 +54,9 @@ public class DependencyNode {
 	 * @param children  The list of children strings to add.
 	 */
 	public void addChildren(List<String> children) {
-		LOGGER.info("Adding children ");
-		LOGGER.finer("Node " + mKey + " Children " + children);
+		if (LOGGER.isLoggable(Level.FINER)) {
+			LOGGER.finer("Node " + mKey + " Adding children " + children);
+		}
 		mChildren.addAll(children);
 	}
 	
@@ -129,7 +134,9 @@ public class DependencyNode {
 	 * @param nodeSet
 	 */
 	protected boolean determineDescendents(Map<String, DependencyNode> nodeSet) {
-		LOGGER.finer("Calculating Node " + mKey);
+		if (LOGGER.isLoggable(Level.FINER)) {
+			LOGGER.finer("Calculating Node " + mKey);
+		}
 		
 		if (!mExpanded) {
 			mProcessing = true;
@@ -138,7 +145,9 @@ public class DependencyNode {
 			setDescendantProcessing(false);
 			//Now iterate thru and add in all the grand children, etc...
 			for (String child : mChildren) {
-				LOGGER.finest("  Processing Node - Child: " + mKey + " - " + child);
+				if (LOGGER.isLoggable(Level.FINEST)) {
+					LOGGER.finest("  Processing Node - Child: " + mKey + " - " + child);
+				}
 				
 				// Get the child node from the supplied nodeSet domain.
 				DependencyNode childNode = nodeSet.get(child);
@@ -161,6 +170,80 @@ public class DependencyNode {
 		return mExpanded;
 	}	
 
+	/**
+	 * Expand the child nodes for this node the same way as determineDescendents(), but with an explicit stack
+	 * of nodes instead of recursion, so the depth of the dependencies is not limited by the thread stack size.
+	 * 
+	 * Each Frame holds a node being processed, the iterator over its children and the child node it is waiting on.
+	 * When the child's frame is finished the child's descendants are merged, just as they are after the recursive call.
+	 * 
+	 * @param nodeSet
+	 */
+	protected boolean determineDescendentsIterative(Map<String, DependencyNode> nodeSet) {
+		if (!mExpanded) {
+			Deque<Frame> frames = new ArrayDeque<>();
+			frames.push(startFrame());
+			
+			while (!frames.isEmpty()) {
+				Frame frame = frames.peek();
+				DependencyNode node = frame.mNode;
+				
+				// Add in the descendants of the child that was just expanded.
+				if (null != frame.mPendingChild) {
+					node.mAllDescendants.addAll(frame.mPendingChild.getAllDescendants());
+					frame.mPendingChild = null;
+				}
+				
+				if (frame.mChildren.hasNext()) {
+					DependencyNode childNode = nodeSet.get(frame.mChildren.next());
+					if (null != childNode) {
+						if (!childNode.isExpanded()) {
+							if (!childNode.isProcessing()) {
+								// Expand the child before its descendants are added to this node.
+								frame.mPendingChild = childNode;
+								frames.push(childNode.startFrame());
+								continue;
+							} else {
+								node.setDescendantProcessing(true);
+							}
+						}
+						node.mAllDescendants.addAll(childNode.getAllDescendants());
+					}
+				} else {
+					// All the children are done, so finish the node the same way as the recursive version.
+					node.mProcessing = false;
+					node.mExpanded = !node.isDescendantProcessing();
+					frames.pop();
+				}
+			}
+		}
+		return mExpanded;
+	}
+
+	/**
+	 * Mark this node as processing, add the direct children and return the Frame to process the children.
+	 */
+	private Frame startFrame() {
+		mProcessing = true;
+		mAllDescendants.addAll(mChildren);
+		setDescendantProcessing(false);
+		return new Frame(this);
+	}
+
+	/**
+	 * The state of one node in determineDescendentsIterative() - what would be the locals of a recursive call.
+	 */
+	private static class Frame {
+		final DependencyNode mNode;
+		final Iterator<String> mChildren;
+		DependencyNode mPendingChild = null;
+		
+		Frame(DependencyNode node) {
+			mNode = node;
+			mChildren = node.mChildren.iterator();
+		}
+	}
+
 	/**
 	 * Return the key as the string for this node.
 	 */
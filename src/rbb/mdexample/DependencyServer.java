@@ -0,0 +1,234 @@
+/**
+ * The DependencyServer keeps a ConcurrentDependencyEvaluator in memory and answers queries and updates sent to it over
+ * a local socket, so repeated queries pay neither the JVM startup nor the parsing and calculating again.
+ *
+ * The server only listens on the loopback address.  Each connection sends requests of one line each and gets
+ * one line back for each, starting with OK or ERROR.  The fields are separated by spaces or tabs, the same as
+ * the input rows, and the commands are not case sensitive:
+ * DESCENDANTS key [key...]    OK and the union of the descendants of the keys, in key order.
+ * ANCESTORS key [key...]      OK and the union of the ancestors of the keys, in key order.
+ * DEPENDS key dependency      OK true if the key depends on the dependency, otherwise OK false.
+ * ADD parent child            Add the dependency, replying OK.
+ * REMOVE parent child         Remove the dependency, replying OK.
+ * ADDNODE key                 Add the key without any dependencies, replying OK.
+ * REMOVENODE key              Remove every dependency to or from the key, replying OK.
+ * PING                        OK.
+ * QUIT                        Close the connection.
+ * SHUTDOWN                    OK, then stop the server.
+ *
+ * Each connection is served on its own thread from a cached pool, so a slow client does not hold up the
+ * others.  The queries are answered from the latest published version without locking, while the updates
+ * are applied one at a time, each publishing a new version.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+public class DependencyServer implements Closeable {
+
+	private static final String OK = "OK";
+	private static final String ERROR = "ERROR ";
+
+	private final ConcurrentDependencyEvaluator mEvaluator;
+	private final ServerSocket mServerSocket;
+	private final ExecutorService mExecutor;
+	private final Set<Socket> mConnections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	private final CountDownLatch mClosed = new CountDownLatch(1);
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Construct the server and bind it to the port on the loopback address.  Call start() to accept connections.
+	 *
+	 * @param evaluator  The evaluator to query and update, which other threads may use as well.
+	 * @param port       The port to listen on, 0 for any free port.
+	 * @throws IOException if the port can not be bound.
+	 */
+	public DependencyServer(ConcurrentDependencyEvaluator evaluator, int port) throws IOException {
+		mEvaluator = evaluator;
+		mServerSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		mExecutor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "DependencyServer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return
+	 */
+	public int getPort() {
+		return mServerSocket.getLocalPort();
+	}
+
+	/**
+	 * Start accepting connections on a background thread.
+	 */
+	public void start() {
+		mExecutor.execute(this::accept);
+		LOGGER.info("Listening on port " + getPort());
+	}
+
+	/**
+	 * Wait until the server is closed, by close() or a SHUTDOWN request.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void awaitClose() throws InterruptedException {
+		mClosed.await();
+	}
+
+	/**
+	 * Stop accepting connections and close the open ones.
+	 */
+	@Override
+	public void close() throws IOException {
+		mServerSocket.close();
+		for (Socket socket : mConnections) {
+			socket.close();
+		}
+		mExecutor.shutdown();
+		mClosed.countDown();
+	}
+
+	/**
+	 * Apply one request to the evaluator.
+	 *
+	 * @param request  The request line.
+	 * @return         The response line, without a new line.
+	 */
+	String handle(String request) {
+		String[] fields = request.trim().split("[ \t]+");
+		List<String> keys = Arrays.asList(fields).subList(1, fields.length);
+		try {
+			switch (fields[0].toUpperCase()) {
+			case "DESCENDANTS":
+				require(fields, 2, Integer.MAX_VALUE);
+				return join(mEvaluator.descendantsOf(keys));
+			case "ANCESTORS":
+				require(fields, 2, Integer.MAX_VALUE);
+				return join(mEvaluator.ancestorsOf(keys));
+			case "DEPENDS":
+				require(fields, 3, 3);
+				return OK + " " + mEvaluator.dependsOn(fields[1], fields[2]);
+			case "ADD":
+				require(fields, 3, 3);
+				mEvaluator.addEdge(fields[1], fields[2]);
+				return OK;
+			case "REMOVE":
+				require(fields, 3, 3);
+				mEvaluator.removeEdge(fields[1], fields[2]);
+				return OK;
+			case "ADDNODE":
+				require(fields, 2, 2);
+				mEvaluator.addNode(fields[1]);
+				return OK;
+			case "REMOVENODE":
+				require(fields, 2, 2);
+				mEvaluator.removeNode(fields[1]);
+				return OK;
+			case "PING":
+				return OK;
+			default:
+				return ERROR + "Unknown command: " + fields[0];
+			}
+		} catch (IllegalArgumentException e) {
+			return ERROR + e.getMessage();
+		} catch (RuntimeException e) {
+			LOGGER.severe("Request failed: " + request + ": " + e);
+			return ERROR + e;
+		}
+	}
+
+	/**
+	 * Accept connections until the server socket is closed.
+	 */
+	private void accept() {
+		while (!mServerSocket.isClosed()) {
+			try {
+				Socket socket = mServerSocket.accept();
+				mConnections.add(socket);
+				try {
+					mExecutor.execute(() -> serve(socket));
+				} catch (RejectedExecutionException e) {
+					// Accepted as the server closed.
+					mConnections.remove(socket);
+					socket.close();
+				}
+			} catch (IOException e) {
+				if (!mServerSocket.isClosed()) {
+					LOGGER.warning("Could not accept a connection: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Answer the requests of one connection until it sends QUIT or SHUTDOWN, or is closed.
+	 */
+	private void serve(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader input = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				Writer output = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+			String request;
+			while (null != (request = input.readLine())) {
+				String command = request.trim().toUpperCase();
+				if ("QUIT".equals(command)) {
+					break;
+				}
+				if ("SHUTDOWN".equals(command)) {
+					output.write(OK + "\n");
+					output.flush();
+					close();
+					break;
+				}
+				output.write(handle(request));
+				output.write('\n');
+				output.flush();
+			}
+		} catch (IOException e) {
+			// The client went away, or the server is closing.
+			LOGGER.fine("Connection closed: " + e.getMessage());
+		} finally {
+			mConnections.remove(socket);
+		}
+	}
+
+	private static void require(String[] fields, int min, int max) {
+		if (fields.length < min || fields.length > max) {
+			throw new IllegalArgumentException(fields[0].toUpperCase() + " takes "
+					+ (min == max ? String.valueOf(min - 1) : "at least " + (min - 1)) + " keys");
+		}
+	}
+
+	private static String join(List<String> keys) {
+		StringBuilder line = new StringBuilder(OK);
+		for (String key : keys) {
+			line.append(' ').append(key);
+		}
+		return line.toString();
+	}
+}
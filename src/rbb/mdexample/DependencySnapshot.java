@@ -0,0 +1,253 @@
+/**
+ * A DependencySnapshot is one immutable version of the calculated dependencies, published by a
+ * ConcurrentDependencyEvaluator for any number of threads to query at once.
+ *
+ * It holds a read only table of the keys, the edges and a closure, none of which are modified afterwards, so
+ * the queries take no locks and keep no state between calls.  The keys are looked up by their UTF-8 bytes,
+ * since KeyTable.find(String) uses a scratch buffer.
+ *
+ * The ancestors are searched for up the parents of each node.  The snapshot of an IncrementalClosure holds
+ * the parents itself.  Otherwise they are read from the reverse graph, which is built with the snapshot,
+ * before the snapshot is published, as building it in the first ancestorsOf() call would hold the graph's
+ * lock and make every other reader of that version wait.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+public class DependencySnapshot {
+
+	private final long mVersion;
+	private final KeyTable mKeys;
+	private final int mKeyCount;
+	private final IntPredicate mParents;
+	private final Closure mClosure;
+	// The parents of each node come from one of these, the other is null.
+	private final DependencyGraph mReverse;
+	private final IncrementalClosure.Snapshot mIncremental;
+
+	/**
+	 * Construct the snapshot.  Nothing it is given may be modified afterwards.
+	 *
+	 * @param version  The version of the snapshot.
+	 * @param graph    The graph, with a read only key table.
+	 * @param closure  The closure of the graph.
+	 */
+	DependencySnapshot(long version, DependencyGraph graph, Closure closure) {
+		mVersion = version;
+		mKeys = graph.getKeys();
+		mKeyCount = graph.nodeCount();
+		mParents = graph::isParent;
+		mClosure = closure;
+		mReverse = graph.reverse();
+		mIncremental = null;
+	}
+
+	/**
+	 * Construct the snapshot from a snapshot of an IncrementalClosure.
+	 *
+	 * @param version  The version of the snapshot.
+	 * @param keys     The read only key table.
+	 * @param closure  The snapshot of the closure and its edges.
+	 */
+	DependencySnapshot(long version, KeyTable keys, IncrementalClosure.Snapshot closure) {
+		mVersion = version;
+		mKeys = keys;
+		mKeyCount = keys.size();
+		mParents = closure::isParent;
+		mClosure = closure;
+		mReverse = null;
+		mIncremental = closure;
+	}
+
+	/**
+	 * Returns the version, which is one more for each version published.
+	 * @return
+	 */
+	public long getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 * @return
+	 */
+	public int keyCount() {
+		return mKeyCount;
+	}
+
+	/**
+	 * Returns the descendants of the key, in key order, or an empty list if the key is unknown.
+	 *
+	 * @param key  The key to query.
+	 * @return     The keys of its descendants.
+	 */
+	public List<String> descendantsOf(String key) {
+		return descendantsOf(Collections.singleton(key));
+	}
+
+	/**
+	 * Returns the union of the descendants of the keys, in key order.  Unknown keys are ignored.
+	 *
+	 * @param keys  The keys to query.
+	 * @return      The keys of their descendants.
+	 */
+	public List<String> descendantsOf(Collection<String> keys) {
+		int[] nodes = findNodes(keys);
+		if (nodes.length == 1) {
+			return toKeys(mClosure.descendants(nodes[0]));
+		}
+		BitSet union = new BitSet();
+		for (int node : nodes) {
+			for (int descendant : mClosure.descendants(node)) {
+				union.set(descendant);
+			}
+		}
+		return toKeys(union.stream().toArray());
+	}
+
+	/**
+	 * Returns the ancestors of the key, every key that depends on it directly or indirectly, in key order.
+	 * A key in a circular reference is its own ancestor.
+	 *
+	 * @param key  The key to query.
+	 * @return     The keys of its ancestors.
+	 */
+	public List<String> ancestorsOf(String key) {
+		return ancestorsOf(Collections.singleton(key));
+	}
+
+	/**
+	 * Returns the union of the ancestors of the keys, in key order.  Unknown keys are ignored.
+	 *
+	 * @param keys  The keys to query.
+	 * @return      The keys of their ancestors.
+	 */
+	public List<String> ancestorsOf(Collection<String> keys) {
+		BitSet reached = new BitSet(mKeyCount);
+		int[] stack = new int[16];
+		int top = 0;
+		for (int node : findNodes(keys)) {
+			stack[top++] = node;
+			while (top > 0) {
+				int next = stack[--top];
+				int[] parents;
+				int start;
+				int end;
+				if (null == mReverse) {
+					parents = mIncremental.parents(next);
+					start = 0;
+					end = parents.length;
+				} else {
+					parents = mReverse.targets();
+					start = mReverse.childStart(next);
+					end = mReverse.childEnd(next);
+				}
+				for (int i = start; i < end; i++) {
+					if (!reached.get(parents[i])) {
+						reached.set(parents[i]);
+						if (top == stack.length) {
+							stack = Arrays.copyOf(stack, top * 2);
+						}
+						stack[top++] = parents[i];
+					}
+				}
+			}
+		}
+		return toKeys(reached.stream().toArray());
+	}
+
+	/**
+	 * Returns true if the key depends on the dependency, directly or indirectly.  Unknown keys do not
+	 * depend on anything.
+	 *
+	 * @param key         The key to query.
+	 * @param dependency  The possible dependency.
+	 */
+	public boolean dependsOn(String key, String dependency) {
+		int node = find(key);
+		int descendant = find(dependency);
+		return node >= 0 && descendant >= 0 && mClosure.contains(node, descendant);
+	}
+
+	/**
+	 * Generate the output.  For large outputs use writeOutput() instead.
+	 */
+	public String generateOutput() {
+		StringWriter output = new StringWriter();
+		try {
+			writeOutput(output);
+		} catch (IOException e) {
+			// A StringWriter does not throw.
+			throw new UncheckedIOException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Write the output to the writer.  The writer is not closed or flushed.
+	 *
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeOutput(Writer writer) throws IOException {
+		new ClosureWriter(mKeys, mParents, mClosure).write(writer);
+	}
+
+	/**
+	 * Write the output as UTF-8 bytes to the channel.  The channel is not closed.
+	 *
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeOutput(WritableByteChannel channel) throws IOException {
+		new ClosureWriter(mKeys, mParents, mClosure).write(channel);
+	}
+
+	private int find(String key) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		return mKeys.find(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * Returns the ids of the keys that are known.
+	 */
+	private int[] findNodes(Collection<String> keys) {
+		int[] nodes = new int[keys.size()];
+		int count = 0;
+		for (String key : keys) {
+			int node = find(key);
+			if (node >= 0) {
+				nodes[count++] = node;
+			}
+		}
+		return Arrays.copyOf(nodes, count);
+	}
+
+	/**
+	 * Returns the keys of the ids, sorted in key order.
+	 */
+	private List<String> toKeys(int[] ids) {
+		KeyTable table = mKeys;
+		String[] keys = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			keys[i] = table.getKey(ids[i]);
+		}
+		Arrays.sort(keys);
+		return Arrays.asList(keys);
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * The EvaluatorMetrics time the phases of evaluating the dependencies and count what they process, for the
+ * whole JVM, the same way every class logs to the global Logger.
+ *
+ * A phase is timed by closing the Timer returned by time(), which costs two calls to System.nanoTime() per
+ * phase and nothing per row, key or edge.  The counters are added to once per phase as well, from totals
+ * kept in locals while the phase runs.  Some counters are gauges, set to the size of the latest graph or
+ * closure rather than added to.
+ *
+ * Detailed metrics also measure the bytes each phase allocates on the thread that runs it, where the JVM
+ * supports it, and walk the closure to estimate the memory it holds.  They are off by default, since the
+ * walk takes time in proportion to the number of nodes.  The threads of ClosureMode.PARALLEL are not
+ * included in the allocations.
+ *
+ * registerMBean() makes the metrics visible over JMX, and getSummary() returns them as JSON.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class EvaluatorMetrics implements EvaluatorMetricsMXBean {
+
+	public enum Phase {
+		PARSE,      // Reading the input rows and interning the keys, or loading a graph file.
+		BUILD,      // Building the DependencyGraph from the edges.
+		CLOSURE,    // Calculating the descendants of every node.
+		UPDATE,     // Updating the calculated descendants after an edge or node is added or removed.
+		OUTPUT;     // Writing the output.
+	}
+
+	public enum Counter {
+		NODES(true),                 // The nodes of the latest graph built.
+		EDGES(true),                 // The edges of the latest graph built.
+		GRAPH_BYTES(true),           // The estimated memory of the latest graph built, including its keys.
+		COMPONENTS(true),            // The strongly connected components of the latest graph condensed.
+		CLOSURE_BYTES(true),         // The estimated memory of the latest closure, with detailed metrics.
+		REPROCESSING_PASSES(false),  // The passes over the nodes needed by the DependencyNode modes.
+		SET_MERGES(false),           // The descendant sets merged into another.
+		SHARED_SETS(false),          // The descendant sets replaced by an equal set already held.
+		OUTPUT_BYTES(false);         // The bytes written, or the characters for a Writer.
+
+		private final boolean mGauge;
+
+		Counter(boolean gauge) {
+			mGauge = gauge;
+		}
+
+		/**
+		 * Returns true if the counter is set to the latest value instead of added to.
+		 */
+		public boolean isGauge() {
+			return mGauge;
+		}
+	}
+
+	public static final String OBJECT_NAME = "rbb.mdexample:type=EvaluatorMetrics";
+
+	private static final EvaluatorMetrics INSTANCE = new EvaluatorMetrics();
+
+	private final AtomicLongArray mCalls = new AtomicLongArray(Phase.values().length);
+	private final AtomicLongArray mNanos = new AtomicLongArray(Phase.values().length);
+	private final AtomicLongArray mAllocated = new AtomicLongArray(Phase.values().length);
+	private final AtomicLongArray mCounters = new AtomicLongArray(Counter.values().length);
+	private volatile boolean mDetailed = false;
+
+	// The JVM's per thread allocation counter, or null if it does not have one.
+	private final com.sun.management.ThreadMXBean mThreads;
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private EvaluatorMetrics() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+			mThreads = (com.sun.management.ThreadMXBean) threads;
+		} else {
+			mThreads = null;
+		}
+	}
+
+	/**
+	 * Returns the metrics of this JVM.
+	 * @return
+	 */
+	public static EvaluatorMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, unless they already are.
+	 */
+	public static void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// Already registered.
+		} catch (JMException e) {
+			LOGGER.warning("Could not register the metrics MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Start timing the phase.  Close the returned Timer when the phase is finished.
+	 *
+	 * @param phase  The phase.
+	 * @return       The running timer.
+	 */
+	public Timer time(Phase phase) {
+		return new Timer(phase, mDetailed ? allocatedBytes() : -1);
+	}
+
+	/**
+	 * Add to the counter, or set it if it is a gauge.
+	 *
+	 * @param counter  The counter.
+	 * @param value    The amount to add, or the value of a gauge.
+	 */
+	public void add(Counter counter, long value) {
+		if (counter.isGauge()) {
+			mCounters.set(counter.ordinal(), value);
+		} else {
+			mCounters.addAndGet(counter.ordinal(), value);
+		}
+	}
+
+	/**
+	 * Returns the value of the counter.
+	 */
+	public long getCount(Counter counter) {
+		return mCounters.get(counter.ordinal());
+	}
+
+	/**
+	 * Returns the number of times the phase has run.
+	 */
+	public long getCalls(Phase phase) {
+		return mCalls.get(phase.ordinal());
+	}
+
+	/**
+	 * Returns the total nanoseconds spent in the phase.
+	 */
+	public long getNanos(Phase phase) {
+		return mNanos.get(phase.ordinal());
+	}
+
+	/**
+	 * Returns the bytes allocated by the phase while detailed metrics were on.
+	 */
+	public long getAllocatedBytes(Phase phase) {
+		return mAllocated.get(phase.ordinal());
+	}
+
+	@Override
+	public Map<String, Long> getPhaseCalls() {
+		return toMap(mCalls, Phase.values());
+	}
+
+	@Override
+	public Map<String, Long> getPhaseNanos() {
+		return toMap(mNanos, Phase.values());
+	}
+
+	@Override
+	public Map<String, Long> getPhaseAllocatedBytes() {
+		return toMap(mAllocated, Phase.values());
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		return toMap(mCounters, Counter.values());
+	}
+
+	@Override
+	public boolean isDetailed() {
+		return mDetailed;
+	}
+
+	@Override
+	public void setDetailed(boolean detailed) {
+		mDetailed = detailed;
+		if (detailed && null != mThreads && !mThreads.isThreadAllocatedMemoryEnabled()) {
+			mThreads.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	@Override
+	public String getSummary() {
+		StringBuilder json = new StringBuilder("{\"phases\":{");
+		for (Phase phase : Phase.values()) {
+			if (phase.ordinal() > 0) {
+				json.append(',');
+			}
+			json.append('"').append(name(phase)).append("\":{\"calls\":").append(getCalls(phase))
+					.append(",\"millis\":").append(String.format(Locale.ROOT, "%.3f", getNanos(phase) / 1e6));
+			if (mDetailed) {
+				json.append(",\"allocatedBytes\":").append(getAllocatedBytes(phase));
+			}
+			json.append('}');
+		}
+		json.append("},\"counters\":{");
+		for (Counter counter : Counter.values()) {
+			if (counter.ordinal() > 0) {
+				json.append(',');
+			}
+			json.append('"').append(name(counter)).append("\":").append(getCount(counter));
+		}
+		return json.append("}}").toString();
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < mCalls.length(); i++) {
+			mCalls.set(i, 0);
+			mNanos.set(i, 0);
+			mAllocated.set(i, 0);
+		}
+		for (int i = 0; i < mCounters.length(); i++) {
+			mCounters.set(i, 0);
+		}
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread so far, or -1 if the JVM can not tell.
+	 */
+	private long allocatedBytes() {
+		return null == mThreads ? -1 : mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static String name(Enum<?> value) {
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+
+	private static Map<String, Long> toMap(AtomicLongArray values, Enum<?>[] names) {
+		Map<String, Long> map = new LinkedHashMap<>();
+		for (Enum<?> name : names) {
+			map.put(name(name), values.get(name.ordinal()));
+		}
+		return map;
+	}
+
+	/**
+	 * Times one run of a phase, adding it to the metrics when closed.
+	 */
+	public class Timer implements AutoCloseable {
+		private final Phase mPhase;
+		private final long mStart;
+		private final long mStartAllocated;
+
+		private Timer(Phase phase, long startAllocated) {
+			mPhase = phase;
+			mStartAllocated = startAllocated;
+			mStart = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			mNanos.addAndGet(mPhase.ordinal(), System.nanoTime() - mStart);
+			mCalls.incrementAndGet(mPhase.ordinal());
+			if (mStartAllocated >= 0) {
+				mAllocated.addAndGet(mPhase.ordinal(), allocatedBytes() - mStartAllocated);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * The JMX view of the EvaluatorMetrics, registered by EvaluatorMetrics.registerMBean() as
+ * rbb.mdexample:type=EvaluatorMetrics so it can be watched with jconsole or any other JMX client.
+ *
+ * The maps are keyed by the lower case name of the phase or counter.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Map;
+
+public interface EvaluatorMetricsMXBean {
+
+	/**
+	 * Returns the number of times each phase has run.
+	 */
+	Map<String, Long> getPhaseCalls();
+
+	/**
+	 * Returns the total nanoseconds spent in each phase.
+	 */
+	Map<String, Long> getPhaseNanos();
+
+	/**
+	 * Returns the bytes allocated by the thread running each phase, while detailed metrics are on.
+	 */
+	Map<String, Long> getPhaseAllocatedBytes();
+
+	/**
+	 * Returns the value of each counter.
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * Returns true if the allocations and the memory held by the closure are measured too.
+	 */
+	boolean isDetailed();
+
+	/**
+	 * Turn the measuring of the allocations and the memory held by the closure on or off.
+	 */
+	void setDetailed(boolean detailed);
+
+	/**
+	 * Returns all the metrics as JSON.
+	 */
+	String getSummary();
+
+	/**
+	 * Set all the metrics back to zero.
+	 */
+	void reset();
+}
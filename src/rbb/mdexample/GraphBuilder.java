@@ -0,0 +1,272 @@
+/**
+ * The GraphBuilder collects the parent -> child rows as interned integer edges and builds the DependencyGraph.
+ *
+ * The edges are appended to two growable int arrays as they are read, which keeps the ingestion free of
+ * per-row collections.  build() sorts them into CSR form and removes duplicate edges, the same way the
+ * children Set of a DependencyNode combines the rows for a key that appears more than once.
+ *
+ * Edges and nodes can also be removed.  The removals are only noted when they are made, and are applied to
+ * the edge arrays in one pass by build(), or earlier if an edge they would remove is added again.
+ *
+ * A builder can also start from a graph, such as one loaded by GraphFile.  build() returns that graph as it is
+ * until the builder is changed, and only then are its edges copied into the edge arrays.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+public class GraphBuilder {
+
+	private static final int INITIAL_EDGES = 1024;
+
+	private final KeyTable mKeys;
+	private int[] mSources = new int[INITIAL_EDGES];
+	private int[] mTargets = new int[INITIAL_EDGES];
+	private int mEdgeCount = 0;
+	private BitSet mParents = new BitSet();
+
+	// The removals not yet applied to the edge arrays.
+	private final Set<Long> mRemovedEdges = new HashSet<>();
+	private final BitSet mRemovedNodes = new BitSet();
+	private boolean mRemovals = false;
+
+	// The graph the builder started from, until its edges are copied into the edge arrays, or null.
+	private DependencyGraph mLoaded = null;
+
+	/**
+	 * Construct a GraphBuilder with an empty KeyTable.
+	 */
+	public GraphBuilder() {
+		this(new KeyTable());
+	}
+
+	/**
+	 * Construct a GraphBuilder that interns keys into the supplied KeyTable.
+	 *
+	 * @param keys  The key table.
+	 */
+	public GraphBuilder(KeyTable keys) {
+		mKeys = keys;
+	}
+
+	/**
+	 * Construct a GraphBuilder that starts from the graph and interns keys into its KeyTable.
+	 *
+	 * @param graph  The graph, which is not changed.
+	 */
+	public GraphBuilder(DependencyGraph graph) {
+		mKeys = graph.getKeys();
+		mLoaded = graph;
+	}
+
+	/**
+	 * Returns the key table used to intern the keys.
+	 * @return
+	 */
+	public KeyTable getKeys() {
+		return mKeys;
+	}
+
+	/**
+	 * Mark the node as the key of an input row so it is included in the output.
+	 *
+	 * @param parent  The id of the row key.
+	 */
+	public void addParent(int parent) {
+		if (null != mLoaded) {
+			unload();
+		}
+		if (mRemovals && mRemovedNodes.get(parent)) {
+			applyRemovals();
+		}
+		mParents.set(parent);
+	}
+
+	/**
+	 * Add a parent -> child edge.  Duplicate edges are removed in build().
+	 *
+	 * @param parent  The id of the row key.
+	 * @param child   The id of the dependency.
+	 */
+	public void addEdge(int parent, int child) {
+		if (null != mLoaded) {
+			unload();
+		}
+		if (mRemovals && (mRemovedNodes.get(parent) || mRemovedNodes.get(child)
+				|| mRemovedEdges.contains(edgeKey(parent, child)))) {
+			applyRemovals();
+		}
+		if (mEdgeCount == mSources.length) {
+			mSources = Arrays.copyOf(mSources, mEdgeCount * 2);
+			mTargets = Arrays.copyOf(mTargets, mEdgeCount * 2);
+		}
+		mSources[mEdgeCount] = parent;
+		mTargets[mEdgeCount] = child;
+		mEdgeCount++;
+	}
+
+	/**
+	 * Add all the parents and edges of another builder, mapping its ids to the ids of this builder.
+	 *
+	 * @param other  The builder to copy from.
+	 * @param ids    The id in this builder of each id in the other builder, as returned by KeyTable.internAll().
+	 */
+	public void addAll(GraphBuilder other, int[] ids) {
+		if (null != other.mLoaded) {
+			other.unload();
+		}
+		if (other.mRemovals) {
+			other.applyRemovals();
+		}
+		for (int parent = other.mParents.nextSetBit(0); parent >= 0; parent = other.mParents.nextSetBit(parent + 1)) {
+			mParents.set(ids[parent]);
+		}
+		for (int i = 0; i < other.mEdgeCount; i++) {
+			addEdge(ids[other.mSources[i]], ids[other.mTargets[i]]);
+		}
+	}
+
+	/**
+	 * Remove the parent -> child edge, however many times it was added.
+	 *
+	 * @param parent  The id of the row key.
+	 * @param child   The id of the dependency.
+	 */
+	public void removeEdge(int parent, int child) {
+		if (null != mLoaded) {
+			unload();
+		}
+		mRemovedEdges.add(edgeKey(parent, child));
+		mRemovals = true;
+	}
+
+	/**
+	 * Remove every edge to or from the node.  The node keeps its id in the KeyTable.
+	 *
+	 * @param node  The id of the node.
+	 */
+	public void removeNode(int node) {
+		if (null != mLoaded) {
+			unload();
+		}
+		mRemovedNodes.set(node);
+		mParents.clear(node);
+		mRemovals = true;
+	}
+
+	/**
+	 * Returns the number of edges added so far, including duplicates and edges with a removal not yet applied.
+	 * @return
+	 */
+	public int edgeCount() {
+		return null != mLoaded ? mLoaded.edgeCount() : mEdgeCount;
+	}
+
+	/**
+	 * Build the CSR graph from the edges added so far.  The builder can continue to be used afterwards.
+	 *
+	 * @return The DependencyGraph.
+	 */
+	public DependencyGraph build() {
+		if (null != mLoaded) {
+			// Keys interned since the graph was loaded are new nodes, so the graph no longer covers them.
+			if (mLoaded.nodeCount() == mKeys.size()) {
+				return mLoaded;
+			}
+			unload();
+		}
+		if (mRemovals) {
+			applyRemovals();
+		}
+		int nodeCount = mKeys.size();
+		BitSet parents = (BitSet) mParents.clone();
+
+		// Count the edges for each source and turn the counts into offsets.
+		int[] offsets = new int[nodeCount + 1];
+		for (int i = 0; i < mEdgeCount; i++) {
+			offsets[mSources[i] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			offsets[n + 1] += offsets[n];
+		}
+
+		// Place the targets in their source's range.
+		int[] targets = new int[mEdgeCount];
+		int[] next = Arrays.copyOf(offsets, nodeCount);
+		for (int i = 0; i < mEdgeCount; i++) {
+			targets[next[mSources[i]]++] = mTargets[i];
+		}
+
+		// Sort each range and squeeze out the duplicate children.
+		int write = 0;
+		int start = 0;
+		for (int n = 0; n < nodeCount; n++) {
+			int end = offsets[n + 1];
+			Arrays.sort(targets, start, end);
+			offsets[n] = write;
+			for (int i = start; i < end; i++) {
+				if (i == start || targets[i] != targets[write - 1]) {
+					targets[write++] = targets[i];
+				}
+			}
+			// A key whose edges have all been removed is no longer the key of a row.
+			if (write == offsets[n]) {
+				parents.clear(n);
+			}
+			start = end;
+		}
+		offsets[nodeCount] = write;
+		if (write < targets.length) {
+			targets = Arrays.copyOf(targets, write);
+		}
+
+		return new DependencyGraph(mKeys, offsets, targets, parents);
+	}
+
+	/**
+	 * Copy the edges and parents of the graph the builder started from into the edge arrays.
+	 */
+	private void unload() {
+		DependencyGraph graph = mLoaded;
+		mLoaded = null;
+		mEdgeCount = graph.edgeCount();
+		mSources = new int[Math.max(INITIAL_EDGES, mEdgeCount)];
+		mTargets = Arrays.copyOf(graph.targets(), mSources.length);
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			Arrays.fill(mSources, graph.childStart(node), graph.childEnd(node), node);
+			if (graph.isParent(node)) {
+				mParents.set(node);
+			}
+		}
+	}
+
+	/**
+	 * Squeeze the removed edges out of the edge arrays and forget the removals.
+	 */
+	private void applyRemovals() {
+		int write = 0;
+		for (int i = 0; i < mEdgeCount; i++) {
+			int source = mSources[i];
+			int target = mTargets[i];
+			if (!mRemovedNodes.get(source) && !mRemovedNodes.get(target)
+					&& (mRemovedEdges.isEmpty() || !mRemovedEdges.contains(edgeKey(source, target)))) {
+				mSources[write] = source;
+				mTargets[write] = target;
+				write++;
+			}
+		}
+		mEdgeCount = write;
+		mRemovedEdges.clear();
+		mRemovedNodes.clear();
+		mRemovals = false;
+	}
+
+	private static long edgeKey(int parent, int child) {
+		return ((long) parent << 32) | (child & 0xffffffffL);
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * The GraphDiff finds the dependencies that differ between two graphs with their own KeyTables, such as the
+ * graph of a saved snapshot and the graph of the input it was made from after some rows have changed.
+ *
+ * The keys of each graph are looked up in the other graph's KeyTable by their UTF-8 bytes, without creating
+ * Strings.  An edge of one graph is then missing from the other if either of its keys is missing, or the
+ * child is not in the sorted children of the parent.  Only the edges that differ are turned back into keys.
+ *
+ * The edges are held as a parent id in the high half of a long and the child id in the low half.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+public class GraphDiff {
+
+	private final DependencyGraph mFrom;
+	private final DependencyGraph mTo;
+	// The edges of mTo missing from mFrom, in mTo ids, and the edges of mFrom missing from mTo, in mFrom ids.
+	private long[] mAdded = new long[16];
+	private int mAddedCount = 0;
+	private long[] mRemoved = new long[16];
+	private int mRemovedCount = 0;
+
+	/**
+	 * Compare the graphs.
+	 *
+	 * @param from  The graph before the changes.
+	 * @param to    The graph after the changes.
+	 */
+	public GraphDiff(DependencyGraph from, DependencyGraph to) {
+		mFrom = from;
+		mTo = to;
+		int[] fromIds = mapIds(from, to);
+		int[] toIds = mapIds(to, from);
+
+		for (int parent = 0; parent < to.nodeCount(); parent++) {
+			for (int i = to.childStart(parent); i < to.childEnd(parent); i++) {
+				if (!hasEdge(from, fromIds[parent], fromIds[to.targets()[i]])) {
+					mAdded = add(mAdded, mAddedCount++, parent, to.targets()[i]);
+				}
+			}
+		}
+		for (int parent = 0; parent < from.nodeCount(); parent++) {
+			for (int i = from.childStart(parent); i < from.childEnd(parent); i++) {
+				if (!hasEdge(to, toIds[parent], toIds[from.targets()[i]])) {
+					mRemoved = add(mRemoved, mRemovedCount++, parent, from.targets()[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of dependencies added and removed.
+	 * @return
+	 */
+	public int size() {
+		return mAddedCount + mRemovedCount;
+	}
+
+	/**
+	 * Pass the parent and child keys of each added dependency to the action.
+	 *
+	 * @param action  Called with the parent and child key of each dependency.
+	 */
+	public void forEachAdded(BiConsumer<String, String> action) {
+		forEach(mTo.getKeys(), mAdded, mAddedCount, action);
+	}
+
+	/**
+	 * Pass the parent and child keys of each removed dependency to the action.
+	 *
+	 * @param action  Called with the parent and child key of each dependency.
+	 */
+	public void forEachRemoved(BiConsumer<String, String> action) {
+		forEach(mFrom.getKeys(), mRemoved, mRemovedCount, action);
+	}
+
+	private static void forEach(KeyTable keys, long[] edges, int count, BiConsumer<String, String> action) {
+		for (int i = 0; i < count; i++) {
+			action.accept(keys.getKey((int) (edges[i] >>> 32)), keys.getKey((int) edges[i]));
+		}
+	}
+
+	/**
+	 * Returns the id in graph "in" of each node of graph "of", or -1 for the keys it does not have.
+	 */
+	private static int[] mapIds(DependencyGraph in, DependencyGraph of) {
+		KeyTable keys = of.getKeys();
+		ByteBuffer pool = ByteBuffer.wrap(keys.pool());
+		int[] offsets = keys.offsets();
+		int[] ids = new int[of.nodeCount()];
+		for (int id = 0; id < ids.length; id++) {
+			ids[id] = in.getKeys().find(pool, offsets[id], offsets[id + 1] - offsets[id]);
+			// Keys interned after the graph was built are not nodes of it.
+			if (ids[id] >= in.nodeCount()) {
+				ids[id] = -1;
+			}
+		}
+		return ids;
+	}
+
+	private static boolean hasEdge(DependencyGraph graph, int parent, int child) {
+		return parent >= 0 && child >= 0
+				&& Arrays.binarySearch(graph.targets(), graph.childStart(parent), graph.childEnd(parent), child) >= 0;
+	}
+
+	private static long[] add(long[] edges, int count, int parent, int child) {
+		if (count == edges.length) {
+			edges = Arrays.copyOf(edges, count * 2);
+		}
+		edges[count] = ((long) parent << 32) | (child & 0xffffffffL);
+		return edges;
+	}
+}
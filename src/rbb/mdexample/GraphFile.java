@@ -0,0 +1,500 @@
+/**
+ * The GraphFile saves a DependencyGraph, and optionally its Closure, in a compact binary form that can be
+ * loaded again without parsing, by memory mapping the file and copying each section straight into its array.
+ *
+ * The file is a header followed by sections, all little endian and each starting on an 8 byte boundary:
+ * Header         magic 'RBDG', version, key count, key pool bytes, node count, edge count, closure kind,
+ *                closure set count and the number of ids or words in the closure sets.
+ * Key table      The key offsets and key hashes of the KeyTable, then the UTF-8 bytes of the keys.
+ * Graph          The CSR offsets and targets of the DependencyGraph, then the parent bitset.
+ * Closure        Only when the closure kind is not NONE.  The index of each node's descendant set, -1 for
+ *                none, then the distinct sets.  ID_LISTS sets are sorted ids, found by a table of long offsets,
+ *                BITSETS sets are bitsets of one bit per node.  Nodes with the same descendants share a set.
+ *
+ * Saving the key hashes means the KeyTable only has its slots rebuilt when it is loaded, and a graph saved
+ * without its closure is loaded with a few bulk copies.  A BitSetClosure is saved as bitsets and any other
+ * closure as id lists.  Each length is checked against the rest of the file before its array is allocated, and
+ * each offset and id against its range, so a damaged file is rejected with an IOException.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GraphFile {
+
+	private static final int MAGIC = 0x52424447;  // 'RBDG'
+	private static final int VERSION = 1;
+
+	private static final int CLOSURE_NONE = 0;
+	private static final int CLOSURE_ID_LISTS = 1;
+	private static final int CLOSURE_BITSETS = 2;
+
+	// The size of the buffer the file is written through, and the most bytes mapped at once when it is read.
+	private static final int WRITE_SIZE = 1024 * 1024;
+	private static final int MAP_SIZE = 256 * 1024 * 1024;
+
+	private final DependencyGraph mGraph;
+	private final Closure mClosure;
+
+	private GraphFile(DependencyGraph graph, Closure closure) {
+		mGraph = graph;
+		mClosure = closure;
+	}
+
+	/**
+	 * Returns the loaded graph, with its own KeyTable.
+	 * @return
+	 */
+	public DependencyGraph getGraph() {
+		return mGraph;
+	}
+
+	/**
+	 * Returns the loaded closure, or null if the file was saved without one.
+	 * @return
+	 */
+	public Closure getClosure() {
+		return mClosure;
+	}
+
+	/**
+	 * Returns true if the file starts with the magic number of a graph file.
+	 *
+	 * @param path  The file to check.
+	 * @return      True for a graph file, false for any other file, such as text input.
+	 * @throws IOException
+	 */
+	public static boolean isGraphFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// Keep reading until the magic number is read or the file ends.
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Save the graph and closure to the file, replacing it if it exists.
+	 *
+	 * @param path     The file to write.
+	 * @param graph    The graph to save.
+	 * @param closure  The closure of the graph, or null to save the graph alone.
+	 * @throws IOException
+	 */
+	public static void save(Path path, DependencyGraph graph, Closure closure) throws IOException {
+		KeyTable keys = graph.getKeys();
+		int keyCount = keys.size();
+		int nodeCount = graph.nodeCount();
+		int edgeCount = graph.edgeCount();
+		int poolSize = keys.offsets()[keyCount];
+
+		// Find the distinct descendant sets first, as the header holds their count and size.
+		int kind = CLOSURE_NONE;
+		int[] setIndex = null;
+		List<Object> sets = new ArrayList<>();
+		long setWords = 0;
+		if (null != closure) {
+			kind = closure instanceof BitSetClosure ? CLOSURE_BITSETS : CLOSURE_ID_LISTS;
+			setIndex = new int[nodeCount];
+			Map<Object, Integer> indexes = new IdentityHashMap<>();
+			SetInterner interner = new SetInterner();
+			for (int node = 0; node < nodeCount; node++) {
+				Object set = null;
+				if (kind == CLOSURE_BITSETS) {
+					set = interner.intern(((BitSetClosure) closure).bits()[node]);
+				} else if (closure.size(node) > 0) {
+					int[] descendants = closure.descendants(node);
+					Arrays.sort(descendants);
+					set = interner.intern(descendants);
+				}
+				if (null == set) {
+					setIndex[node] = -1;
+					continue;
+				}
+				Integer index = indexes.get(set);
+				if (null == index) {
+					index = sets.size();
+					indexes.put(set, index);
+					sets.add(set);
+					setWords += kind == CLOSURE_BITSETS ? ((long[]) set).length : ((int[]) set).length;
+				}
+				setIndex[node] = index;
+			}
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ChannelOutput output = new ChannelOutput(channel);
+			output.putInt(MAGIC);
+			output.putInt(VERSION);
+			output.putInt(keyCount);
+			output.putInt(poolSize);
+			output.putInt(nodeCount);
+			output.putInt(edgeCount);
+			output.putInt(kind);
+			output.putInt(sets.size());
+			output.putLong(setWords);
+
+			output.putInts(keys.offsets(), 0, keyCount + 1);
+			output.putInts(keys.hashes(), 0, keyCount);
+			output.putBytes(keys.pool(), 0, poolSize);
+
+			for (int node = 0; node < nodeCount; node++) {
+				output.putInt(graph.childStart(node));
+			}
+			output.putInt(edgeCount);
+			output.align();
+			output.putInts(graph.targets(), 0, edgeCount);
+			long[] parents = new long[BitSetClosure.words(nodeCount)];
+			for (int node = 0; node < nodeCount; node++) {
+				if (graph.isParent(node)) {
+					parents[node >>> 6] |= 1L << node;
+				}
+			}
+			output.putLongs(parents, 0, parents.length);
+
+			if (kind != CLOSURE_NONE) {
+				output.putInts(setIndex, 0, nodeCount);
+				if (kind == CLOSURE_ID_LISTS) {
+					long offset = 0;
+					output.putLong(offset);
+					for (Object set : sets) {
+						offset += ((int[]) set).length;
+						output.putLong(offset);
+					}
+					for (Object set : sets) {
+						output.putInts((int[]) set, 0, ((int[]) set).length);
+					}
+				} else {
+					for (Object set : sets) {
+						output.putLongs((long[]) set, 0, ((long[]) set).length);
+					}
+				}
+			}
+			output.flush();
+		}
+	}
+
+	/**
+	 * Load a graph file by memory mapping it.
+	 *
+	 * @param path  The file to read.
+	 * @return      The loaded graph and closure.
+	 * @throws IOException if the file can not be read, is not a graph file or is not valid.
+	 */
+	public static GraphFile load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedInput input = new MappedInput(channel, Files.size(path));
+			if (input.getInt() != MAGIC) {
+				throw new IOException("Not a graph file: " + path);
+			}
+			int version = input.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported graph file version " + version + ": " + path);
+			}
+			int keyCount = input.getInt();
+			int poolSize = input.getInt();
+			int nodeCount = input.getInt();
+			int edgeCount = input.getInt();
+			int kind = input.getInt();
+			int setCount = input.getInt();
+			long setWords = input.getLong();
+			if (keyCount < 0 || poolSize < 0 || nodeCount != keyCount || edgeCount < 0 || setCount < 0
+					|| kind < CLOSURE_NONE || kind > CLOSURE_BITSETS || setWords < 0) {
+				throw new IOException("Graph file header is not valid: " + path);
+			}
+
+			int[] keyOffsets = input.getInts(keyCount + 1L);
+			checkOffsets(keyOffsets, poolSize, "key offsets", path);
+			int[] keyHashes = input.getInts(keyCount);
+			byte[] pool = input.getBytes(poolSize);
+			KeyTable keys = new KeyTable(pool, keyOffsets, keyHashes);
+
+			int[] offsets = input.getInts(nodeCount + 1L);
+			checkOffsets(offsets, edgeCount, "graph offsets", path);
+			int[] targets = input.getInts(edgeCount);
+			checkIds(targets, 0, nodeCount, "graph targets", path);
+			BitSet parents = BitSet.valueOf(input.getLongs(BitSetClosure.words(nodeCount)));
+			DependencyGraph graph = new DependencyGraph(keys, offsets, targets, parents);
+
+			Closure closure = null;
+			if (kind != CLOSURE_NONE) {
+				int[] setIndex = input.getInts(nodeCount);
+				checkIds(setIndex, -1, setCount, "set indexes", path);
+				if (kind == CLOSURE_ID_LISTS) {
+					long[] setOffsets = input.getLongs(setCount + 1L);
+					for (int s = 0; s < setCount; s++) {
+						if (setOffsets[s + 1] < setOffsets[s]) {
+							throw notValid("set offsets", path);
+						}
+					}
+					if (setOffsets[0] != 0 || setOffsets[setCount] != setWords) {
+						throw notValid("set offsets", path);
+					}
+					int[][] sets = new int[setCount][];
+					for (int s = 0; s < setCount; s++) {
+						sets[s] = input.getInts(setOffsets[s + 1] - setOffsets[s]);
+						checkIds(sets[s], 0, nodeCount, "set ids", path);
+					}
+					int[][] descendants = new int[nodeCount][];
+					for (int node = 0; node < nodeCount; node++) {
+						descendants[node] = setIndex[node] < 0 ? null : sets[setIndex[node]];
+					}
+					closure = new IdListClosure(descendants);
+				} else {
+					int words = BitSetClosure.words(nodeCount);
+					if (setWords != (long) setCount * words) {
+						throw notValid("bitset size", path);
+					}
+					// The bits past the last node must be clear, they are not ids of any node.
+					long unused = nodeCount % 64 == 0 ? 0 : -1L << nodeCount;
+					long[][] sets = new long[setCount][];
+					for (int s = 0; s < setCount; s++) {
+						sets[s] = input.getLongs(words);
+						if (words > 0 && (sets[s][words - 1] & unused) != 0) {
+							throw notValid("bitsets", path);
+						}
+					}
+					long[][] bits = new long[nodeCount][];
+					for (int node = 0; node < nodeCount; node++) {
+						bits[node] = setIndex[node] < 0 ? null : sets[setIndex[node]];
+					}
+					closure = new BitSetClosure(bits);
+				}
+			}
+			return new GraphFile(graph, closure);
+		}
+	}
+
+	/**
+	 * Check the offsets start at 0, never decrease and end at end.
+	 */
+	private static void checkOffsets(int[] offsets, int end, String section, Path path) throws IOException {
+		if (offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+			throw notValid(section, path);
+		}
+		for (int i = 1; i < offsets.length; i++) {
+			if (offsets[i] < offsets[i - 1]) {
+				throw notValid(section, path);
+			}
+		}
+	}
+
+	/**
+	 * Check every id is in [min, max).
+	 */
+	private static void checkIds(int[] ids, int min, int max, String section, Path path) throws IOException {
+		for (int id : ids) {
+			if (id < min || id >= max) {
+				throw notValid(section, path);
+			}
+		}
+	}
+
+	private static IOException notValid(String section, Path path) {
+		return new IOException("Graph file is not valid, bad " + section + ": " + path);
+	}
+
+	/**
+	 * Writes the sections of the file through a direct buffer, padding each array to an 8 byte boundary.
+	 */
+	private static class ChannelOutput {
+		private final FileChannel mChannel;
+		private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private long mWritten = 0;
+
+		ChannelOutput(FileChannel channel) {
+			mChannel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			room(Integer.BYTES);
+			mBuffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			room(Long.BYTES);
+			mBuffer.putLong(value);
+		}
+
+		void putInts(int[] values, int offset, int length) throws IOException {
+			while (length > 0) {
+				room(Integer.BYTES);
+				int count = Math.min(length, mBuffer.remaining() / Integer.BYTES);
+				mBuffer.asIntBuffer().put(values, offset, count);
+				mBuffer.position(mBuffer.position() + count * Integer.BYTES);
+				offset += count;
+				length -= count;
+			}
+			align();
+		}
+
+		void putLongs(long[] values, int offset, int length) throws IOException {
+			while (length > 0) {
+				room(Long.BYTES);
+				int count = Math.min(length, mBuffer.remaining() / Long.BYTES);
+				mBuffer.asLongBuffer().put(values, offset, count);
+				mBuffer.position(mBuffer.position() + count * Long.BYTES);
+				offset += count;
+				length -= count;
+			}
+		}
+
+		void putBytes(byte[] values, int offset, int length) throws IOException {
+			while (length > 0) {
+				room(1);
+				int count = Math.min(length, mBuffer.remaining());
+				mBuffer.put(values, offset, count);
+				offset += count;
+				length -= count;
+			}
+			align();
+		}
+
+		/**
+		 * Pad with zeros to the next 8 byte boundary.
+		 */
+		void align() throws IOException {
+			while ((mWritten + mBuffer.position()) % Long.BYTES != 0) {
+				room(1);
+				mBuffer.put((byte) 0);
+			}
+		}
+
+		/**
+		 * Flush the buffer if it has less than length bytes free.
+		 */
+		private void room(int length) throws IOException {
+			if (mBuffer.remaining() < length) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			mBuffer.flip();
+			while (mBuffer.hasRemaining()) {
+				mWritten += mChannel.write(mBuffer);
+			}
+			mBuffer.clear();
+		}
+	}
+
+	/**
+	 * Reads the sections of the file in order through windows of at most MAP_SIZE bytes mapped from the file,
+	 * skipping the padding after each array the same way ChannelOutput wrote it.
+	 */
+	private static class MappedInput {
+		private final FileChannel mChannel;
+		private final long mSize;
+		private ByteBuffer mWindow = null;
+		private long mWindowStart = 0;
+
+		MappedInput(FileChannel channel, long size) {
+			mChannel = channel;
+			mSize = size;
+		}
+
+		int getInt() throws IOException {
+			return window(Integer.BYTES).getInt();
+		}
+
+		long getLong() throws IOException {
+			return window(Long.BYTES).getLong();
+		}
+
+		int[] getInts(long length) throws IOException {
+			int[] values = new int[checkLength(length, Integer.BYTES)];
+			int offset = 0;
+			while (offset < values.length) {
+				ByteBuffer window = window(Integer.BYTES);
+				int count = Math.min(values.length - offset, window.remaining() / Integer.BYTES);
+				window.asIntBuffer().get(values, offset, count);
+				window.position(window.position() + count * Integer.BYTES);
+				offset += count;
+			}
+			align();
+			return values;
+		}
+
+		long[] getLongs(long length) throws IOException {
+			long[] values = new long[checkLength(length, Long.BYTES)];
+			int offset = 0;
+			while (offset < values.length) {
+				ByteBuffer window = window(Long.BYTES);
+				int count = Math.min(values.length - offset, window.remaining() / Long.BYTES);
+				window.asLongBuffer().get(values, offset, count);
+				window.position(window.position() + count * Long.BYTES);
+				offset += count;
+			}
+			return values;
+		}
+
+		byte[] getBytes(long length) throws IOException {
+			byte[] values = new byte[checkLength(length, 1)];
+			int offset = 0;
+			while (offset < values.length) {
+				ByteBuffer window = window(1);
+				int count = Math.min(values.length - offset, window.remaining());
+				window.get(values, offset, count);
+				offset += count;
+			}
+			align();
+			return values;
+		}
+
+		/**
+		 * Returns the length of an array to read, checking the rest of the file holds that many values before
+		 * the array is allocated.
+		 */
+		private int checkLength(long length, int width) throws IOException {
+			long position = mWindowStart + (null == mWindow ? 0 : mWindow.position());
+			if (length < 0 || length > Integer.MAX_VALUE || length * width > mSize - position) {
+				throw new IOException("Graph file is not valid, " + length + " values at byte " + position
+						+ " do not fit in the file");
+			}
+			return (int) length;
+		}
+
+		private void align() throws IOException {
+			long position = mWindowStart + (null == mWindow ? 0 : mWindow.position());
+			int padding = (int) ((Long.BYTES - position % Long.BYTES) % Long.BYTES);
+			if (padding > 0) {
+				ByteBuffer window = window(padding);
+				window.position(window.position() + padding);
+			}
+		}
+
+		/**
+		 * Returns the mapped window at the current position, mapping the next one if fewer than length
+		 * bytes are left in it.
+		 */
+		private ByteBuffer window(int length) throws IOException {
+			if (null == mWindow || mWindow.remaining() < length) {
+				long position = mWindowStart + (null == mWindow ? 0 : mWindow.position());
+				long size = Math.min(MAP_SIZE, mSize - position);
+				if (size < length) {
+					throw new EOFException("Graph file is truncated at byte " + position);
+				}
+				mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+				mWindowStart = position;
+			}
+			return mWindow;
+		}
+	}
+}
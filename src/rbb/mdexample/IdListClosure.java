@@ -0,0 +1,60 @@
+/**
+ * A Closure that stores the descendants of each node as a sorted array of ids.
+ *
+ * Nodes without descendants share one empty array, and nodes with the same descendants can share one
+ * array when the lists are interned with a SetInterner.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+
+public class IdListClosure implements Closure {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final int[][] mDescendants;
+
+	/**
+	 * Construct the closure from the descendant lists.  Each list must be sorted by id,
+	 * null entries are treated as empty.  The arrays are used directly, not copied.
+	 *
+	 * @param descendants  The descendant lists indexed by node id.
+	 */
+	IdListClosure(int[][] descendants) {
+		for (int node = 0; node < descendants.length; node++) {
+			if (null == descendants[node]) {
+				descendants[node] = EMPTY;
+			}
+		}
+		mDescendants = descendants;
+	}
+
+	/**
+	 * Returns the descendant lists themselves, which must not be modified.
+	 */
+	int[][] lists() {
+		return mDescendants;
+	}
+
+	@Override
+	public int size(int node) {
+		return mDescendants[node].length;
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		return mDescendants[node].clone();
+	}
+
+	@Override
+	public long memoryBytes() {
+		return SetInterner.memoryBytes(mDescendants);
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		return Arrays.binarySearch(mDescendants[node], descendant) >= 0;
+	}
+}
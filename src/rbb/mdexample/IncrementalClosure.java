@@ -0,0 +1,575 @@
+/**
+ * An IncrementalClosure is a Closure that is kept up to date as edges and nodes are added and removed,
+ * instead of being calculated again from scratch.
+ *
+ * It starts from a calculated closure and keeps its own copy of the edges, with the parents of each node
+ * as well as its children, so the ancestors of a changed node can be found without searching the graph.
+ * The calculated closure is kept rather than copied, and answers for every node no update has changed.
+ * A node an update changes gets its descendants as a sorted array of ids that is replaced, never modified,
+ * so nodes with the same descendants can share one array.  The lists of an IdListClosure are already such
+ * arrays, so they are taken over as they are.  The children and parents of each node are replaced in the
+ * same way, and all three are held in SharedIdLists, so snapshot() shares them instead of copying them.
+ *
+ * Only the changed node and its ancestors can have different descendants after an update:
+ * Adding parent -> child adds child and its descendants to the parent and to every ancestor that does not
+ *   already have them.  An ancestor that already has child also has all of child's descendants, so the
+ *   search up from the parent stops there.
+ * Removing an edge or a node recalculates the descendants of the ancestors only.  The ancestors are condensed
+ *   into their own strongly connected components and merged in reverse topological order, reusing the
+ *   descendants of every node outside the ancestors, which are still valid.
+ * The cost of an update therefore depends on the size of the affected part of the graph and not the whole graph.
+ *
+ * A node is listed in the output while it has at least one child, the same as a key in the input rows.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class IncrementalClosure implements Closure {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int mNodeCount;
+	private final SharedIdLists mChildren = new SharedIdLists();
+	private final SharedIdLists mParents = new SharedIdLists();
+	// The changed descendants of each node, null where they are still those of the base closure.
+	private final SharedIdLists mDescendants = new SharedIdLists();
+	private final Closure mBase;
+	private final int mBaseCount;
+
+	// Scratch space for the updates.  A node is marked when mMark[node] == mStamp, so it never needs clearing.
+	private int[] mMark;
+	private int[] mLocal;
+	private int mStamp = 0;
+	private int[] mBuffer = new int[16];
+
+	/**
+	 * Construct the closure from a graph and the closure calculated from it.  The edges are copied, and
+	 * the closure is kept and must not be modified afterwards.
+	 *
+	 * @param graph    The graph.
+	 * @param closure  The closure of the graph.
+	 */
+	public IncrementalClosure(DependencyGraph graph, Closure closure) {
+		allocate(graph.nodeCount());
+		DependencyGraph reverse = graph.reverse();
+		for (int node = 0; node < mNodeCount; node++) {
+			mChildren.set(node, range(graph.targets(), graph.childStart(node), graph.childEnd(node)));
+			mParents.set(node, range(reverse.targets(), reverse.childStart(node), reverse.childEnd(node)));
+		}
+		if (closure instanceof IdListClosure) {
+			int[][] lists = ((IdListClosure) closure).lists();
+			for (int node = 0; node < mNodeCount; node++) {
+				mDescendants.set(node, lists[node]);
+			}
+			mBase = null;
+			mBaseCount = 0;
+		} else {
+			mBase = closure;
+			mBaseCount = mNodeCount;
+		}
+	}
+
+	/**
+	 * Returns the number of node ids, all of which are in the range [0, nodeCount()).
+	 * @return
+	 */
+	public int nodeCount() {
+		return mNodeCount;
+	}
+
+	/**
+	 * Returns the number of nodes the scratch arrays can hold before they grow again.
+	 */
+	int capacity() {
+		return mMark.length;
+	}
+
+	/**
+	 * Returns true if the node has at least one child, and so is listed in the output.
+	 */
+	public boolean isParent(int node) {
+		return node < mNodeCount && list(mChildren, node).length > 0;
+	}
+
+	@Override
+	public int size(int node) {
+		return node < mNodeCount ? size(mDescendants, mBase, mBaseCount, node) : 0;
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		return node < mNodeCount ? descendants(mDescendants, mBase, mBaseCount, node) : EMPTY;
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		return node < mNodeCount && contains(mDescendants, mBase, mBaseCount, node, descendant);
+	}
+
+	@Override
+	public long memoryBytes() {
+		return mDescendants.memoryBytes() + mChildren.memoryBytes() + mParents.memoryBytes()
+				+ (null == mBase ? 0 : mBase.memoryBytes());
+	}
+
+	/**
+	 * Returns a closure holding the current descendants and edges, which the updates made after it do not
+	 * change.  It shares the lists and the base closure, and the updates copy only the chunks of the lists
+	 * they change, so a snapshot costs far less than reading through the nodes.
+	 *
+	 * @return  The closure.  The nodes added after it have no descendants in it.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(mDescendants.share(), mChildren.share(), mParents.share(), mBase, mBaseCount);
+	}
+
+	/**
+	 * Add a node without any edges.  Ids below the node that are not known yet are added too.
+	 *
+	 * @param node  The id of the node.
+	 */
+	public void addNode(int node) {
+		if (node >= mNodeCount) {
+			allocate(node + 1);
+		}
+	}
+
+	/**
+	 * Add the parent -> child edge and add child and its descendants to the parent and its ancestors.
+	 *
+	 * @param parent  The id of the parent.
+	 * @param child   The id of the child.
+	 * @return        False if the edge was already there.
+	 */
+	public boolean addEdge(int parent, int child) {
+		addNode(Math.max(parent, child));
+		if (indexOf(list(mChildren, parent), child) >= 0) {
+			return false;
+		}
+		link(parent, child);
+
+		// The descendants gained through the new edge, taken before child itself is updated by a cycle.
+		int[] gained = insert(sorted(child), child);
+
+		int[] stack = mBuffer;
+		int top = 0;
+		stack[top++] = parent;
+		while (top > 0) {
+			int node = stack[--top];
+			if (contains(node, child)) {
+				continue;
+			}
+			mDescendants.set(node, union(sorted(node), gained));
+			int[] parents = list(mParents, node);
+			if (top + parents.length > stack.length) {
+				stack = mBuffer = Arrays.copyOf(stack, Math.max(stack.length * 2, top + parents.length));
+			}
+			System.arraycopy(parents, 0, stack, top, parents.length);
+			top += parents.length;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the parent -> child edge and recalculate the descendants of the parent and its ancestors.
+	 *
+	 * @param parent  The id of the parent.
+	 * @param child   The id of the child.
+	 * @return        False if there was no such edge.
+	 */
+	public boolean removeEdge(int parent, int child) {
+		if (parent >= mNodeCount || child >= mNodeCount || !unlink(parent, child)) {
+			return false;
+		}
+		recalculate(ancestors(parent));
+		return true;
+	}
+
+	/**
+	 * Remove every edge to or from the node and recalculate the descendants of its ancestors.
+	 * The node keeps its id, with no descendants.
+	 *
+	 * @param node  The id of the node.
+	 */
+	public void removeNode(int node) {
+		if (node >= mNodeCount) {
+			return;
+		}
+		int[] affected = ancestors(node);
+		for (int child : list(mChildren, node)) {
+			mParents.set(child, remove(list(mParents, child), node));
+		}
+		mChildren.set(node, EMPTY);
+		for (int parent : list(mParents, node)) {
+			mChildren.set(parent, remove(list(mChildren, parent), node));
+		}
+		mParents.set(node, EMPTY);
+		mDescendants.set(node, EMPTY);
+
+		// The node was its own ancestor if it was in a cycle, but now it has no descendants to recalculate.
+		int count = 0;
+		for (int ancestor : affected) {
+			if (ancestor != node) {
+				affected[count++] = ancestor;
+			}
+		}
+		recalculate(Arrays.copyOf(affected, count));
+	}
+
+	/**
+	 * Returns the sorted descendants of the node, which must not be modified.  Those of the base closure
+	 * are read into a new array each time rather than kept, as only the changed nodes hold arrays.
+	 */
+	private int[] sorted(int node) {
+		int[] descendants = mDescendants.get(node);
+		if (null == descendants) {
+			descendants = descendants(mDescendants, mBase, mBaseCount, node);
+		}
+		return descendants;
+	}
+
+	/**
+	 * Returns the node and every node it is a descendant of, found by searching up the parents.
+	 */
+	private int[] ancestors(int node) {
+		int stamp = nextStamp();
+		int[] found = new int[16];
+		int count = 0;
+		mMark[node] = stamp;
+		found[count++] = node;
+		// The found nodes double as the queue of nodes whose parents are still to be searched.
+		for (int next = 0; next < count; next++) {
+			for (int parent : list(mParents, found[next])) {
+				if (mMark[parent] != stamp) {
+					mMark[parent] = stamp;
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = parent;
+				}
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Recalculate the descendants of the affected nodes.  Every node that is not affected must already
+	 * have the right descendants, so the affected nodes must include all of their own ancestors.
+	 */
+	private void recalculate(int[] affected) {
+		int stamp = nextStamp();
+		for (int i = 0; i < affected.length; i++) {
+			mMark[affected[i]] = stamp;
+			mLocal[affected[i]] = i;
+		}
+
+		// Build the graph of the edges between the affected nodes, numbered by their index in affected.
+		int[] offsets = new int[affected.length + 1];
+		for (int i = 0; i < affected.length; i++) {
+			offsets[i + 1] = offsets[i];
+			for (int child : list(mChildren, affected[i])) {
+				if (mMark[child] == stamp) {
+					offsets[i + 1]++;
+				}
+			}
+		}
+		int[] targets = new int[offsets[affected.length]];
+		for (int i = 0, t = 0; i < affected.length; i++) {
+			for (int child : list(mChildren, affected[i])) {
+				if (mMark[child] == stamp) {
+					targets[t++] = mLocal[child];
+				}
+			}
+		}
+		Condensation condensation = new Condensation(new DependencyGraph(null, offsets, targets, new BitSet()));
+
+		// Merge each component's descendants after those of all its successors, sharing one array per component.
+		int[] members = condensation.members();
+		int[][] componentDescendants = new int[condensation.componentCount()][];
+		for (int component = 0; component < componentDescendants.length; component++) {
+			int count = 0;
+			for (int m = condensation.memberStart(component); m < condensation.memberEnd(component); m++) {
+				int node = affected[members[m]];
+				if (condensation.isCyclic(component)) {
+					count = add(count, node);
+				}
+				for (int child : list(mChildren, node)) {
+					count = add(count, child);
+					if (mMark[child] != stamp) {
+						count = addAll(count, sorted(child));
+					} else if (condensation.component(mLocal[child]) != component) {
+						count = addAll(count, componentDescendants[condensation.component(mLocal[child])]);
+					}
+				}
+			}
+			int[] descendants = sortUnique(count);
+			componentDescendants[component] = descendants;
+			for (int m = condensation.memberStart(component); m < condensation.memberEnd(component); m++) {
+				mDescendants.set(affected[members[m]], descendants);
+			}
+		}
+	}
+
+	private int add(int count, int id) {
+		if (count == mBuffer.length) {
+			mBuffer = Arrays.copyOf(mBuffer, count * 2);
+		}
+		mBuffer[count] = id;
+		return count + 1;
+	}
+
+	private int addAll(int count, int[] ids) {
+		if (count + ids.length > mBuffer.length) {
+			mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, count + ids.length));
+		}
+		System.arraycopy(ids, 0, mBuffer, count, ids.length);
+		return count + ids.length;
+	}
+
+	/**
+	 * Returns the first count ids in the buffer sorted with the duplicates removed.
+	 */
+	private int[] sortUnique(int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		Arrays.sort(mBuffer, 0, count);
+		int write = 1;
+		for (int i = 1; i < count; i++) {
+			if (mBuffer[i] != mBuffer[write - 1]) {
+				mBuffer[write++] = mBuffer[i];
+			}
+		}
+		return Arrays.copyOf(mBuffer, write);
+	}
+
+	/**
+	 * Returns the union of two sorted arrays.
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int count = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[count++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[count++] = b[j++];
+			} else {
+				result[count++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[count++] = a[i++];
+		}
+		while (j < b.length) {
+			result[count++] = b[j++];
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Returns a copy of the sorted array with the id inserted in order, or the array itself if it already has the id.
+	 */
+	private static int[] insert(int[] sorted, int id) {
+		int index = Arrays.binarySearch(sorted, id);
+		if (index >= 0) {
+			return sorted;
+		}
+		index = -index - 1;
+		int[] result = new int[sorted.length + 1];
+		System.arraycopy(sorted, 0, result, 0, index);
+		result[index] = id;
+		System.arraycopy(sorted, index, result, index + 1, sorted.length - index);
+		return result;
+	}
+
+	private void link(int parent, int child) {
+		mChildren.set(parent, append(list(mChildren, parent), child));
+		mParents.set(child, append(list(mParents, child), parent));
+	}
+
+	/**
+	 * Remove the parent -> child edge from both edge lists.
+	 * @return False if there was no such edge.
+	 */
+	private boolean unlink(int parent, int child) {
+		int[] children = list(mChildren, parent);
+		if (indexOf(children, child) < 0) {
+			return false;
+		}
+		mChildren.set(parent, remove(children, child));
+		mParents.set(child, remove(list(mParents, child), parent));
+		return true;
+	}
+
+	private static int indexOf(int[] ids, int id) {
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a copy of the ids with the id added at the end.
+	 */
+	private static int[] append(int[] ids, int id) {
+		int[] result = Arrays.copyOf(ids, ids.length + 1);
+		result[ids.length] = id;
+		return result;
+	}
+
+	/**
+	 * Returns a copy of the ids without the id, which must be one of them, moving the last id into its place.
+	 */
+	private static int[] remove(int[] ids, int id) {
+		if (ids.length == 1) {
+			return EMPTY;
+		}
+		int[] result = Arrays.copyOf(ids, ids.length - 1);
+		int index = indexOf(result, id);
+		if (index >= 0) {
+			result[index] = ids[ids.length - 1];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a copy of ids[start, end), or the empty array if the range is empty.
+	 */
+	private static int[] range(int[] ids, int start, int end) {
+		return start == end ? EMPTY : Arrays.copyOfRange(ids, start, end);
+	}
+
+	/**
+	 * Grow the scratch arrays and the lists to hold nodeCount nodes.
+	 */
+	private void allocate(int nodeCount) {
+		if (null == mMark || nodeCount > mMark.length) {
+			int capacity = null == mMark ? nodeCount : Math.max(nodeCount, mMark.length * 2);
+			mMark = null == mMark ? new int[capacity] : Arrays.copyOf(mMark, capacity);
+			mLocal = new int[capacity];
+		}
+		mChildren.resize(nodeCount);
+		mParents.resize(nodeCount);
+		mDescendants.resize(nodeCount);
+		mNodeCount = Math.max(mNodeCount, nodeCount);
+	}
+
+	/**
+	 * Returns a new stamp for marking nodes, clearing the marks when the stamps wrap around.
+	 */
+	private int nextStamp() {
+		if (mStamp == Integer.MAX_VALUE) {
+			Arrays.fill(mMark, 0);
+			mStamp = 0;
+		}
+		return ++mStamp;
+	}
+
+	/**
+	 * Returns the list of the node, or the empty array for a node added without one.
+	 */
+	private static int[] list(SharedIdLists lists, int node) {
+		int[] ids = lists.get(node);
+		return null == ids ? EMPTY : ids;
+	}
+
+	/**
+	 * The descendants of a node are those of the base closure when its list is null, unless the node was
+	 * added after the base closure was calculated.
+	 */
+	private static int size(SharedIdLists descendants, Closure base, int baseCount, int node) {
+		int[] list = descendants.get(node);
+		return null != list ? list.length : node < baseCount ? base.size(node) : 0;
+	}
+
+	private static int[] descendants(SharedIdLists descendants, Closure base, int baseCount, int node) {
+		int[] list = descendants.get(node);
+		if (null != list) {
+			return list.clone();
+		}
+		if (node >= baseCount) {
+			return EMPTY;
+		}
+		int[] sorted = base.descendants(node);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * The base closure only knows the ids below its node count, which none of the nodes added since can be.
+	 */
+	private static boolean contains(SharedIdLists descendants, Closure base, int baseCount, int node, int descendant) {
+		int[] list = descendants.get(node);
+		return null != list ? Arrays.binarySearch(list, descendant) >= 0
+				: node < baseCount && descendant < baseCount && base.contains(node, descendant);
+	}
+
+	/**
+	 * The descendants and edges of the nodes when a snapshot was taken, which the updates made after it
+	 * do not change, so any number of threads can read it at once.
+	 */
+	static class Snapshot implements Closure {
+
+		private final SharedIdLists mDescendants;
+		private final SharedIdLists mChildren;
+		private final SharedIdLists mParents;
+		private final Closure mBase;
+		private final int mBaseCount;
+
+		private Snapshot(SharedIdLists descendants, SharedIdLists children, SharedIdLists parents, Closure base,
+				int baseCount) {
+			mDescendants = descendants;
+			mChildren = children;
+			mParents = parents;
+			mBase = base;
+			mBaseCount = baseCount;
+		}
+
+		/**
+		 * Returns true if the node had at least one child, and so is listed in the output.
+		 */
+		boolean isParent(int node) {
+			return node < mChildren.size() && list(mChildren, node).length > 0;
+		}
+
+		/**
+		 * Returns the parents of the node, which must not be modified.
+		 */
+		int[] parents(int node) {
+			return node < mParents.size() ? list(mParents, node) : EMPTY;
+		}
+
+		@Override
+		public int size(int node) {
+			return node < mDescendants.size() ? IncrementalClosure.size(mDescendants, mBase, mBaseCount, node) : 0;
+		}
+
+		@Override
+		public int[] descendants(int node) {
+			return node < mDescendants.size() ? IncrementalClosure.descendants(mDescendants, mBase, mBaseCount, node)
+					: EMPTY;
+		}
+
+		@Override
+		public boolean contains(int node, int descendant) {
+			return node < mDescendants.size()
+					&& IncrementalClosure.contains(mDescendants, mBase, mBaseCount, node, descendant);
+		}
+
+		@Override
+		public long memoryBytes() {
+			return mDescendants.memoryBytes() + mChildren.memoryBytes() + mParents.memoryBytes()
+					+ (null == mBase ? 0 : mBase.memoryBytes());
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * The InputParser reads 'Key dependency [dependency...]' rows as raw UTF-8 bytes and adds them to a GraphBuilder.
+ *
+ * The bytes are scanned in place for the row and field delimiters and each field is interned straight from
+ * the buffer, so no line Strings, String[] or Lists are created for the rows.  Fields may be separated by
+ * any run of spaces or tabs, and a trailing carriage return is ignored.
+ *
+ * parseFile() memory maps the input file and parse(ReadableByteChannel) reads a stream as it arrives.
+ * parse(ByteBuffer) can also be fed buffers one after another; any incomplete row at the end of a buffer
+ * is left in the buffer to be completed by the next buffer.  append() does the same but keeps the
+ * incomplete row itself, for callers that reuse their buffers, until finish() is called.
+ *
+ * Rows with a key but no dependencies are reported with their line number and skipped, the same
+ * way the DependencyEvaluator reports them.  A parser working on one chunk of a larger input can defer
+ * the reports until the number of lines before its chunk is known.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class InputParser {
+
+	// The largest region of the file mapped at one time.
+	private static final int MAX_MAPPING = Integer.MAX_VALUE;
+	// The initial size of the buffer used to read streams.
+	private static final int READ_SIZE = 64 * 1024;
+
+	private final GraphBuilder mBuilder;
+	private final KeyTable mKeys;
+	private int mLineNumber = 0;
+	private int mErrorCount = 0;
+
+	// Holds the incomplete row left over from append().
+	private ByteBuffer mPending = null;
+
+	// When the errors are deferred, the line numbers & messages are kept until reportErrors() is called.
+	private List<Integer> mErrorLines = null;
+	private List<String> mErrorMessages = null;
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Construct the parser.
+	 *
+	 * @param builder  The builder the rows are added to.
+	 */
+	public InputParser(GraphBuilder builder) {
+		mBuilder = builder;
+		mKeys = builder.getKeys();
+	}
+
+	/**
+	 * Returns the builder the rows are added to.
+	 * @return
+	 */
+	public GraphBuilder getBuilder() {
+		return mBuilder;
+	}
+
+	/**
+	 * Returns the number of lines parsed so far.
+	 * @return
+	 */
+	public int getLineNumber() {
+		return mLineNumber;
+	}
+
+	/**
+	 * Returns the number of rows that were skipped because they were invalid.
+	 * @return
+	 */
+	public int getErrorCount() {
+		return mErrorCount;
+	}
+
+	/**
+	 * Keep the errors found from now on instead of reporting them straight away.
+	 */
+	public void deferErrors() {
+		mErrorLines = new ArrayList<>();
+		mErrorMessages = new ArrayList<>();
+	}
+
+	/**
+	 * Report the deferred errors.
+	 *
+	 * @param lineOffset  The number of lines in the input before the first line this parser saw.
+	 */
+	public void reportErrors(int lineOffset) {
+		if (null != mErrorLines) {
+			for (int i = 0; i < mErrorLines.size(); i++) {
+				reportError(mErrorLines.get(i) + lineOffset, mErrorMessages.get(i));
+			}
+			mErrorLines.clear();
+			mErrorMessages.clear();
+		}
+	}
+
+	/**
+	 * Memory map the file and parse all of its rows.
+	 *
+	 * @param path  The input file.
+	 * @throws IOException
+	 */
+	public void parseFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(MAX_MAPPING, size - position);
+				boolean last = position + length == size;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				parse(buffer, last);
+				if (!last && buffer.position() == 0) {
+					throw new IOException("Line " + (mLineNumber + 1) + " is longer than " + MAX_MAPPING + " bytes");
+				}
+				// Map the next region from the start of the row that was not complete.
+				position += buffer.position();
+			}
+		}
+	}
+
+	/**
+	 * Read the channel to its end, parsing each row as soon as it is complete.
+	 * Only the current block of rows is held in memory.
+	 *
+	 * @param channel  The channel to read.  It is not closed.
+	 * @throws IOException
+	 */
+	public void parse(ReadableByteChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			parse(buffer, false);
+			buffer = keepRemaining(buffer);
+		}
+		buffer.flip();
+		parse(buffer, true);
+	}
+
+	/**
+	 * Parse the complete rows in the chunk, keeping a copy of any incomplete row at its end to be completed
+	 * by the next chunk.  The chunk is fully consumed, so the caller is free to reuse it.
+	 *
+	 * @param chunk  The next bytes of the input.
+	 */
+	public void append(ByteBuffer chunk) {
+		if (null == mPending || mPending.position() == 0) {
+			parse(chunk, false);
+			if (chunk.hasRemaining()) {
+				mPending = ensureCapacity(mPending, chunk.remaining());
+				mPending.put(chunk);
+			}
+		} else {
+			mPending = ensureCapacity(mPending, chunk.remaining());
+			mPending.put(chunk);
+			mPending.flip();
+			parse(mPending, false);
+			mPending.compact();
+		}
+	}
+
+	/**
+	 * Parse the incomplete row left over from append() as the last row of the input.
+	 */
+	public void finish() {
+		if (null != mPending) {
+			mPending.flip();
+			parse(mPending, true);
+			mPending = null;
+		}
+	}
+
+	/**
+	 * Parse the rows in the buffer from its position to its limit.
+	 *
+	 * When endOfInput is false, only complete rows ending with a new line are parsed and the buffer
+	 * position is left at the start of the first incomplete row.  When endOfInput is true, the remaining
+	 * bytes are parsed as the last row and the buffer position is left at the limit.
+	 *
+	 * @param buffer      The bytes to parse.
+	 * @param endOfInput  True if no more bytes follow the buffer.
+	 */
+	public void parse(ByteBuffer buffer, boolean endOfInput) {
+		int start = buffer.position();
+		int limit = buffer.limit();
+		for (int i = start; i < limit; i++) {
+			if (buffer.get(i) == '\n') {
+				parseRow(buffer, start, i);
+				start = i + 1;
+			}
+		}
+		if (endOfInput && start < limit) {
+			parseRow(buffer, start, limit);
+			start = limit;
+		}
+		buffer.position(start);
+	}
+
+	/**
+	 * Parse the single row in buffer[start, end), not including the new line.
+	 */
+	private void parseRow(ByteBuffer buffer, int start, int end) {
+		mLineNumber++;
+
+		int keyStart = -1;
+		int keyEnd = -1;
+		int parent = -1;
+		int i = start;
+		while (i < end) {
+			// Skip the delimiters before the field.
+			while (i < end && isDelimiter(buffer.get(i))) {
+				i++;
+			}
+			if (i == end) {
+				break;
+			}
+			int fieldStart = i;
+			while (i < end && !isDelimiter(buffer.get(i))) {
+				i++;
+			}
+
+			if (keyStart < 0) {
+				keyStart = fieldStart;
+				keyEnd = i;
+			} else {
+				// Only intern the key once the row is known to have a dependency.
+				if (parent < 0) {
+					parent = mKeys.intern(buffer, keyStart, keyEnd - keyStart);
+					mBuilder.addParent(parent);
+				}
+				mBuilder.addEdge(parent, mKeys.intern(buffer, fieldStart, i - fieldStart));
+			}
+		}
+
+		if (keyStart >= 0 && parent < 0) {
+			mErrorCount++;
+			String message = "Row with key \'" + decode(buffer, keyStart, keyEnd) + "\' does not contain any dependencies";
+			if (null != mErrorLines) {
+				mErrorLines.add(mLineNumber);
+				mErrorMessages.add(message);
+			} else {
+				reportError(mLineNumber, message);
+			}
+		}
+	}
+
+	private static void reportError(int lineNumber, String message) {
+		LOGGER.severe("Exception encounterered processing input on line " + lineNumber + ": " + message);
+	}
+
+	/**
+	 * Prepare a read buffer for more input after parse() has consumed its complete rows.
+	 * The remaining bytes are moved to the front, and the buffer is doubled if one row fills all of it.
+	 *
+	 * @return The buffer, ready to be read into.
+	 */
+	private static ByteBuffer keepRemaining(ByteBuffer buffer) {
+		if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			larger.put(buffer);
+			return larger;
+		}
+		buffer.compact();
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer, in write mode and holding the bytes already in buffer, with room for length more bytes.
+	 */
+	private static ByteBuffer ensureCapacity(ByteBuffer buffer, int length) {
+		if (null == buffer) {
+			return ByteBuffer.allocate(Math.max(READ_SIZE, length));
+		}
+		if (buffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+			buffer.flip();
+			larger.put(buffer);
+			return larger;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Decode buffer[start, end) into a String for error messages.
+	 */
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isDelimiter(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
@@ -0,0 +1,415 @@
+/**
+ * The KeyTable interns each node key exactly once and hands out a dense integer id for it.
+ *
+ * The ids start at 0 and grow by one for each new key, so they can be used directly as array indexes
+ * by the graph and the closure engines.  The key characters are kept as UTF-8 bytes in one shared pool
+ * instead of one String object per key; a String is only created again when getKey() is called.
+ *
+ * mPool holds the bytes of all keys back to back, mOffsets[id] is the start of a key in the pool
+ * and mOffsets[id + 1] is its end.
+ * mSlots is an open addressing hash table holding (id + 1) for each key, 0 marks an empty slot.
+ * mHashes[id] is the hash of each key, so the table can be rebuilt without reading the keys again.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class KeyTable {
+
+	private static final int INITIAL_KEYS = 1024;
+	private static final int INITIAL_POOL = 16 * 1024;
+
+	private byte[] mPool = new byte[INITIAL_POOL];
+	private int[] mOffsets = new int[INITIAL_KEYS + 1];
+	private int[] mHashes = new int[INITIAL_KEYS];
+	private int[] mSlots = new int[INITIAL_KEYS * 2];
+	private int mSize = 0;
+	private boolean mShared = false;
+
+	// Scratch buffer used to encode ASCII keys without allocating a byte[] per key.
+	private byte[] mScratch = new byte[64];
+	private ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch);
+
+	/**
+	 * Construct an empty table.
+	 */
+	public KeyTable() {
+		// Do nothing - the arrays start at their initial sizes.
+	}
+
+	/**
+	 * Construct the table from the arrays of a saved table, as read by GraphFile.  The arrays are used
+	 * directly, not copied, and only the slots are rebuilt from the saved hashes.
+	 *
+	 * @param pool     The bytes of the keys, at least offsets[hashes.length] long.
+	 * @param offsets  The start of each key in the pool, one more than there are keys.
+	 * @param hashes   The hash of each key.
+	 */
+	KeyTable(byte[] pool, int[] offsets, int[] hashes) {
+		if (hashes.length > 0) {
+			mPool = pool;
+			mOffsets = offsets;
+			mHashes = hashes;
+			mSize = hashes.length;
+			int slots = mSlots.length;
+			while (mSize * 2 > slots) {
+				slots *= 2;
+			}
+			rehash(slots);
+		}
+	}
+
+	/**
+	 * Return the id for the key, adding the key to the table if it is not already there.
+	 *
+	 * @param key  The key to intern.
+	 * @return     The id of the key.
+	 */
+	public int intern(String key) {
+		return intern(key, 0, key.length());
+	}
+
+	/**
+	 * Return the id for the key in chars[start, end), adding the key to the table if it is not already there.
+	 *
+	 * @param chars  The characters holding the key.
+	 * @param start  The index of the first character of the key.
+	 * @param end    The index just past the last character of the key.
+	 * @return       The id of the key.
+	 */
+	public int intern(CharSequence chars, int start, int end) {
+		int length = encode(chars, start, end);
+		if (length < 0) {
+			byte[] bytes = chars.subSequence(start, end).toString().getBytes(StandardCharsets.UTF_8);
+			return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+		}
+		return intern(mScratchBuffer, 0, length);
+	}
+
+	/**
+	 * Return the id for the UTF-8 encoded key in bytes[offset, offset + length),
+	 * adding the key to the table if it is not already there.
+	 *
+	 * @param bytes   The buffer holding the key.
+	 * @param offset  The start of the key in the buffer.
+	 * @param length  The number of bytes in the key.
+	 * @return        The id of the key.
+	 */
+	public int intern(byte[] bytes, int offset, int length) {
+		return intern(ByteBuffer.wrap(bytes), offset, length);
+	}
+
+	/**
+	 * Return the id for the UTF-8 encoded key at the absolute index offset of the buffer,
+	 * adding the key to the table if it is not already there.  The buffer position is not changed,
+	 * so keys can be interned straight out of a memory mapped file without copying them first.
+	 *
+	 * @param buffer  The buffer holding the key.
+	 * @param offset  The absolute index of the start of the key in the buffer.
+	 * @param length  The number of bytes in the key.
+	 * @return        The id of the key.
+	 */
+	public int intern(ByteBuffer buffer, int offset, int length) {
+		int hash = hash(buffer, offset, length);
+		int mask = mSlots.length - 1;
+		int slot = hash & mask;
+		while (mSlots[slot] != 0) {
+			int id = mSlots[slot] - 1;
+			if (id < mSize && mHashes[id] == hash && matches(id, buffer, offset, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		int id = add(buffer, offset, length, hash);
+		if (mSize * 2 > mSlots.length) {
+			rehash(mSlots.length * 2);
+		} else {
+			mSlots[slot] = id + 1;
+		}
+		return id;
+	}
+
+	/**
+	 * Intern every key of another table, in id order.
+	 *
+	 * @param other  The table to copy the keys from.
+	 * @return       The id in this table of each id in the other table.
+	 */
+	public int[] internAll(KeyTable other) {
+		int[] ids = new int[other.mSize];
+		ByteBuffer pool = ByteBuffer.wrap(other.mPool);
+		for (int id = 0; id < other.mSize; id++) {
+			ids[id] = intern(pool, other.mOffsets[id], other.mOffsets[id + 1] - other.mOffsets[id]);
+		}
+		return ids;
+	}
+
+	/**
+	 * Return the id for the key without adding it to the table.
+	 *
+	 * @param key  The key to look up.
+	 * @return     The id of the key or -1 if the key has not been interned.
+	 */
+	public int find(String key) {
+		int length = encode(key, 0, key.length());
+		if (length < 0) {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			return find(ByteBuffer.wrap(bytes), 0, bytes.length);
+		}
+		return find(mScratchBuffer, 0, length);
+	}
+
+	/**
+	 * Return the id for the UTF-8 encoded key at the absolute index offset of the buffer without adding it to the table.
+	 *
+	 * @return The id of the key or -1 if the key has not been interned.
+	 */
+	public int find(ByteBuffer buffer, int offset, int length) {
+		int hash = hash(buffer, offset, length);
+		int mask = mSlots.length - 1;
+		int slot = hash & mask;
+		while (mSlots[slot] != 0) {
+			int id = mSlots[slot] - 1;
+			if (id < mSize && mHashes[id] == hash && matches(id, buffer, offset, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Map the id back to the key String.
+	 *
+	 * @param id  The id returned from intern().
+	 * @return    The key for the id.
+	 */
+	public String getKey(int id) {
+		return new String(mPool, mOffsets[id], mOffsets[id + 1] - mOffsets[id], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of UTF-8 bytes in the key.
+	 */
+	public int keyLength(int id) {
+		return mOffsets[id + 1] - mOffsets[id];
+	}
+
+	/**
+	 * Copy the UTF-8 bytes of the key into the buffer at its position, without creating a String.
+	 *
+	 * @param id      The id of the key.
+	 * @param buffer  The buffer, which must have at least keyLength(id) bytes remaining.
+	 */
+	public void putKey(int id, ByteBuffer buffer) {
+		buffer.put(mPool, mOffsets[id], mOffsets[id + 1] - mOffsets[id]);
+	}
+
+	/**
+	 * Returns the number of keys in the table. All ids are in the range [0, size()).
+	 * @return
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns an estimate of the bytes used by the table, including the unused room in its arrays.
+	 * @return
+	 */
+	public long memoryBytes() {
+		return mPool.length + Integer.BYTES * ((long) mOffsets.length + mHashes.length + mSlots.length);
+	}
+
+	/**
+	 * Map all the ids back to their keys.
+	 *
+	 * @return The keys indexed by id.
+	 */
+	public String[] getKeys() {
+		String[] keys = new String[mSize];
+		for (int id = 0; id < mSize; id++) {
+			keys[id] = getKey(id);
+		}
+		return keys;
+	}
+
+	/**
+	 * Return the ids of all the keys ordered by the natural String ordering of the keys,
+	 * which is the same ordering the TreeMap of DependencyNodes uses.
+	 *
+	 * @return The ids in key order.
+	 */
+	public int[] sortedIds() {
+		return sortedIds(getKeys());
+	}
+
+	/**
+	 * Return the ids of the supplied keys, as returned from getKeys(), ordered by the natural String ordering.
+	 *
+	 * @param keys  The keys indexed by id.
+	 * @return      The ids in key order.
+	 */
+	static int[] sortedIds(String[] keys) {
+		int[] ids = new int[keys.length];
+		for (int id = 0; id < ids.length; id++) {
+			ids[id] = id;
+		}
+		mergeSort(ids, new int[ids.length], 0, ids.length, keys);
+		return ids;
+	}
+
+	/**
+	 * Returns a read only table of the keys interned so far, which shares this table's arrays instead of
+	 * copying them.  Later interns only write past the end of the shared keys or into arrays of their own,
+	 * and a slot they fill holds an id the shared table does not know and skips, so they do not change it.
+	 * The shared table can be read from many threads at once, as long as keys are looked up by their bytes;
+	 * find(String) uses a scratch buffer and is not thread safe.
+	 */
+	KeyTable share() {
+		KeyTable shared = new KeyTable();
+		shared.mPool = mPool;
+		shared.mOffsets = mOffsets;
+		shared.mHashes = mHashes;
+		shared.mSlots = mSlots;
+		shared.mSize = mSize;
+		shared.mShared = true;
+		return shared;
+	}
+
+	/**
+	 * Returns the pool of key bytes, which may be longer than the keys.  Used to save the table.
+	 */
+	byte[] pool() {
+		return mPool;
+	}
+
+	/**
+	 * Returns the start of each key in the pool, which may be longer than size() + 1.  Used to save the table.
+	 */
+	int[] offsets() {
+		return mOffsets;
+	}
+
+	/**
+	 * Returns the hash of each key, which may be longer than size().  Used to save the table.
+	 */
+	int[] hashes() {
+		return mHashes;
+	}
+
+	/**
+	 * Add the key bytes to the pool and return the new id.
+	 */
+	private int add(ByteBuffer buffer, int offset, int length, int hash) {
+		if (mShared) {
+			throw new IllegalStateException("A shared key table is read only");
+		}
+		int id = mSize;
+		if (id == mHashes.length) {
+			mOffsets = Arrays.copyOf(mOffsets, id * 2 + 1);
+			mHashes = Arrays.copyOf(mHashes, id * 2);
+		}
+		int start = mOffsets[id];
+		if (start + length > mPool.length) {
+			mPool = Arrays.copyOf(mPool, Math.max(mPool.length * 2, start + length));
+		}
+		for (int i = 0; i < length; i++) {
+			mPool[start + i] = buffer.get(offset + i);
+		}
+		mOffsets[id + 1] = start + length;
+		mHashes[id] = hash;
+		mSize++;
+		return id;
+	}
+
+	/**
+	 * Double the size of the hash slots and re-insert all the ids.
+	 */
+	private void rehash(int slots) {
+		mSlots = new int[slots];
+		int mask = mSlots.length - 1;
+		for (int id = 0; id < mSize; id++) {
+			int slot = mHashes[id] & mask;
+			while (mSlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			mSlots[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Compare the bytes of key id against the bytes in the buffer.
+	 */
+	private boolean matches(int id, ByteBuffer buffer, int offset, int length) {
+		int start = mOffsets[id];
+		if (mOffsets[id + 1] - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (mPool[start + i] != buffer.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encode an ASCII key in chars[start, end) into the scratch buffer.
+	 * @return The number of bytes encoded, or -1 if the key contains non ASCII characters.
+	 */
+	private int encode(CharSequence chars, int start, int end) {
+		int length = end - start;
+		if (length > mScratch.length) {
+			mScratch = new byte[Math.max(length, mScratch.length * 2)];
+			mScratchBuffer = ByteBuffer.wrap(mScratch);
+		}
+		for (int i = 0; i < length; i++) {
+			char c = chars.charAt(start + i);
+			if (c >= 0x80) {
+				return -1;
+			}
+			mScratch[i] = (byte) c;
+		}
+		return length;
+	}
+
+	private static int hash(ByteBuffer buffer, int offset, int length) {
+		int hash = 0x811c9dc5;
+		for (int i = offset; i < offset + length; i++) {
+			hash = (hash ^ buffer.get(i)) * 0x01000193;
+		}
+		// Spread the bits so the low bits used for the slot index are well mixed.
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Sort ids[from, to) by the keys. A merge sort is used so the ids do not need to be boxed.
+	 */
+	private static void mergeSort(int[] ids, int[] scratch, int from, int to, String[] keys) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(ids, scratch, from, middle, keys);
+		mergeSort(ids, scratch, middle, to, keys);
+		if (keys[ids[middle - 1]].compareTo(keys[ids[middle]]) <= 0) {
+			return;
+		}
+		System.arraycopy(ids, from, scratch, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && keys[scratch[left]].compareTo(keys[scratch[right]]) <= 0)) {
+				ids[i] = scratch[left++];
+			} else {
+				ids[i] = scratch[right++];
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * A LazyClosure is a Closure that only works out the descendants of a node when they are asked for,
+ * instead of calculating every node up front.
+ *
+ * Each query searches the graph from the node, skipping the search below any node whose descendants are
+ * already cached by adding its cached descendants instead.  The results are kept in a least recently used
+ * cache that is bounded by the total number of descendant ids held, so a few large closures cannot use
+ * more memory than many small ones.  A result bigger than the whole cache is returned but not kept.
+ *
+ * The cost of a query depends only on the part of the graph the node reaches, which makes answering a
+ * few queries on a large graph much cheaper than calculating the closure of every node.
+ *
+ * Built on DependencyGraph.reverse() it answers the ancestors of a node in the same way.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LazyClosure implements Closure {
+
+	// The default number of descendant ids the cache holds, 4MB of ids.
+	public static final int DEFAULT_CACHE_SIZE = 1024 * 1024;
+
+	private static final int[] EMPTY = new int[0];
+
+	private final DependencyGraph mGraph;
+	private final int mCacheSize;
+
+	// The cached descendants of each node, sorted by id, in least recently used order.
+	private final LinkedHashMap<Integer, int[]> mCache = new LinkedHashMap<>(16, 0.75f, true);
+	private long mCachedIds = 0;
+	private int mHits = 0;
+	private int mMisses = 0;
+
+	// Scratch space for the searches.  A node is marked when mMark[node] == mStamp, so it never needs clearing.
+	private final int[] mMark;
+	private int mStamp = 0;
+	private int[] mStack = new int[16];
+	private int[] mFound = new int[16];
+
+	/**
+	 * Construct the closure with the default cache size.
+	 *
+	 * @param graph  The graph to query.
+	 */
+	public LazyClosure(DependencyGraph graph) {
+		this(graph, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Construct the closure.
+	 *
+	 * @param graph      The graph to query.
+	 * @param cacheSize  The most descendant ids to keep in the cache, 0 for no cache.
+	 */
+	public LazyClosure(DependencyGraph graph, int cacheSize) {
+		if (cacheSize < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+		}
+		mGraph = graph;
+		mCacheSize = cacheSize;
+		mMark = new int[graph.nodeCount()];
+	}
+
+	/**
+	 * Returns the number of queries answered from the cache.
+	 * @return
+	 */
+	public int getHits() {
+		return mHits;
+	}
+
+	/**
+	 * Returns the number of queries that searched the graph.
+	 * @return
+	 */
+	public int getMisses() {
+		return mMisses;
+	}
+
+	/**
+	 * Returns the number of descendant ids held in the cache.
+	 * @return
+	 */
+	public long getCachedIds() {
+		return mCachedIds;
+	}
+
+	@Override
+	public long memoryBytes() {
+		// The cached ids plus about 64 bytes for each entry & boxed key.
+		return mCachedIds * Integer.BYTES + mCache.size() * 64L + mMark.length * (long) Integer.BYTES;
+	}
+
+	@Override
+	public int size(int node) {
+		return get(node).length;
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		return get(node).clone();
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		return Arrays.binarySearch(get(node), descendant) >= 0;
+	}
+
+	/**
+	 * Returns the union of the descendants of all the nodes, sorted by id.  The nodes are searched together,
+	 * so a node reached from several of them is only searched once.  The union is not cached.
+	 *
+	 * @param nodes  The nodes to query.
+	 * @return       A new array of the descendants.
+	 */
+	public int[] descendants(int[] nodes) {
+		if (nodes.length == 1) {
+			return descendants(nodes[0]);
+		}
+		return search(nodes);
+	}
+
+	/**
+	 * Returns the shared, sorted descendants of the node, from the cache if possible.
+	 */
+	private int[] get(int node) {
+		if (node >= mMark.length || mGraph.childStart(node) == mGraph.childEnd(node)) {
+			return EMPTY;
+		}
+		int[] descendants = mCache.get(node);
+		if (null != descendants) {
+			mHits++;
+			return descendants;
+		}
+		mMisses++;
+		descendants = search(new int[] { node });
+		if (descendants.length <= mCacheSize) {
+			mCache.put(node, descendants);
+			mCachedIds += descendants.length;
+			evict();
+		}
+		return descendants;
+	}
+
+	/**
+	 * Search the graph from the nodes for their descendants.
+	 *
+	 * @return The descendants sorted by id.
+	 */
+	private int[] search(int[] nodes) {
+		int stamp = nextStamp();
+		int found = 0;
+		int top = 0;
+		for (int node : nodes) {
+			if (node < mMark.length) {
+				int[] cached = mCache.get(node);
+				if (null != cached) {
+					found = addCached(found, cached, stamp);
+				} else {
+					top = pushChildren(node, stamp, top);
+				}
+			}
+		}
+		while (top > 0) {
+			int current = mStack[--top];
+			found = add(found, current);
+			int[] cached = mCache.get(current);
+			if (null != cached) {
+				found = addCached(found, cached, stamp);
+			} else {
+				top = pushChildren(current, stamp, top);
+			}
+		}
+		int[] descendants = Arrays.copyOf(mFound, found);
+		Arrays.sort(descendants);
+		return descendants;
+	}
+
+	/**
+	 * Mark the unmarked children of the node and push them on the stack.
+	 *
+	 * @return The new top of the stack.
+	 */
+	private int pushChildren(int node, int stamp, int top) {
+		int[] targets = mGraph.targets();
+		int end = mGraph.childEnd(node);
+		if (top + end - mGraph.childStart(node) > mStack.length) {
+			mStack = Arrays.copyOf(mStack, Math.max(mStack.length * 2, top + end - mGraph.childStart(node)));
+		}
+		for (int i = mGraph.childStart(node); i < end; i++) {
+			int child = targets[i];
+			if (mMark[child] != stamp) {
+				mMark[child] = stamp;
+				mStack[top++] = child;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Add the unmarked ids of a cached result.  Everything below a cached node is already known,
+	 * so the ids are marked but not searched.
+	 *
+	 * @return The new number of ids found.
+	 */
+	private int addCached(int found, int[] cached, int stamp) {
+		for (int descendant : cached) {
+			if (mMark[descendant] != stamp) {
+				mMark[descendant] = stamp;
+				found = add(found, descendant);
+			}
+		}
+		return found;
+	}
+
+	private int add(int found, int id) {
+		if (found == mFound.length) {
+			mFound = Arrays.copyOf(mFound, found * 2);
+		}
+		mFound[found] = id;
+		return found + 1;
+	}
+
+	/**
+	 * Remove the least recently used results until the cache is back within its size.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Integer, int[]>> eldest = mCache.entrySet().iterator();
+		while (mCachedIds > mCacheSize && eldest.hasNext()) {
+			mCachedIds -= eldest.next().getValue().length;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Returns a new stamp for marking nodes, clearing the marks when the stamps wrap around.
+	 */
+	private int nextStamp() {
+		if (mStamp == Integer.MAX_VALUE) {
+			Arrays.fill(mMark, 0);
+			mStamp = 0;
+		}
+		return ++mStamp;
+	}
+}
@@ -1,15 +1,23 @@
 /**
  * This is the main method. 
- * It handles the input line parameters and reading the data into strings.
+ * It handles the input line parameters and loading the input data.
  * The DependencyEvaluator does most of the work after the data is read in.
  * 
  * I use the global LOGGER throughout to log message at various levels.
  * 
  * This main program sets the default input file name,
- * Parses the command line arguments to see if there is an input file override
+ * Parses the command line arguments to see if there is an input file, closure mode, storage or parallelism override
  * Checks to make sure the input file exists
- * Reads the input file into an ArrayList<String>
- * Uses the DependencyEvaluator to evaluate the dependencies & generate the output string.
+ * Memory maps the input file into the DependencyEvaluator, loading it as a graph file if it is one,
+ * or from the snapshot cache when a cache directory is given and the input was evaluated before
+ * Estimates the size of the dependencies to report the keys with the most, or to choose the closure mode that
+ * fits in memory, when asked to
+ * Uses the DependencyEvaluator to evaluate the dependencies & stream the output to standard output or the output file,
+ * limited to some keys, key prefixes or a maximum depth if asked to,
+ * or saves the input as a graph file, with or without the calculated dependencies, when asked to,
+ * or keeps the DependencyEvaluator in memory and serves queries on a local port with a DependencyServer.
+ * Frees the closure when it is stored off the heap once the output is written.
+ * The EvaluatorMetrics are registered with JMX, and written as JSON when the program exits if asked to.
  * 
  * @author reed
  */
@@ -17,14 +25,15 @@ package rbb.mdexample;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class Main {
 
@@ -32,6 +41,16 @@ public class Main {
 	private final static int STATUS_NORMAL = 0;
 	private final static int STATUS_USAGE = 1;
 	private final static int STATUS_NOFILE = 2;
+
+	// The input file name used to read the input from standard input.
+	private final static String STDIN_NAME = "-";
+
+	// The closure mode that is chosen from the estimated size of the dependencies.
+	private final static String MODE_AUTO = "auto";
+
+	// The ways to load the input file.
+	private final static String LOAD_MAPPED = "mapped";
+	private final static String LOAD_PARALLEL = "parallel";
 	
 	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
@@ -39,56 +58,301 @@ public class Main {
 
 		LOGGER.setLevel(Level.SEVERE);
 		String inputFileName = "data/input.dat";
+		String outputFileName = null;
+		String graphFileName = null;
+		boolean saveClosure = false;
+		String cacheDirectory = null;
+		int maxSnapshots = SnapshotCache.DEFAULT_MAX_SNAPSHOTS;
+		long maxCacheBytes = SnapshotCache.DEFAULT_MAX_BYTES;
+		int daemonPort = -1;
+		String metricsFileName = null;
+		ClosureMode closureMode = ClosureMode.TRAVERSAL;
+		boolean autoMode = false;
+		int estimateCount = 0;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		boolean parallelLoad = false;
+		ClosureStorage storage = ClosureStorage.HEAP;
+		String scratchDirectory = null;
+		ClosureQuery query = new ClosureQuery();
 
-		List<String> inputData = new ArrayList<>();
-
-		// If there are command line args, parse them and look for the input file name.
-		if (args.length > 0) {
-			// if have command line args, there must be 2 
-			if (args.length != 2) {
-				printUsage();
-			}
-		
-			// Make sure the first arg is a -f
-			if ("-f".equals(args[0])) {
-				inputFileName = args[1];
-			} else {
+		// If there are command line args, parse them as option & value pairs.
+		if (args.length % 2 != 0) {
+			printUsage();
+		}
+		for (int i = 0; i < args.length; i += 2) {
+			String value = args[i + 1];
+			try {
+				switch (args[i]) {
+				case "-f":
+					inputFileName = value;
+					break;
+				case "-o":
+					outputFileName = value;
+					break;
+				case "-s":
+				case "-S":
+					graphFileName = value;
+					saveClosure = "-S".equals(args[i]);
+					break;
+				case "-c":
+					cacheDirectory = value;
+					break;
+				case "-n":
+					maxSnapshots = Integer.parseInt(value);
+					if (maxSnapshots < 1) {
+						throw new IllegalArgumentException();
+					}
+					break;
+				case "-b":
+					maxCacheBytes = Long.parseLong(value) * 1024 * 1024;
+					if (maxCacheBytes < 0) {
+						throw new IllegalArgumentException();
+					}
+					break;
+				case "-d":
+					daemonPort = Integer.parseInt(value);
+					if (daemonPort < 0 || daemonPort > 0xffff) {
+						throw new IllegalArgumentException();
+					}
+					break;
+				case "-j":
+					metricsFileName = value;
+					break;
+				case "-h":
+					query.setMaxDepth(Integer.parseInt(value));
+					break;
+				case "-r":
+					query.setRoots(Arrays.asList(value.split(",")));
+					break;
+				case "-i":
+					query.setInclude(ClosureQuery.startsWith(value.split(",")));
+					break;
+				case "-e":
+					query.setExclude(ClosureQuery.startsWith(value.split(",")));
+					break;
+				case "-m":
+					autoMode = MODE_AUTO.equals(value);
+					if (!autoMode) {
+						closureMode = ClosureMode.valueOf(value.toUpperCase());
+					}
+					break;
+				case "-k":
+					estimateCount = Integer.parseInt(value);
+					if (estimateCount < 1) {
+						throw new IllegalArgumentException();
+					}
+					break;
+				case "-l":
+					if (!LOAD_PARALLEL.equals(value) && !LOAD_MAPPED.equals(value)) {
+						throw new IllegalArgumentException();
+					}
+					parallelLoad = LOAD_PARALLEL.equals(value);
+					break;
+				case "-x":
+					storage = ClosureStorage.valueOf(value.toUpperCase());
+					break;
+				case "-t":
+					scratchDirectory = value;
+					break;
+				case "-p":
+					parallelism = Integer.parseInt(value);
+					if (parallelism < 1) {
+						throw new IllegalArgumentException();
+					}
+					break;
+				default:
+					printUsage();
+				}
+			} catch (IllegalArgumentException iae) {
+				System.err.println("Invalid value for " + args[i] + ": " + value);
 				printUsage();
 			}
 		}
 
+		// The daemon answers queries from the calculated closure, which only some modes store.
+		if (daemonPort >= 0 && !closureMode.storesClosure()) {
+			System.err.println("Invalid value for -m with -d: " + closureMode.name().toLowerCase());
+			printUsage();
+		}
+		// Snapshots of the closure for the daemon's queries are only taken from the heap.
+		if (daemonPort >= 0 && storage != ClosureStorage.HEAP) {
+			System.err.println("Invalid value for -x with -d: " + storage.name().toLowerCase());
+			printUsage();
+		}
+
+		// Make the metrics visible over JMX, and write them out however the program exits if asked to.
+		EvaluatorMetrics.registerMBean();
+		if (null != metricsFileName) {
+			String fileName = metricsFileName;
+			EvaluatorMetrics.getInstance().setDetailed(true);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMetrics(fileName)));
+		}
+
 		// Check to make sure the input file exists - if not, print and error and exit
 		File f = new File(inputFileName);
-		if (!f.exists()) {
+		if (!STDIN_NAME.equals(inputFileName) && !f.exists()) {
 			System.err.println("Can't find file: " + inputFileName);
 			System.exit(STATUS_NOFILE);
 		}
 		
-		// Read the input file into a list - printing out information and exiting if there is an error.
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.setClosureMode(closureMode);
+		de.setParallelism(parallelism);
+		de.setParallelLoad(parallelLoad);
+		de.setStorage(storage);
+		if (null != scratchDirectory) {
+			de.setScratchDirectory(Paths.get(scratchDirectory));
+		}
+
+		// Load the input file, or stream standard input - printing out information and exiting if there is an error.
 		LOGGER.info("Loading data from " + inputFileName);
-		try (Stream<String> stream = Files.lines(Paths.get(inputFileName))) {
-			inputData = stream.collect(Collectors.toList());
+		try {
+			if (STDIN_NAME.equals(inputFileName)) {
+				de.addInput(System.in);
+			} else if (GraphFile.isGraphFile(Paths.get(inputFileName))) {
+				de.loadGraph(Paths.get(inputFileName));
+			} else if (null != cacheDirectory && closureMode.storesClosure() && !autoMode) {
+				SnapshotCache cache = new SnapshotCache(Paths.get(cacheDirectory), maxSnapshots, maxCacheBytes);
+				SnapshotCache.Lookup lookup = cache.evaluate(de, Paths.get(inputFileName));
+				LOGGER.info("Snapshot cache " + lookup + " for " + inputFileName);
+			} else {
+				de.loadInputFile(Paths.get(inputFileName));
+			}
 		} catch (IOException e) {
 			System.err.println("Error reading input data");
 			e.printStackTrace();
 			System.exit(STATUS_ERROR);
 		}
 		
-		// Evaluate the dependencies in the input file
-		DependencyEvaluator de = new DependencyEvaluator(inputData);
-		String result = de.generateOutput();
-		System.out.println(result);
+		// Estimate the dependencies to report the keys with the most, or to choose the closure mode, if asked to.
+		if (estimateCount > 0 || (autoMode && !de.isCalculated())) {
+			ClosureEstimator estimator = de.estimate();
+			Runtime runtime = Runtime.getRuntime();
+			long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+			// Leave half the free memory for generating the output.
+			ClosureMode recommended = estimator.recommendMode(freeMemory / 2, parallelism);
+			if (estimateCount > 0) {
+				printEstimate(estimator, recommended, estimateCount);
+				System.exit(STATUS_NORMAL);
+			}
+			if (daemonPort >= 0 && !recommended.storesClosure()) {
+				System.err.println("The estimated dependencies are too large to serve with -d");
+				System.exit(STATUS_ERROR);
+			}
+			LOGGER.info("Estimated " + estimator.estimatedTotalSize() + " dependencies, using closure mode " + recommended);
+			de.setClosureMode(recommended);
+		}
+
+		// Convert the input to a graph file instead of writing the output if asked to.
+		if (null != graphFileName) {
+			try {
+				de.saveGraph(Paths.get(graphFileName), saveClosure);
+			} catch (IOException e) {
+				System.err.println("Error writing graph file");
+				e.printStackTrace();
+				System.exit(STATUS_ERROR);
+			}
+			System.exit(STATUS_NORMAL);
+		}
+
+		// Serve queries until the server is shut down instead of writing the output if asked to.
+		if (daemonPort >= 0) {
+			try (DependencyServer server = new DependencyServer(new ConcurrentDependencyEvaluator(de), daemonPort)) {
+				server.start();
+				System.out.println("Listening on port " + server.getPort());
+				System.out.flush();
+				server.awaitClose();
+			} catch (IOException e) {
+				System.err.println("Error serving queries");
+				e.printStackTrace();
+				System.exit(STATUS_ERROR);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			System.exit(STATUS_NORMAL);
+		}
+
+		// Evaluate the dependencies in the input file, streaming the output as it is generated.
+		try {
+			if (null == outputFileName) {
+				de.writeOutput(Channels.newChannel(System.out), query);
+				System.out.flush();
+			} else {
+				try (FileChannel output = FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					de.writeOutput(output, query);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Error writing output");
+			e.printStackTrace();
+			System.exit(STATUS_ERROR);
+		} finally {
+			de.close();
+		}
 		
 		// Exit with a normal status.
 		System.exit(STATUS_NORMAL);
 	}
 
+	/**
+	 * Print the estimated size of the dependencies and output, and the keys with the most dependencies.
+	 */
+	private static void printEstimate(ClosureEstimator estimator, ClosureMode recommended, int count) {
+		KeyTable keys = estimator.getGraph().getKeys();
+		System.out.println("Estimated dependencies: " + estimator.estimatedTotalSize());
+		System.out.println("Estimated output bytes: " + estimator.estimatedOutputBytes());
+		System.out.println("Estimated closure bytes: " + estimator.estimatedIdListBytes() + " as id lists, "
+				+ estimator.estimatedBitSetBytes() + " as bitsets");
+		System.out.println("Closure mode for the free memory: " + recommended.name().toLowerCase());
+		System.out.println("Keys with the most dependencies:");
+		for (int node : estimator.heaviest(count)) {
+			System.out.println(keys.getKey(node) + "  " + estimator.estimatedSize(node));
+		}
+		System.out.flush();
+	}
+
+	/**
+	 * Write the JSON summary of the metrics to the file, or to standard error.
+	 */
+	private static void writeMetrics(String fileName) {
+		String summary = EvaluatorMetrics.getInstance().getSummary() + System.lineSeparator();
+		if (STDIN_NAME.equals(fileName)) {
+			System.err.print(summary);
+			System.err.flush();
+			return;
+		}
+		try {
+			Files.write(Paths.get(fileName), summary.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Error writing metrics to " + fileName + ": " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Print out a usage message and exit with status of STATUS_USAGE;
 	 */
 	private static void printUsage() {
 		System.err.println("Usage: java -jar DependencyEvaluator.jar ");
-		System.err.println("       [-f <fileName>] //Optional argument to specify an input file - default = input.dat");
+		System.err.println("       [-f <fileName>] //Optional argument to specify an input or graph file, - for standard input - default = input.dat");
+		System.err.println("       [-o <fileName>] //Optional argument to specify an output file - default = standard output");
+		System.err.println("       [-s <fileName>] //Optional graph file to save the input to instead of writing the output");
+		System.err.println("       [-S <fileName>] //Optional graph file to save the input and its dependencies to instead of writing the output");
+		System.err.println("       [-c <directory>] //Optional snapshot cache directory, to reuse the dependencies calculated for the same input");
+		System.err.println("       [-n <count>]    //Optional number of snapshots to keep in the cache - default = 16");
+		System.err.println("       [-b <megabytes>] //Optional size of the snapshots to keep in the cache - default = 1024");
+		System.err.println("       [-d <port>]     //Optional port to serve queries on instead of writing the output, 0 for any free port - not with the nodes modes");
+		System.err.println("       [-j <fileName>] //Optional file to write a JSON summary of the metrics to on exit, - for standard error");
+		System.err.println("       [-h <hops>]     //Optional most hops from each key to the dependencies written for it - default = unlimited");
+		System.err.println("       [-r <keys>]     //Optional comma separated keys to write the dependencies of - default = every key");
+		System.err.println("       [-i <prefixes>] //Optional comma separated prefixes of the only keys to write and search through");
+		System.err.println("       [-e <prefixes>] //Optional comma separated prefixes of keys to leave out and not search through");
+		System.err.println("       [-k <count>]    //Optional number of keys with the most dependencies to report with the estimated sizes instead of writing the output");
+		System.err.println("       [-m <mode>]     //Optional closure mode - nodes, nodes_iterative, traversal (default), bitset, parallel, sorted, streaming or auto");
+		System.err.println("       [-x <storage>]  //Optional storage of the bitset modes' closure - heap (default), direct or mapped - not with -d");
+		System.err.println("       [-t <directory>] //Optional directory for the scratch file of the mapped storage - default = the temporary directory");
+		System.err.println("       [-l <load>]     //Optional input file load - mapped (default) or parallel");
+		System.err.println("       [-p <threads>]  //Optional number of threads for the parallel modes - default = number of processors");
 		System.exit(STATUS_USAGE);
 	}
 }
@@ -0,0 +1,163 @@
+/**
+ * A Closure that stores the same word packed bitsets as the BitSetClosure outside the Java heap, in the
+ * buffers of an OffHeapStore.
+ *
+ * The bitsets are numbered and laid out end to end in chunks of at most MAX_CHUNK_BYTES, each bitset
+ * inside one chunk, and a table of ints holds the bitset number of each node, or -1 for nodes without
+ * descendants.  Several nodes may share the same bitset.
+ *
+ * The closure can not be used once its store is closed, and throws IllegalStateException instead of
+ * reading freed memory.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+public class OffHeapBitSetClosure implements Closure {
+
+	// The largest chunk of bitsets allocated at once.
+	static final int MAX_CHUNK_BYTES = 1 << 30;
+
+	private final OffHeapStore mStore;
+	private final int mWords;
+	private final int mSetCount;
+	private final int mSetsPerChunk;
+	private final LongBuffer[] mChunks;
+	// The bitset of each node, -1 for none.
+	private final IntBuffer mNodeSets;
+
+	/**
+	 * Allocate the closure with every bitset empty and no node using one yet.
+	 *
+	 * @param store      The store to allocate from.
+	 * @param nodeCount  The number of nodes.
+	 * @param setCount   The number of bitsets.
+	 * @throws IOException if the memory can not be allocated.
+	 */
+	OffHeapBitSetClosure(OffHeapStore store, int nodeCount, int setCount) throws IOException {
+		mStore = store;
+		mWords = BitSetClosure.words(nodeCount);
+		mSetCount = setCount;
+		mSetsPerChunk = Math.max(1, MAX_CHUNK_BYTES / (Long.BYTES * Math.max(1, mWords)));
+		mChunks = new LongBuffer[(setCount + mSetsPerChunk - 1) / mSetsPerChunk];
+		for (int c = 0; c < mChunks.length; c++) {
+			int sets = Math.min(mSetsPerChunk, setCount - c * mSetsPerChunk);
+			mChunks[c] = store.allocate((long) Long.BYTES * mWords * sets).asLongBuffer();
+		}
+		mNodeSets = store.allocate((long) Integer.BYTES * nodeCount).asIntBuffer();
+		for (int node = 0; node < nodeCount; node++) {
+			mNodeSets.put(node, -1);
+		}
+	}
+
+	/**
+	 * Returns the store holding the bitsets.
+	 * @return
+	 */
+	public OffHeapStore getStore() {
+		return mStore;
+	}
+
+	/**
+	 * Returns the number of bitsets held.
+	 * @return
+	 */
+	public int setCount() {
+		return mSetCount;
+	}
+
+	/**
+	 * Use the bitset for the node's descendants.
+	 */
+	void setNodeSet(int node, int set) {
+		mNodeSets.put(node, set);
+	}
+
+	/**
+	 * OR the source bitset into the target bitset.
+	 */
+	void or(int target, int source) {
+		LongBuffer targetChunk = mChunks[target / mSetsPerChunk];
+		LongBuffer sourceChunk = mChunks[source / mSetsPerChunk];
+		int targetBase = (target % mSetsPerChunk) * mWords;
+		int sourceBase = (source % mSetsPerChunk) * mWords;
+		for (int w = 0; w < mWords; w++) {
+			long word = sourceChunk.get(sourceBase + w);
+			if (word != 0) {
+				targetChunk.put(targetBase + w, targetChunk.get(targetBase + w) | word);
+			}
+		}
+	}
+
+	/**
+	 * Add the node to the bitset.
+	 */
+	void add(int set, int node) {
+		LongBuffer chunk = mChunks[set / mSetsPerChunk];
+		int index = (set % mSetsPerChunk) * mWords + (node >>> 6);
+		chunk.put(index, chunk.get(index) | 1L << node);
+	}
+
+	@Override
+	public int size(int node) {
+		checkOpen();
+		int set = mNodeSets.get(node);
+		int size = 0;
+		if (set >= 0) {
+			LongBuffer chunk = mChunks[set / mSetsPerChunk];
+			int base = (set % mSetsPerChunk) * mWords;
+			for (int w = 0; w < mWords; w++) {
+				size += Long.bitCount(chunk.get(base + w));
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		int[] descendants = new int[size(node)];
+		int set = mNodeSets.get(node);
+		int count = 0;
+		if (set >= 0) {
+			LongBuffer chunk = mChunks[set / mSetsPerChunk];
+			int base = (set % mSetsPerChunk) * mWords;
+			for (int w = 0; w < mWords; w++) {
+				long word = chunk.get(base + w);
+				while (word != 0) {
+					descendants[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+		}
+		return descendants;
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		checkOpen();
+		int set = mNodeSets.get(node);
+		return set >= 0
+				&& (mChunks[set / mSetsPerChunk].get((set % mSetsPerChunk) * mWords + (descendant >>> 6)) & (1L << descendant)) != 0;
+	}
+
+	/**
+	 * Returns the off heap bytes of the bitsets and the node table.
+	 */
+	@Override
+	public long memoryBytes() {
+		return (long) Long.BYTES * mWords * mSetCount + (long) Integer.BYTES * mNodeSets.capacity();
+	}
+
+	/**
+	 * Throw IllegalStateException if the store has been closed and the bitsets freed.
+	 */
+	private void checkOpen() {
+		if (mStore.isClosed()) {
+			throw new IllegalStateException("The off heap closure has been freed");
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * The OffHeapClosureEngine calculates the same bitset closure as the BitSetClosureEngine into an
+ * OffHeapBitSetClosure, so the bitsets are held in direct or mapped buffers instead of on the heap.
+ *
+ * The components are merged in reverse topological order, or level by level on a pool of threads as the
+ * ParallelClosureEngine does when the parallelism is above 1.  A component whose only successor is cyclic
+ * shares its successor's bitset, but the finished bitsets are not interned, so the store only ever holds
+ * one bitset for each other component with descendants.
+ *
+ * The engine allocates from the store it is given and never frees it; the caller closes the store when
+ * the closure is no longer needed.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import rbb.mdexample.EvaluatorMetrics.Counter;
+
+public class OffHeapClosureEngine implements ClosureEngine {
+
+	private final static EvaluatorMetrics METRICS = EvaluatorMetrics.getInstance();
+
+	private final OffHeapStore mStore;
+	private final int mParallelism;
+
+	/**
+	 * Construct the engine merging on the calling thread.
+	 *
+	 * @param store  The store to allocate the closure from.
+	 */
+	public OffHeapClosureEngine(OffHeapStore store) {
+		this(store, 1);
+	}
+
+	/**
+	 * Construct the engine.
+	 *
+	 * @param store        The store to allocate the closure from.
+	 * @param parallelism  The number of threads to merge with.
+	 */
+	public OffHeapClosureEngine(OffHeapStore store, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		mStore = store;
+		mParallelism = parallelism;
+	}
+
+	/**
+	 * Returns the number of threads used to merge.
+	 * @return
+	 */
+	public int getParallelism() {
+		return mParallelism;
+	}
+
+	/**
+	 * Calculate the closure into the store.
+	 *
+	 * @throws UncheckedIOException if the store can not allocate the closure.
+	 */
+	@Override
+	public Closure calculate(DependencyGraph graph) {
+		Condensation condensation = new Condensation(graph);
+		int componentCount = condensation.componentCount();
+		int[] successors = condensation.successors();
+
+		// Number the bitsets, -1 for a component with no descendants.
+		int[] componentSets = new int[componentCount];
+		int setCount = 0;
+		for (int c = 0; c < componentCount; c++) {
+			if (!hasDescendants(condensation, c)) {
+				componentSets[c] = -1;
+			} else if (sharesSuccessor(condensation, c)) {
+				componentSets[c] = componentSets[successors[condensation.successorStart(c)]];
+			} else {
+				componentSets[c] = setCount++;
+			}
+		}
+
+		OffHeapBitSetClosure closure;
+		try {
+			closure = new OffHeapBitSetClosure(mStore, graph.nodeCount(), setCount);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (mParallelism > 1) {
+			ParallelClosureEngine.mergeLevels(condensation, mParallelism,
+					component -> merge(condensation, componentSets, closure, component));
+		} else {
+			for (int c = 0; c < componentCount; c++) {
+				merge(condensation, componentSets, closure, c);
+			}
+		}
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			closure.setNodeSet(node, componentSets[condensation.component(node)]);
+		}
+		METRICS.add(Counter.COMPONENTS, componentCount);
+		METRICS.add(Counter.SET_MERGES, componentCount == 0 ? 0 : condensation.successorEnd(componentCount - 1));
+		return closure;
+	}
+
+	/**
+	 * Merge the bitset of one component from the already merged bitsets of its successors, as
+	 * BitSetClosureEngine.merge() does.
+	 */
+	private static void merge(Condensation condensation, int[] componentSets, OffHeapBitSetClosure closure,
+			int component) {
+		int set = componentSets[component];
+		if (set < 0 || sharesSuccessor(condensation, component)) {
+			return;
+		}
+		int[] successors = condensation.successors();
+		int[] members = condensation.members();
+		for (int i = condensation.successorStart(component); i < condensation.successorEnd(component); i++) {
+			int successor = successors[i];
+			if (componentSets[successor] >= 0) {
+				closure.or(set, componentSets[successor]);
+			}
+			// A cyclic successor already holds its members, otherwise add its single member.
+			if (!condensation.isCyclic(successor)) {
+				closure.add(set, members[condensation.memberStart(successor)]);
+			}
+		}
+		if (condensation.isCyclic(component)) {
+			for (int m = condensation.memberStart(component); m < condensation.memberEnd(component); m++) {
+				closure.add(set, members[m]);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the component has any descendants.
+	 */
+	private static boolean hasDescendants(Condensation condensation, int component) {
+		return condensation.successorStart(component) != condensation.successorEnd(component)
+				|| condensation.isCyclic(component);
+	}
+
+	/**
+	 * Returns true if the component's only successor is cyclic, so they have the same descendants.
+	 */
+	private static boolean sharesSuccessor(Condensation condensation, int component) {
+		int successorStart = condensation.successorStart(component);
+		return condensation.successorEnd(component) - successorStart == 1 && !condensation.isCyclic(component)
+				&& condensation.isCyclic(condensation.successors()[successorStart]);
+	}
+}
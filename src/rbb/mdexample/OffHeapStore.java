@@ -0,0 +1,186 @@
+/**
+ * The OffHeapStore allocates memory outside the Java heap, either as direct ByteBuffers or as regions of a
+ * scratch file mapped into memory, and frees all of it at once when it is closed.
+ *
+ * The garbage collector only sees one small object for each buffer, however large it is, so the memory
+ * adds nothing to the time of a collection.  Direct and mapped buffers are normally only freed once the
+ * collector finds them unreachable, which may be long after they are last used, so close() frees them
+ * straight away through the buffer's cleaner where the JVM allows it.  The buffers must not be used
+ * after the store is closed.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class OffHeapStore implements Closeable {
+
+	// The largest buffer a ByteBuffer can index.
+	public static final int MAX_BUFFER_BYTES = Integer.MAX_VALUE - 8;
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	// Frees a direct or mapped buffer, or null if this JVM does not allow it.
+	private final static Freer FREER = createFreer();
+
+	private final FileChannel mChannel;   // The scratch file, or null for direct buffers.
+	private final List<ByteBuffer> mBuffers = new ArrayList<>();
+	private long mAllocatedBytes = 0;
+	private volatile boolean mClosed = false;
+
+	private OffHeapStore(FileChannel channel) {
+		mChannel = channel;
+	}
+
+	/**
+	 * Returns a store of direct ByteBuffers.
+	 * @return
+	 */
+	public static OffHeapStore direct() {
+		return new OffHeapStore(null);
+	}
+
+	/**
+	 * Returns a store mapping regions of a new scratch file in the directory.  The file is deleted when the store
+	 * is closed, or as soon as it is opened where the file system allows it, so none are left behind.
+	 *
+	 * @param directory  The directory to create the file in.
+	 * @return           The store.
+	 * @throws IOException if the file can not be created.
+	 */
+	public static OffHeapStore mapped(Path directory) throws IOException {
+		Path file = Files.createTempFile(directory, "closure", ".scratch");
+		return new OffHeapStore(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE));
+	}
+
+	/**
+	 * Allocate a zeroed buffer in the native byte order.
+	 *
+	 * @param bytes  The size of the buffer, at most MAX_BUFFER_BYTES.
+	 * @return       The buffer.
+	 * @throws IOException if the scratch file can not be extended.
+	 */
+	public synchronized ByteBuffer allocate(long bytes) throws IOException {
+		if (mClosed) {
+			throw new IllegalStateException("The off heap store is closed");
+		}
+		if (bytes < 0 || bytes > MAX_BUFFER_BYTES) {
+			throw new IllegalArgumentException("Buffer size must be from 0 to " + MAX_BUFFER_BYTES + ": " + bytes);
+		}
+		ByteBuffer buffer;
+		if (null == mChannel) {
+			buffer = ByteBuffer.allocateDirect((int) bytes);
+		} else {
+			// Mapping past the end of the file extends it, and the new bytes read as zero.
+			buffer = mChannel.map(FileChannel.MapMode.READ_WRITE, mAllocatedBytes, bytes);
+		}
+		mBuffers.add(buffer);
+		mAllocatedBytes += bytes;
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Returns the bytes allocated since the store was created.
+	 * @return
+	 */
+	public synchronized long allocatedBytes() {
+		return mAllocatedBytes;
+	}
+
+	/**
+	 * Returns true if the store is mapped to a scratch file.
+	 * @return
+	 */
+	public boolean isMapped() {
+		return null != mChannel;
+	}
+
+	/**
+	 * Returns true once the store is closed and its buffers may no longer be used.
+	 * @return
+	 */
+	public boolean isClosed() {
+		return mClosed;
+	}
+
+	/**
+	 * Free all the buffers and delete the scratch file.  Closing a closed store does nothing.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		mClosed = true;
+		if (null != FREER) {
+			for (ByteBuffer buffer : mBuffers) {
+				FREER.free(buffer);
+			}
+		}
+		mBuffers.clear();
+		if (null != mChannel) {
+			mChannel.close();
+		}
+		LOGGER.info("Freed " + mAllocatedBytes + " off heap bytes");
+	}
+
+	/**
+	 * Frees a direct or mapped buffer straight away.
+	 */
+	private interface Freer {
+		void free(ByteBuffer buffer);
+	}
+
+	/**
+	 * Find the way this JVM frees a buffer: Unsafe.invokeCleaner() from Java 9, or the buffer's own cleaner
+	 * before then.  Returns null if neither is allowed, leaving the buffers to the garbage collector.
+	 */
+	private static Freer createFreer() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return buffer -> invoke(invokeCleaner, unsafe, buffer);
+		} catch (NoSuchMethodException e) {
+			try {
+				Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+				return buffer -> invoke(clean, invoke(cleaner, buffer, null), null);
+			} catch (ReflectiveOperationException | RuntimeException e8) {
+				LOGGER.log(Level.FINE, "Off heap buffers are left to the garbage collector", e8);
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Off heap buffers are left to the garbage collector", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Invoke the method, with the target as the argument if there is one.
+	 */
+	private static Object invoke(Method method, Object target, Object argument) {
+		try {
+			return null == argument ? method.invoke(target) : method.invoke(target, argument);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Off heap buffer not freed", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * The ParallelClosureEngine calculates the same bitset closure as the BitSetClosureEngine on a ForkJoinPool.
+ *
+ * The condensed components are split into levels: a component with no successors is on level 0 and every
+ * other component is one level above its highest successor.  All the components on a level only depend on
+ * lower levels, so each level is merged in parallel once the level below it is complete.
+ *
+ * Each component's bitset is only written by the task that merges it and is a pure function of its
+ * successors' bitsets, so the result does not depend on how the work is scheduled.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class ParallelClosureEngine implements ClosureEngine {
+
+	// Merge ranges of at most this many components in one task.
+	private static final int TASK_SIZE = 64;
+
+	private final int mParallelism;
+
+	/**
+	 * Construct the engine using one thread per available processor.
+	 */
+	public ParallelClosureEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct the engine.
+	 *
+	 * @param parallelism  The number of threads to merge with.
+	 */
+	public ParallelClosureEngine(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		mParallelism = parallelism;
+	}
+
+	/**
+	 * Returns the number of threads used to merge.
+	 * @return
+	 */
+	public int getParallelism() {
+		return mParallelism;
+	}
+
+	@Override
+	public Closure calculate(DependencyGraph graph) {
+		Condensation condensation = new Condensation(graph);
+		long[][] componentBits = new long[condensation.componentCount()][];
+		mergeLevels(condensation, mParallelism,
+				component -> componentBits[component] = BitSetClosureEngine.merge(condensation, componentBits, component));
+		return BitSetClosureEngine.expand(condensation, componentBits);
+	}
+
+	/**
+	 * Merge every component level by level on a pool of threads, each level once the level below it is complete.
+	 *
+	 * @param condensation  The condensed graph.
+	 * @param parallelism   The number of threads to merge with.
+	 * @param merge         Merges one component, given its successors are merged.
+	 */
+	static void mergeLevels(Condensation condensation, int parallelism, IntConsumer merge) {
+		int componentCount = condensation.componentCount();
+
+		// Group the components by level: the components of level l are ordered[offsets[l]] .. ordered[offsets[l + 1] - 1].
+		int[] level = levels(condensation);
+		int levelCount = 0;
+		for (int c = 0; c < componentCount; c++) {
+			levelCount = Math.max(levelCount, level[c] + 1);
+		}
+		int[] offsets = new int[levelCount + 1];
+		for (int c = 0; c < componentCount; c++) {
+			offsets[level[c] + 1]++;
+		}
+		for (int l = 0; l < levelCount; l++) {
+			offsets[l + 1] += offsets[l];
+		}
+		int[] ordered = new int[componentCount];
+		int[] next = Arrays.copyOf(offsets, levelCount);
+		for (int c = 0; c < componentCount; c++) {
+			ordered[next[level[c]]++] = c;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (int l = 0; l < levelCount; l++) {
+				MergeTask task = new MergeTask(merge, ordered, offsets[l], offsets[l + 1]);
+				if (offsets[l + 1] - offsets[l] <= TASK_SIZE) {
+					// Not worth handing a small level to the pool.
+					task.compute();
+				} else {
+					pool.invoke(task);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Return the level of each component. A component with no successors is on level 0,
+	 * every other component is one level above its highest successor.
+	 *
+	 * @param condensation  The condensed graph.
+	 * @return              The level of each component.
+	 */
+	static int[] levels(Condensation condensation) {
+		int componentCount = condensation.componentCount();
+		int[] successors = condensation.successors();
+		int[] level = new int[componentCount];
+		// The successors of each component have lower ids, so their levels are already known.
+		for (int c = 0; c < componentCount; c++) {
+			for (int i = condensation.successorStart(c); i < condensation.successorEnd(c); i++) {
+				level[c] = Math.max(level[c], level[successors[i]] + 1);
+			}
+		}
+		return level;
+	}
+
+	/**
+	 * Merge a range of components on one level, splitting the range in half until it is small enough.
+	 */
+	@SuppressWarnings("serial")
+	private static class MergeTask extends RecursiveAction {
+		private final IntConsumer mMerge;
+		private final int[] mOrdered;
+		private final int mStart;
+		private final int mEnd;
+
+		MergeTask(IntConsumer merge, int[] ordered, int start, int end) {
+			mMerge = merge;
+			mOrdered = ordered;
+			mStart = start;
+			mEnd = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (mEnd - mStart > TASK_SIZE) {
+				int middle = (mStart + mEnd) >>> 1;
+				invokeAll(new MergeTask(mMerge, mOrdered, mStart, middle), new MergeTask(mMerge, mOrdered, middle, mEnd));
+			} else {
+				for (int i = mStart; i < mEnd; i++) {
+					mMerge.accept(mOrdered[i]);
+				}
+			}
+		}
+	}
+}
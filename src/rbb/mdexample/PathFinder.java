@@ -0,0 +1,377 @@
+/**
+ * The PathFinder explains why one node depends on another by finding the shortest chains of dependencies
+ * between them, without calculating any closure.
+ *
+ * The shortest path is found with a breadth first search forward from the node and backward from the
+ * dependency on the reverse graph at the same time, always expanding the smaller frontier a whole level at
+ * a time, so each search only visits about the square root of the nodes a one way search would.  The
+ * searches stop as soon as no path can be shorter than the best one that joins them.
+ *
+ * The k shortest paths are found with Yen's algorithm: each path after the first is the shortest path that
+ * follows a prefix of an earlier path and then leaves it, searched for with the prefix and the edges the
+ * earlier paths left by blocked.  The paths are simple, so a node only appears once in a path, except that
+ * the paths from a node to itself are the circular references that start and end at it.
+ *
+ * The visited nodes are kept in open addressing hash tables instead of arrays indexed by node, and each
+ * search gives up with a SearchLimitException when it has visited more than the maximum number of nodes or
+ * the time for the query has run out, so a query on a very large graph uses bounded memory and time.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PathFinder {
+
+	// The default most nodes a search may visit, about 24MB of hash tables.
+	public static final int DEFAULT_MAX_VISITED = 1024 * 1024;
+	// The default time allowed for a query.
+	public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
+	private static final int[] EMPTY = new int[0];
+	// The number of nodes expanded between checks of the time.
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final DependencyGraph mGraph;
+	private final DependencyGraph mReverse;
+	private final int mMaxVisited;
+	private final long mTimeoutNanos;
+
+	/**
+	 * Construct the finder with the default limits.
+	 *
+	 * @param graph  The graph to search.
+	 */
+	public PathFinder(DependencyGraph graph) {
+		this(graph, DEFAULT_MAX_VISITED, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Construct the finder.
+	 *
+	 * @param graph          The graph to search, whose reverse graph is built if it has not been already.
+	 * @param maxVisited     The most nodes each search may visit, in both directions together.
+	 * @param timeoutMillis  The time allowed for each query.
+	 */
+	public PathFinder(DependencyGraph graph, int maxVisited, long timeoutMillis) {
+		if (maxVisited < 2) {
+			throw new IllegalArgumentException("Max visited must be at least 2: " + maxVisited);
+		}
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Timeout must be positive: " + timeoutMillis);
+		}
+		mGraph = graph;
+		mReverse = graph.reverse();
+		mMaxVisited = maxVisited;
+		mTimeoutNanos = timeoutMillis * 1000 * 1000;
+	}
+
+	/**
+	 * Returns a shortest path from the node to the descendant.
+	 *
+	 * @param from  The node.
+	 * @param to    The descendant, which may be the node itself.
+	 * @return      The nodes of the path, starting with from and ending with to, or null if there is none.
+	 * @throws SearchLimitException if the search visits too many nodes or takes too long.
+	 */
+	public int[] shortestPath(int from, int to) {
+		return search(from, to, EMPTY, EMPTY, System.nanoTime() + mTimeoutNanos);
+	}
+
+	/**
+	 * Returns the shortest simple paths from the node to the descendant, shortest first.
+	 *
+	 * @param from   The node.
+	 * @param to     The descendant, which may be the node itself.
+	 * @param count  The most paths to return.
+	 * @return       The paths, each starting with from and ending with to, empty if there are none.
+	 * @throws SearchLimitException if a search visits too many nodes or the query takes too long.
+	 */
+	public List<int[]> shortestPaths(int from, int to, int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Path count must be positive: " + count);
+		}
+		long deadline = System.nanoTime() + mTimeoutNanos;
+		List<int[]> paths = new ArrayList<>();
+		int[] first = search(from, to, EMPTY, EMPTY, deadline);
+		if (null == first) {
+			return paths;
+		}
+		paths.add(first);
+		List<int[]> candidates = new ArrayList<>();
+		while (paths.size() < count) {
+			int[] previous = paths.get(paths.size() - 1);
+			// Leave the previous path at each of its nodes in turn.
+			for (int spur = 0; spur < previous.length - 1; spur++) {
+				// Block the edges out of the spur node taken by the paths with the same prefix.
+				int[] blockedNext = new int[paths.size()];
+				int blockedCount = 0;
+				for (int[] path : paths) {
+					if (path.length > spur + 1 && prefixEquals(path, previous, spur + 1)) {
+						blockedNext[blockedCount++] = path[spur + 1];
+					}
+				}
+				// Block the prefix before the spur node, so the paths stay simple.
+				int[] blockedNodes = new int[spur];
+				int nodeCount = 0;
+				for (int i = 0; i < spur; i++) {
+					if (previous[i] != to) {
+						blockedNodes[nodeCount++] = previous[i];
+					}
+				}
+				int[] spurPath = search(previous[spur], to, Arrays.copyOf(blockedNodes, nodeCount),
+						Arrays.copyOf(blockedNext, blockedCount), deadline);
+				if (null != spurPath) {
+					int[] path = new int[spur + spurPath.length];
+					System.arraycopy(previous, 0, path, 0, spur);
+					System.arraycopy(spurPath, 0, path, spur, spurPath.length);
+					if (!containsPath(paths, path) && !containsPath(candidates, path)) {
+						candidates.add(path);
+					}
+				}
+			}
+			if (candidates.isEmpty()) {
+				break;
+			}
+			// Take the shortest candidate, the first found of equal ones.
+			int shortest = 0;
+			for (int i = 1; i < candidates.size(); i++) {
+				if (candidates.get(i).length < candidates.get(shortest).length) {
+					shortest = i;
+				}
+			}
+			paths.add(candidates.remove(shortest));
+		}
+		return paths;
+	}
+
+	/**
+	 * Search forward from the node and backward from the descendant until the searches meet.
+	 *
+	 * @param blockedNodes  The nodes the path may not go through.
+	 * @param blockedNext   The nodes the path may not go to straight from the first node.
+	 * @return              The nodes of a shortest path, or null if there is none.
+	 */
+	private int[] search(int from, int to, int[] blockedNodes, int[] blockedNext, long deadline) {
+		VisitMap forward = new VisitMap();
+		VisitMap backward = new VisitMap();
+		for (int node : blockedNodes) {
+			forward.block(node);
+			backward.block(node);
+		}
+		forward.visit(from, VisitMap.NONE, 0);
+		backward.visit(to, VisitMap.NONE, 0);
+		int[] forwardFrontier = { from };
+		int forwardSize = 1;
+		int forwardDepth = 0;
+		int[] backwardFrontier = { to };
+		int backwardSize = 1;
+		int backwardDepth = 0;
+		// The shortest path found so far.
+		Meeting best = new Meeting();
+		int expanded = 0;
+
+		while (forwardSize > 0 && backwardSize > 0 && best.mLength > forwardDepth + backwardDepth + 1) {
+			boolean isForward = forwardSize <= backwardSize;
+			DependencyGraph graph = isForward ? mGraph : mReverse;
+			VisitMap near = isForward ? forward : backward;
+			VisitMap far = isForward ? backward : forward;
+			int[] frontier = isForward ? forwardFrontier : backwardFrontier;
+			int size = isForward ? forwardSize : backwardSize;
+			int depth = isForward ? forwardDepth : backwardDepth;
+			int[] targets = graph.targets();
+
+			int[] next = new int[Math.max(16, size)];
+			int nextSize = 0;
+			for (int f = 0; f < size; f++) {
+				int node = frontier[f];
+				if ((++expanded % CHECK_INTERVAL) == 0 && System.nanoTime() > deadline) {
+					throw new SearchLimitException("Path search ran out of time after visiting "
+							+ (forward.size() + backward.size()) + " keys");
+				}
+				for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+					int other = targets[i];
+					// The edge from parent to child, in the direction of the graph.
+					int parent = isForward ? node : other;
+					int child = isForward ? other : node;
+					if (parent == from && blockedNext.length > 0 && contains(blockedNext, child)) {
+						continue;
+					}
+					int farDepth = far.depth(other);
+					if (farDepth >= 0 && depth + 1 + farDepth < best.mLength) {
+						best.mLength = depth + 1 + farDepth;
+						best.mFrom = parent;
+						best.mTo = child;
+					}
+					if (near.depth(other) == VisitMap.ABSENT) {
+						near.visit(other, node, depth + 1);
+						if (forward.size() + backward.size() > mMaxVisited) {
+							throw new SearchLimitException("Path search visited more than " + mMaxVisited + " keys");
+						}
+						if (nextSize == next.length) {
+							next = Arrays.copyOf(next, nextSize * 2);
+						}
+						next[nextSize++] = other;
+					}
+				}
+			}
+
+			if (isForward) {
+				forwardFrontier = next;
+				forwardSize = nextSize;
+				forwardDepth++;
+			} else {
+				backwardFrontier = next;
+				backwardSize = nextSize;
+				backwardDepth++;
+			}
+		}
+
+		if (best.mLength == Integer.MAX_VALUE) {
+			return null;
+		}
+		int[] path = new int[best.mLength + 1];
+		int i = forward.depth(best.mFrom);
+		for (int node = best.mFrom; node != VisitMap.NONE; node = forward.link(node)) {
+			path[i--] = node;
+		}
+		i = forward.depth(best.mFrom) + 1;
+		for (int node = best.mTo; node != VisitMap.NONE; node = backward.link(node)) {
+			path[i++] = node;
+		}
+		return path;
+	}
+
+	private static boolean contains(int[] nodes, int node) {
+		for (int n : nodes) {
+			if (n == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean prefixEquals(int[] path, int[] other, int length) {
+		for (int i = 0; i < length; i++) {
+			if (path[i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean containsPath(List<int[]> paths, int[] path) {
+		for (int[] p : paths) {
+			if (Arrays.equals(p, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The length of the shortest path found by a search and the edge where its two halves join.
+	 */
+	private static class Meeting {
+		int mLength = Integer.MAX_VALUE;
+		int mFrom = VisitMap.NONE;
+		int mTo = VisitMap.NONE;
+	}
+
+	/**
+	 * An open addressing hash table of the nodes one direction of a search has visited, holding the depth of
+	 * each node and the node it was reached from, which is its parent going forward and its child going backward.
+	 */
+	private static class VisitMap {
+		static final int NONE = -1;
+		// The depth of a node that has not been visited, and of a node that may not be visited.
+		static final int ABSENT = -1;
+		static final int BLOCKED = -2;
+
+		private int[] mNodes = new int[64];
+		private int[] mLinks = new int[64];
+		private int[] mDepths = new int[64];
+		private int mSize = 0;
+
+		VisitMap() {
+			Arrays.fill(mNodes, NONE);
+		}
+
+		int size() {
+			return mSize;
+		}
+
+		/**
+		 * Returns the depth of the node, ABSENT if it has not been visited or BLOCKED.
+		 */
+		int depth(int node) {
+			int slot = find(node);
+			return mNodes[slot] == NONE ? ABSENT : mDepths[slot];
+		}
+
+		/**
+		 * Returns the node the visited node was reached from, NONE for the first node.
+		 */
+		int link(int node) {
+			return mLinks[find(node)];
+		}
+
+		void visit(int node, int link, int depth) {
+			int slot = find(node);
+			if (mNodes[slot] == NONE) {
+				mSize++;
+			}
+			mNodes[slot] = node;
+			mLinks[slot] = link;
+			mDepths[slot] = depth;
+			if (mSize * 2 > mNodes.length) {
+				rehash();
+			}
+		}
+
+		void block(int node) {
+			visit(node, NONE, BLOCKED);
+		}
+
+		/**
+		 * Returns the slot holding the node, or the empty slot it belongs in.
+		 */
+		private int find(int node) {
+			int mask = mNodes.length - 1;
+			int slot = mix(node) & mask;
+			while (mNodes[slot] != NONE && mNodes[slot] != node) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * Double the table and reinsert the visited nodes.
+		 */
+		private void rehash() {
+			int[] nodes = mNodes;
+			int[] links = mLinks;
+			int[] depths = mDepths;
+			mNodes = new int[nodes.length * 2];
+			mLinks = new int[nodes.length * 2];
+			mDepths = new int[nodes.length * 2];
+			Arrays.fill(mNodes, NONE);
+			for (int i = 0; i < nodes.length; i++) {
+				if (nodes[i] != NONE) {
+					int slot = find(nodes[i]);
+					mNodes[slot] = nodes[i];
+					mLinks[slot] = links[i];
+					mDepths[slot] = depths[i];
+				}
+			}
+		}
+
+		private static int mix(int node) {
+			int hash = node * 0x9e3779b9;
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
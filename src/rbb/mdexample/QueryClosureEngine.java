@@ -0,0 +1,110 @@
+/**
+ * The QueryClosureEngine calculates the part of the closure a ClosureQuery asks for.
+ *
+ * Only the query's root nodes are searched, breadth first so the search stops at the maximum depth.
+ * A node the query's filters reject is neither listed nor searched through, and each key is only tested
+ * the first time it is reached, so the parts of the graph the query prunes are never expanded or stored.
+ * The descendants of every other node are left empty.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+public class QueryClosureEngine implements ClosureEngine {
+
+	// The filter results cached in mAccepted.
+	private static final byte UNTESTED = 0;
+	private static final byte ACCEPTED = 1;
+	private static final byte REJECTED = 2;
+
+	private final ClosureQuery mQuery;
+
+	/**
+	 * Construct the engine.
+	 *
+	 * @param query  The query to answer.
+	 */
+	public QueryClosureEngine(ClosureQuery query) {
+		mQuery = query;
+	}
+
+	@Override
+	public Closure calculate(DependencyGraph graph) {
+		return calculate(graph, roots(graph));
+	}
+
+	/**
+	 * Returns the parent nodes whose lines the query asks for, that pass its filters.
+	 */
+	BitSet roots(DependencyGraph graph) {
+		KeyTable keys = graph.getKeys();
+		BitSet roots = new BitSet(graph.nodeCount());
+		Collection<String> rootKeys = mQuery.getRoots();
+		if (null == rootKeys) {
+			for (int node = 0; node < graph.nodeCount(); node++) {
+				if (graph.isParent(node) && mQuery.accepts(keys.getKey(node))) {
+					roots.set(node);
+				}
+			}
+		} else {
+			for (String key : rootKeys) {
+				int node = keys.find(key);
+				if (node >= 0 && node < graph.nodeCount() && graph.isParent(node) && mQuery.accepts(key)) {
+					roots.set(node);
+				}
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * Returns the closure of the roots, searched to the query's maximum depth.
+	 */
+	Closure calculate(DependencyGraph graph, BitSet roots) {
+		int nodeCount = graph.nodeCount();
+		int[] targets = graph.targets();
+		KeyTable keys = graph.getKeys();
+		int maxDepth = mQuery.getMaxDepth();
+
+		int[][] descendants = new int[nodeCount][];
+		byte[] accepted = new byte[nodeCount];
+		// mark[n] == root + 1 when n has already been reached from root.
+		int[] mark = new int[nodeCount];
+		// The root, then its descendants in the order they are reached, which may include the root again.
+		int[] queue = new int[nodeCount + 1];
+
+		for (int root = roots.nextSetBit(0); root >= 0; root = roots.nextSetBit(root + 1)) {
+			int stamp = root + 1;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = root;
+			for (int depth = 1; depth <= maxDepth && head < tail; depth++) {
+				int levelEnd = tail;
+				while (head < levelEnd) {
+					int node = queue[head++];
+					for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+						int child = targets[i];
+						if (mark[child] != stamp) {
+							mark[child] = stamp;
+							if (accepted[child] == UNTESTED) {
+								accepted[child] = mQuery.accepts(keys.getKey(child)) ? ACCEPTED : REJECTED;
+							}
+							if (accepted[child] == ACCEPTED) {
+								queue[tail++] = child;
+							}
+						}
+					}
+				}
+			}
+
+			int[] closure = Arrays.copyOfRange(queue, 1, tail);
+			Arrays.sort(closure);
+			descendants[root] = closure;
+		}
+		return new IdListClosure(descendants);
+	}
+}
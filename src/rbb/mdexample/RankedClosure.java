@@ -0,0 +1,75 @@
+/**
+ * A RankedClosure is a closure calculated over the ranks of the keys instead of their ids, where the rank of a
+ * node is its position in key order.  The descendants of the ranked closure come back in rank order, which is
+ * key order, so the ClosureWriter can write each line straight from them without sorting.
+ *
+ * The Closure methods take and return node ids like any other closure, mapping them to and from ranks.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+public class RankedClosure implements Closure {
+
+	private final Closure mRanked;
+	private final int[] mOrder;   // The node id of each rank.
+	private final int[] mRank;    // The rank of each node id.
+
+	/**
+	 * Construct the closure.  The arrays are used directly, not copied.
+	 *
+	 * @param ranked  The closure of the graph relabeled by rank, whose descendants() are in ascending order.
+	 * @param order   The node id of each rank.
+	 * @param rank    The rank of each node id.
+	 */
+	RankedClosure(Closure ranked, int[] order, int[] rank) {
+		mRanked = ranked;
+		mOrder = order;
+		mRank = rank;
+	}
+
+	/**
+	 * Returns the node ids in key order, which must not be changed.
+	 */
+	int[] order() {
+		return mOrder;
+	}
+
+	/**
+	 * Returns the rank of each node id, which must not be changed.
+	 */
+	int[] rank() {
+		return mRank;
+	}
+
+	/**
+	 * Returns the ranks of the descendants of the node with the rank, in ascending order.
+	 */
+	int[] rankedDescendants(int rank) {
+		return mRanked.descendants(rank);
+	}
+
+	@Override
+	public int size(int node) {
+		return mRanked.size(mRank[node]);
+	}
+
+	@Override
+	public int[] descendants(int node) {
+		int[] descendants = mRanked.descendants(mRank[node]);
+		for (int i = 0; i < descendants.length; i++) {
+			descendants[i] = mOrder[descendants[i]];
+		}
+		return descendants;
+	}
+
+	@Override
+	public boolean contains(int node, int descendant) {
+		return mRanked.contains(mRank[node], mRank[descendant]);
+	}
+
+	@Override
+	public long memoryBytes() {
+		return mRanked.memoryBytes() + Integer.BYTES * ((long) mOrder.length + mRank.length);
+	}
+}
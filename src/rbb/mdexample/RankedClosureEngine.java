@@ -0,0 +1,68 @@
+/**
+ * The RankedClosureEngine sorts the keys once, relabels the graph so each node's id is its rank in key order,
+ * and calculates the closure of the relabeled graph with another engine.
+ *
+ * Nothing is kept in order while the closure is calculated.  Since the ranks follow the keys, a bitset or
+ * sorted id list of ranks is already in key order, so the output is written by walking each one from
+ * the start instead of mapping its ids to ranks and sorting them for every line.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class RankedClosureEngine implements ClosureEngine {
+
+	private final ClosureEngine mEngine;
+
+	/**
+	 * Construct the engine.
+	 *
+	 * @param engine  The engine that calculates the closure of the relabeled graph.  The descendants of the
+	 *                closures it returns must be in ascending order, as they are for id lists and bitsets.
+	 */
+	public RankedClosureEngine(ClosureEngine engine) {
+		mEngine = engine;
+	}
+
+	@Override
+	public Closure calculate(DependencyGraph graph) {
+		int nodeCount = graph.nodeCount();
+		String[] keys = graph.getKeys().getKeys();
+		int[] order = KeyTable.sortedIds(keys.length == nodeCount ? keys : Arrays.copyOf(keys, nodeCount));
+		int[] rank = new int[nodeCount];
+		for (int r = 0; r < nodeCount; r++) {
+			rank[order[r]] = r;
+		}
+		return new RankedClosure(mEngine.calculate(relabel(graph, order, rank)), order, rank);
+	}
+
+	/**
+	 * Returns the graph with each node id replaced by its rank.  The relabeled graph is only used to calculate
+	 * the closure, so it keeps the original key table even though its ids no longer match the keys.
+	 */
+	static DependencyGraph relabel(DependencyGraph graph, int[] order, int[] rank) {
+		int nodeCount = graph.nodeCount();
+		int[] targets = graph.targets();
+		int[] offsets = new int[nodeCount + 1];
+		int[] ranked = new int[graph.edgeCount()];
+		BitSet parents = new BitSet(nodeCount);
+		int edge = 0;
+		for (int r = 0; r < nodeCount; r++) {
+			int node = order[r];
+			offsets[r] = edge;
+			for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+				ranked[edge++] = rank[targets[i]];
+			}
+			// The children are sorted by id, and must be sorted by rank instead.
+			Arrays.sort(ranked, offsets[r], edge);
+			if (graph.isParent(node)) {
+				parents.set(r);
+			}
+		}
+		offsets[nodeCount] = edge;
+		return new DependencyGraph(graph.getKeys(), offsets, ranked, parents);
+	}
+}
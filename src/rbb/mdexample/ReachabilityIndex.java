@@ -0,0 +1,343 @@
+/**
+ * The ReachabilityIndex answers whether one node depends on another without storing the descendants of
+ * every node, which can take memory proportional to the square of the number of nodes.
+ *
+ * The graph is condensed so every circular reference becomes one component of an acyclic graph.  Each
+ * component is then labeled in O(nodes + edges) time and memory:
+ * The component ids are in reverse topological order, so a component can only reach lower ids.
+ * The height is the longest path down to a component without successors, so a component can only reach
+ *   lower heights.
+ * Several depth first traversals, each visiting the roots and successors in a different order, give each
+ *   component the interval [lowest post order number below it, its own post order number].  A component
+ *   can only reach the components whose intervals are inside its own for every traversal.
+ * Each traversal also gives each component the interval of its subtree in that traversal's spanning tree,
+ *   and a component always reaches the components in its subtrees.
+ * Up to 64 landmark components, the ones most likely to be on the paths between others, get one bit each.  Every
+ *   component records the landmarks it reaches and the landmarks that reach it in two longs.  A component
+ *   reaches another if it reaches a landmark that reaches the other, and it can only reach another if it
+ *   reaches all the landmarks the other reaches.
+ *
+ * Most queries are answered by the labels alone.  The rest fall back to a search of the components that
+ * is pruned by the same labels, so only the components that may still lead to the target are visited, and
+ * which stops as soon as it reaches a component with the target in one of its subtrees.
+ *
+ * The labels are read only, so queries answered by them can run on any number of threads.  The fallback
+ * search uses shared scratch space and is synchronized.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+
+public class ReachabilityIndex {
+
+	// The number of traversals labeled.  Each one costs 4 ints per component and makes both cuts more likely.
+	public static final int DEFAULT_TRAVERSALS = 4;
+
+	private final Condensation mCondensation;
+	private final int[] mHeight;
+	// The labels of each traversal, indexed by traversal then component.
+	private final int[][] mPost;       // Post order number of each component.
+	private final int[][] mLow;        // The lowest post order number of the components below it.
+	private final int[][] mTreeStart;  // Pre order number of each component in the spanning tree.
+	private final int[][] mTreeEnd;    // The pre order number after its subtree.
+	private final long[] mLandmarksBelow;  // The landmarks each component is or reaches.
+	private final long[] mLandmarksAbove;  // The landmarks each component is or is reached by.
+
+	// Scratch space for the fallback search, marked when mMark[component] == mStamp.
+	private final int[] mMark;
+	private int mStamp = 0;
+	private int[] mStack = new int[16];
+	private long mSearches = 0;
+
+	/**
+	 * Build the index for the graph.
+	 *
+	 * @param graph  The graph to index.
+	 */
+	public ReachabilityIndex(DependencyGraph graph) {
+		this(new Condensation(graph), DEFAULT_TRAVERSALS);
+	}
+
+	/**
+	 * Build the index from the condensation of a graph.
+	 *
+	 * @param condensation  The condensed graph.
+	 * @param traversals    The number of traversals to label, at least 1.
+	 */
+	public ReachabilityIndex(Condensation condensation, int traversals) {
+		if (traversals < 1) {
+			throw new IllegalArgumentException("Traversals must be at least 1: " + traversals);
+		}
+		mCondensation = condensation;
+		int count = condensation.componentCount();
+		int[] successors = condensation.successors();
+
+		// Successors have lower ids, so they all have their heights before their parents.
+		mHeight = new int[count];
+		for (int c = 0; c < count; c++) {
+			for (int s = condensation.successorStart(c); s < condensation.successorEnd(c); s++) {
+				mHeight[c] = Math.max(mHeight[c], mHeight[successors[s]] + 1);
+			}
+		}
+
+		mPost = new int[traversals][count];
+		mLow = new int[traversals][count];
+		mTreeStart = new int[traversals][count];
+		mTreeEnd = new int[traversals][count];
+		for (int t = 0; t < traversals; t++) {
+			label(t, mPost[t], mLow[t], mTreeStart[t], mTreeEnd[t]);
+		}
+
+		// Successors have lower ids, so the landmarks below are complete going up the ids and those above going down.
+		mLandmarksBelow = new long[count];
+		mLandmarksAbove = new long[count];
+		int[] landmarks = chooseLandmarks();
+		for (int i = 0; i < landmarks.length; i++) {
+			mLandmarksBelow[landmarks[i]] |= 1L << i;
+			mLandmarksAbove[landmarks[i]] |= 1L << i;
+		}
+		for (int c = 0; c < count; c++) {
+			for (int s = condensation.successorStart(c); s < condensation.successorEnd(c); s++) {
+				mLandmarksBelow[c] |= mLandmarksBelow[successors[s]];
+			}
+		}
+		for (int c = count - 1; c >= 0; c--) {
+			for (int s = condensation.successorStart(c); s < condensation.successorEnd(c); s++) {
+				mLandmarksAbove[successors[s]] |= mLandmarksAbove[c];
+			}
+		}
+
+		mMark = new int[count];
+	}
+
+	/**
+	 * Returns true if dependency is a descendant of node: node depends on it directly or indirectly.
+	 * A node only depends on itself if it is part of a circular reference.
+	 *
+	 * @param node        The id of the node.
+	 * @param dependency  The id of the possible descendant.
+	 */
+	public boolean dependsOn(int node, int dependency) {
+		int from = mCondensation.component(node);
+		int to = mCondensation.component(dependency);
+		if (from == to) {
+			return mCondensation.isCyclic(from);
+		}
+		if (!mayReach(from, to)) {
+			return false;
+		}
+		if (viaLandmark(from, to) || inSubtree(from, to)) {
+			return true;
+		}
+		return search(from, to);
+	}
+
+	/**
+	 * Returns the number of queries the labels could not answer alone.
+	 * @return
+	 */
+	public synchronized long getSearches() {
+		return mSearches;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the index and its condensation, in bytes.
+	 * @return
+	 */
+	public long memoryBytes() {
+		Condensation c = mCondensation;
+		long ints = (long) c.getGraph().nodeCount() * 2 + c.componentCount() * (8L + 4L * mPost.length)
+				+ c.successors().length;
+		return ints * Integer.BYTES + c.componentCount();
+	}
+
+	/**
+	 * Returns false if the labels show component from cannot reach component to.
+	 */
+	private boolean mayReach(int from, int to) {
+		if (to >= from || mHeight[to] >= mHeight[from]
+				|| (mLandmarksBelow[to] & ~mLandmarksBelow[from]) != 0
+				|| (mLandmarksAbove[from] & ~mLandmarksAbove[to]) != 0) {
+			return false;
+		}
+		for (int t = 0; t < mPost.length; t++) {
+			if (mLow[t][to] < mLow[t][from] || mPost[t][to] > mPost[t][from]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if component from reaches a landmark that reaches component to.
+	 */
+	private boolean viaLandmark(int from, int to) {
+		return (mLandmarksBelow[from] & mLandmarksAbove[to]) != 0;
+	}
+
+	/**
+	 * Returns true if component to is in the subtree of component from in any of the spanning trees.
+	 */
+	private boolean inSubtree(int from, int to) {
+		for (int t = 0; t < mTreeStart.length; t++) {
+			if (mTreeStart[t][from] <= mTreeStart[t][to] && mTreeStart[t][to] < mTreeEnd[t][from]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Search down from component from for component to, only following successors that may still reach it.
+	 */
+	private synchronized boolean search(int from, int to) {
+		mSearches++;
+		if (mStamp == Integer.MAX_VALUE) {
+			Arrays.fill(mMark, 0);
+			mStamp = 0;
+		}
+		int stamp = ++mStamp;
+		int[] successors = mCondensation.successors();
+		int top = 0;
+		mStack[top++] = from;
+		while (top > 0) {
+			int component = mStack[--top];
+			for (int s = mCondensation.successorStart(component); s < mCondensation.successorEnd(component); s++) {
+				int successor = successors[s];
+				if (successor == to) {
+					return true;
+				}
+				if (mMark[successor] != stamp && mayReach(successor, to)) {
+					if (viaLandmark(successor, to) || inSubtree(successor, to)) {
+						return true;
+					}
+					mMark[successor] = stamp;
+					if (top == mStack.length) {
+						mStack = Arrays.copyOf(mStack, top * 2);
+					}
+					mStack[top++] = successor;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Number the components with an iterative depth first traversal of the condensed graph from each
+	 * component without parents, recording the post order and spanning tree intervals.
+	 *
+	 * Traversal 0 visits the roots and successors in id order and traversal 1 in reverse order.  The others
+	 * start each component's successors at a different, scrambled position so their trees differ too.
+	 *
+	 * @param traversal  The number of the traversal, which sets the order of the visits.
+	 * @param post       Filled with the post order number of each component.
+	 * @param low        Filled with the lowest post order number below each component.
+	 * @param treeStart  Filled with the pre order number of each component.
+	 * @param treeEnd    Filled with the pre order number after each component's subtree.
+	 */
+	private void label(int traversal, int[] post, int[] low, int[] treeStart, int[] treeEnd) {
+		boolean reversed = traversal % 2 == 1;
+		Condensation condensation = mCondensation;
+		int count = condensation.componentCount();
+		int[] successors = condensation.successors();
+		boolean[] hasParent = new boolean[count];
+		for (int s : successors) {
+			hasParent[s] = true;
+		}
+
+		boolean[] visited = new boolean[count];
+		int[] stack = new int[count];
+		int[] next = new int[count];
+		int postCount = 0;
+		int preCount = 0;
+		for (int r = 0; r < count; r++) {
+			int root = reversed ? count - 1 - r : r;
+			if (hasParent[root]) {
+				continue;
+			}
+			int top = 0;
+			visited[root] = true;
+			treeStart[root] = preCount++;
+			stack[top] = root;
+			next[top++] = 0;
+			low[root] = Integer.MAX_VALUE;
+			while (top > 0) {
+				int component = stack[top - 1];
+				int start = condensation.successorStart(component);
+				int degree = condensation.successorEnd(component) - start;
+				int i = next[top - 1];
+				if (i < degree) {
+					next[top - 1] = i + 1;
+					int position = traversal < 2 ? i : (i + scramble(component, traversal)) % degree;
+					int successor = successors[reversed ? start + degree - 1 - position : start + position];
+					if (!visited[successor]) {
+						visited[successor] = true;
+						treeStart[successor] = preCount++;
+						low[successor] = Integer.MAX_VALUE;
+						stack[top] = successor;
+						next[top++] = 0;
+					} else {
+						// The graph is acyclic, so a visited successor is already finished.
+						low[component] = Math.min(low[component], low[successor]);
+					}
+				} else {
+					top--;
+					post[component] = postCount++;
+					low[component] = Math.min(low[component], post[component]);
+					treeEnd[component] = preCount;
+					if (top > 0) {
+						int parent = stack[top - 1];
+						low[parent] = Math.min(low[parent], low[component]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the components with the most parents and successors and the longest paths above and below
+	 * them, which are the most likely to be on the paths between other components.
+	 */
+	private int[] chooseLandmarks() {
+		Condensation condensation = mCondensation;
+		int count = condensation.componentCount();
+		int[] successors = condensation.successors();
+		int[] parents = new int[count];
+		for (int s : successors) {
+			parents[s]++;
+		}
+		// The depth is the longest path down from a component without parents.
+		int[] depth = new int[count];
+		for (int c = count - 1; c >= 0; c--) {
+			for (int s = condensation.successorStart(c); s < condensation.successorEnd(c); s++) {
+				depth[successors[s]] = Math.max(depth[successors[s]], depth[c] + 1);
+			}
+		}
+		// Sort the scores with the component id in the low half so the best are last.
+		long[] scores = new long[count];
+		for (int c = 0; c < count; c++) {
+			long score = (long) (parents[c] + 1) * (condensation.successorEnd(c) - condensation.successorStart(c) + 1)
+					* (mHeight[c] + 1) * (depth[c] + 1);
+			scores[c] = (Math.min(score, Integer.MAX_VALUE) << 32) | c;
+		}
+		Arrays.sort(scores);
+		int[] landmarks = new int[Math.min(Long.SIZE, count)];
+		for (int i = 0; i < landmarks.length; i++) {
+			landmarks[i] = (int) scores[count - 1 - i];
+		}
+		return landmarks;
+	}
+
+	/**
+	 * Returns a well mixed, non negative number for the component and traversal.
+	 */
+	private static int scramble(int component, int traversal) {
+		int h = component * 0x9e3779b9 + traversal * 0x85ebca6b;
+		h ^= h >>> 16;
+		h *= 0x7feb352d;
+		h ^= h >>> 15;
+		return h & Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ * An Exception reporting that a search gave up before it finished, because it visited as many keys
+ * as it is allowed to or ran out of time.
+ *
+ * @author reed
+ *
+ */
+package rbb.mdexample;
+
+@SuppressWarnings("serial")
+public class SearchLimitException extends RuntimeException {
+
+	SearchLimitException(String message) {
+		super(message);
+	}
+
+}
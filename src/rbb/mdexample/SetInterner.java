@@ -0,0 +1,151 @@
+/**
+ * The SetInterner hash-conses descendant sets, so every distinct set is held by one array that all the
+ * nodes with that set share.
+ *
+ * Sets are int[] id lists or long[] bitsets, compared by content.  intern() returns the array already
+ * held for an equal set, leaving the new one for the garbage collector, or keeps and returns the new one.
+ * The interned arrays must not be modified afterwards.
+ *
+ * mSlots is an open addressing hash table of the distinct arrays, null marks an empty slot, and mHashes
+ * holds the content hash of the array in each slot so most mismatches are found without comparing arrays.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class SetInterner {
+
+	private static final int INITIAL_SLOTS = 1024;
+	// The approximate size of an array header and of a reference on a 64 bit JVM with compressed references.
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+
+	private Object[] mSlots = new Object[INITIAL_SLOTS];
+	private int[] mHashes = new int[INITIAL_SLOTS];
+	private int mSize = 0;
+	private long mDuplicates = 0;
+
+	/**
+	 * Returns the shared array equal to the set, or the set itself if it is the first of its contents.
+	 *
+	 * @param set  The id list, null and empty lists are returned as they are.
+	 * @return     The shared array.
+	 */
+	public int[] intern(int[] set) {
+		if (null == set || set.length == 0) {
+			return set;
+		}
+		return (int[]) intern(set, Arrays.hashCode(set));
+	}
+
+	/**
+	 * Returns the shared array equal to the set, or the set itself if it is the first of its contents.
+	 *
+	 * @param set  The bitset, null is returned as it is.
+	 * @return     The shared array.
+	 */
+	public long[] intern(long[] set) {
+		if (null == set) {
+			return set;
+		}
+		return (long[]) intern(set, Arrays.hashCode(set));
+	}
+
+	/**
+	 * Returns the number of distinct sets held.
+	 * @return
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns the number of sets that were replaced by an equal set already held.
+	 * @return
+	 */
+	public long getDuplicates() {
+		return mDuplicates;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by an array of int[] or long[] sets, counting each shared
+	 * set only once.
+	 *
+	 * @param sets  The sets indexed by node, may contain nulls.
+	 * @return      The estimate in bytes.
+	 */
+	public static long memoryBytes(Object[] sets) {
+		Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+		long bytes = ARRAY_HEADER + (long) REFERENCE * sets.length;
+		for (Object set : sets) {
+			if (null != set && counted.add(set)) {
+				bytes += ARRAY_HEADER + (set instanceof int[] ? Integer.BYTES * (long) ((int[]) set).length
+						: Long.BYTES * (long) ((long[]) set).length);
+			}
+		}
+		return bytes;
+	}
+
+	private Object intern(Object set, int hash) {
+		int mask = mSlots.length - 1;
+		int slot = mix(hash) & mask;
+		while (null != mSlots[slot]) {
+			if (mHashes[slot] == hash && equal(mSlots[slot], set)) {
+				mDuplicates++;
+				return mSlots[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		mSlots[slot] = set;
+		mHashes[slot] = hash;
+		mSize++;
+		if (mSize * 2 > mSlots.length) {
+			rehash();
+		}
+		return set;
+	}
+
+	private static boolean equal(Object held, Object set) {
+		if (held instanceof int[] && set instanceof int[]) {
+			return Arrays.equals((int[]) held, (int[]) set);
+		}
+		if (held instanceof long[] && set instanceof long[]) {
+			return Arrays.equals((long[]) held, (long[]) set);
+		}
+		return false;
+	}
+
+	/**
+	 * Double the table and reinsert the held arrays.
+	 */
+	private void rehash() {
+		Object[] slots = new Object[mSlots.length * 2];
+		int[] hashes = new int[slots.length];
+		int mask = slots.length - 1;
+		for (int i = 0; i < mSlots.length; i++) {
+			if (null != mSlots[i]) {
+				int slot = mix(mHashes[i]) & mask;
+				while (null != slots[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = mSlots[i];
+				hashes[slot] = mHashes[i];
+			}
+		}
+		mSlots = slots;
+		mHashes = hashes;
+	}
+
+	/**
+	 * Spread the bits of the content hash, which for small ids are mostly in the low bits.
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * SharedIdLists holds an int[] list of ids for each node, in chunks of CHUNK_SIZE nodes, so that a copy
+ * can be taken without copying a reference for every node.
+ *
+ * share() copies the array of chunks only and marks every chunk as shared by both copies.  The first
+ * set() into a shared chunk afterwards copies that chunk alone, so a copy costs the number of chunks and
+ * each update after it at most one chunk.  The lists themselves are never modified, only replaced, so
+ * they are shared as they are.
+ *
+ * The copies are not thread safe, but a copy that is no longer set can be read by any number of threads
+ * once it has been safely published, however the other copies are changed.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Arrays;
+
+class SharedIdLists {
+
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private int[][][] mChunks;
+	private boolean[] mShared;
+	private int mSize;
+
+	/**
+	 * Construct the lists without any nodes.
+	 */
+	SharedIdLists() {
+		mChunks = new int[0][][];
+		mShared = new boolean[0];
+	}
+
+	private SharedIdLists(int[][][] chunks, boolean[] shared, int size) {
+		mChunks = chunks;
+		mShared = shared;
+		mSize = size;
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 * @return
+	 */
+	int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns the list of the node, which must not be modified.
+	 */
+	int[] get(int node) {
+		return mChunks[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * Replace the list of the node.  The list must not be modified afterwards.
+	 */
+	void set(int node, int[] ids) {
+		int chunk = node >>> CHUNK_BITS;
+		if (mShared[chunk]) {
+			mChunks[chunk] = mChunks[chunk].clone();
+			mShared[chunk] = false;
+		}
+		mChunks[chunk][node & CHUNK_MASK] = ids;
+	}
+
+	/**
+	 * Grow to hold the nodes, the new ones with null lists.  The lists are never shrunk.
+	 */
+	void resize(int size) {
+		if (size <= mSize) {
+			return;
+		}
+		int allocated = (mSize + CHUNK_MASK) >>> CHUNK_BITS;
+		int chunks = (size + CHUNK_MASK) >>> CHUNK_BITS;
+		if (chunks > mChunks.length) {
+			mChunks = Arrays.copyOf(mChunks, Math.max(chunks, mChunks.length * 2));
+			mShared = Arrays.copyOf(mShared, mChunks.length);
+		}
+		for (int c = allocated; c < chunks; c++) {
+			mChunks[c] = new int[CHUNK_SIZE][];
+		}
+		mSize = size;
+	}
+
+	/**
+	 * Returns a copy of the lists that later changes to either copy do not affect.
+	 * @return
+	 */
+	SharedIdLists share() {
+		Arrays.fill(mShared, true);
+		boolean[] shared = new boolean[mShared.length];
+		Arrays.fill(shared, true);
+		return new SharedIdLists(mChunks.clone(), shared, mSize);
+	}
+
+	/**
+	 * Returns an estimate of the memory used, counting each shared list only once and the chunks as one array.
+	 * @return
+	 */
+	long memoryBytes() {
+		int[][] lists = new int[mSize][];
+		for (int node = 0; node < mSize; node++) {
+			lists[node] = get(node);
+		}
+		return SetInterner.memoryBytes(lists);
+	}
+}
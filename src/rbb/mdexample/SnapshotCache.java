@@ -0,0 +1,280 @@
+/**
+ * The SnapshotCache keeps the calculated dependencies of input files on disk, so running again on an input
+ * that has not changed loads the result instead of calculating it.
+ *
+ * Each snapshot is a GraphFile holding the graph and closure, named by the SHA-256 hash of the input file
+ * it was made from.  evaluate() hashes the input and:
+ * HIT      loads the snapshot with the same hash, which needs no parsing and no calculate().
+ * UPDATED  loads the latest snapshot of the same input file when the input has changed since, and updates
+ *          only the dependencies that differ with DependencyEvaluator.replaceInputFile().
+ * MISS     loads and calculates the input as usual.
+ * After an update or a miss the result is saved as a new snapshot.
+ *
+ * index.properties maps the absolute path of each input file to the hash of the snapshot last loaded or saved for it.
+ * Snapshots and the index are written to temporary files and moved into place, so a run that stops part way,
+ * or another run sharing the directory, never sees a partly written file.  A snapshot that can not be loaded,
+ * such as one from an older version or one damaged on disk, is deleted and treated as a miss.
+ *
+ * Once a snapshot is saved, the least recently used snapshots are deleted until at most maxSnapshots are
+ * left and they take at most maxBytes.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+public class SnapshotCache {
+
+	public enum Lookup {
+		HIT,
+		UPDATED,
+		MISS;
+	}
+
+	public static final int DEFAULT_MAX_SNAPSHOTS = 16;
+	public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+	private static final String SNAPSHOT_SUFFIX = ".rdg";
+	private static final String INDEX_NAME = "index.properties";
+	// The most bytes of the input hashed from each mapped window.
+	private static final int HASH_WINDOW = 64 * 1024 * 1024;
+
+	private final Path mDirectory;
+	private final int mMaxSnapshots;
+	private final long mMaxBytes;
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Construct the cache with the default limits.
+	 *
+	 * @param directory  The directory holding the snapshots, created if it does not exist.
+	 * @throws IOException
+	 */
+	public SnapshotCache(Path directory) throws IOException {
+		this(directory, DEFAULT_MAX_SNAPSHOTS, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Construct the cache.
+	 *
+	 * @param directory     The directory holding the snapshots, created if it does not exist.
+	 * @param maxSnapshots  The most snapshots to keep, at least 1.
+	 * @param maxBytes      The most bytes of snapshots to keep.  A snapshot bigger than this is not kept.
+	 * @throws IOException
+	 */
+	public SnapshotCache(Path directory, int maxSnapshots, long maxBytes) throws IOException {
+		if (maxSnapshots < 1 || maxBytes < 0) {
+			throw new IllegalArgumentException("Snapshot limits not valid: " + maxSnapshots + ", " + maxBytes);
+		}
+		mDirectory = directory;
+		mMaxSnapshots = maxSnapshots;
+		mMaxBytes = maxBytes;
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * Load the input file into the evaluator and calculate its dependencies, using a snapshot when possible.
+	 * The evaluator's current input is replaced.  Its closure mode must store the closure, which the modes
+	 * that use the DependencyNodes and the STREAMING mode do not.
+	 *
+	 * @param evaluator  The evaluator to load.
+	 * @param input      The input file.
+	 * @return           How the snapshots were used.
+	 * @throws IOException
+	 */
+	public Lookup evaluate(DependencyEvaluator evaluator, Path input) throws IOException {
+		if (!evaluator.getClosureMode().storesClosure()) {
+			throw new IllegalArgumentException("The snapshot cache needs a closure mode that stores the closure: "
+					+ evaluator.getClosureMode());
+		}
+		String hash = hash(input);
+		String key = input.toAbsolutePath().normalize().toString();
+		Properties index = readIndex();
+		if (load(evaluator, hash)) {
+			LOGGER.info("Loaded snapshot " + hash + " of " + input);
+			if (!hash.equals(index.getProperty(key))) {
+				index.setProperty(key, hash);
+				writeIndex(index);
+			}
+			return Lookup.HIT;
+		}
+
+		Lookup lookup = Lookup.MISS;
+		String previous = index.getProperty(key);
+		if (null != previous && load(evaluator, previous)) {
+			// Either the loaded closure is updated, or the input replaces it to be calculated again.
+			if (evaluator.replaceInputFile(input)) {
+				LOGGER.info("Updated snapshot " + previous + " of " + input);
+				lookup = Lookup.UPDATED;
+			}
+		} else {
+			evaluator.clear();
+			evaluator.loadInputFile(input);
+		}
+		store(evaluator, hash, key);
+		return lookup;
+	}
+
+	/**
+	 * Returns the hex SHA-256 hash of the file's contents.
+	 *
+	 * @param input  The file to hash.
+	 * @return       The hash, 64 hex digits.
+	 * @throws IOException
+	 */
+	public static String hash(Path input) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256.
+			throw new IllegalStateException(e);
+		}
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += HASH_WINDOW) {
+				ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_WINDOW, size - position));
+				digest.update(window);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the snapshot file for the hash, whether or not it exists.
+	 */
+	Path snapshotPath(String hash) {
+		return mDirectory.resolve(hash + SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * Load the snapshot into the evaluator, marking it as recently used.
+	 *
+	 * @return False if there is no such snapshot or it could not be loaded, in which case it is deleted.
+	 */
+	private boolean load(DependencyEvaluator evaluator, String hash) {
+		Path snapshot = snapshotPath(hash);
+		if (!Files.exists(snapshot)) {
+			return false;
+		}
+		try {
+			evaluator.loadGraph(snapshot);
+			Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+			return true;
+		} catch (IOException e) {
+			LOGGER.warning("Deleting snapshot " + snapshot + " that could not be loaded: " + e.getMessage());
+			try {
+				Files.deleteIfExists(snapshot);
+			} catch (IOException ioe) {
+				LOGGER.warning("Could not delete snapshot " + snapshot + ": " + ioe.getMessage());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Save the evaluator's graph and closure as the snapshot of the input, then evict the old snapshots.
+	 */
+	private void store(DependencyEvaluator evaluator, String hash, String key) throws IOException {
+		Path temp = Files.createTempFile(mDirectory, hash, ".tmp");
+		try {
+			evaluator.saveGraph(temp, true);
+			move(temp, snapshotPath(hash));
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		Properties index = readIndex();
+		index.setProperty(key, hash);
+		evict(index);
+		writeIndex(index);
+	}
+
+	private void writeIndex(Properties index) throws IOException {
+		Path temp = Files.createTempFile(mDirectory, "index", ".tmp");
+		try {
+			try (OutputStream output = Files.newOutputStream(temp)) {
+				index.store(output, "The latest snapshot of each input file");
+			}
+			move(temp, mDirectory.resolve(INDEX_NAME));
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Delete the least recently used snapshots that are over the limits, and their index entries.
+	 */
+	private void evict(Properties index) throws IOException {
+		List<Path> snapshots = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(mDirectory, "*" + SNAPSHOT_SUFFIX)) {
+			for (Path file : files) {
+				snapshots.add(file);
+			}
+		}
+		// Sort the most recently used first.
+		Map<Path, FileTime> times = new HashMap<>();
+		for (Path snapshot : snapshots) {
+			times.put(snapshot, Files.getLastModifiedTime(snapshot));
+		}
+		snapshots.sort((a, b) -> times.get(b).compareTo(times.get(a)));
+
+		int kept = 0;
+		long bytes = 0;
+		for (Path snapshot : snapshots) {
+			long size = Files.size(snapshot);
+			if (kept < mMaxSnapshots && bytes + size <= mMaxBytes) {
+				kept++;
+				bytes += size;
+			} else {
+				LOGGER.info("Evicting snapshot " + snapshot);
+				Files.deleteIfExists(snapshot);
+			}
+		}
+		index.entrySet().removeIf(entry -> !Files.exists(snapshotPath((String) entry.getValue())));
+	}
+
+	private Properties readIndex() throws IOException {
+		Properties index = new Properties();
+		Path path = mDirectory.resolve(INDEX_NAME);
+		if (Files.exists(path)) {
+			try (InputStream input = Files.newInputStream(path)) {
+				index.load(input);
+			}
+		}
+		return index;
+	}
+
+	private static void move(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * The jUnit tests for the ClosureEngine implementations.
+ * 
+ * Each engine is run against the same graphs and must produce the same descendants.
+ * 
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ClosureEngineTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static ClosureEngine[] ENGINES = {
+		new TraversalClosureEngine(),
+		new BitSetClosureEngine(),
+		new ParallelClosureEngine(4),
+		new RankedClosureEngine(new BitSetClosureEngine())
+	};
+
+	/** 
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test the closure of an acyclic graph.
+	 */
+	@Test
+	public void testAcyclic() {
+		DependencyGraph graph = createGraph(Arrays.asList("A B C", "B C E", "C G", "E F", "F H"));
+		for (ClosureEngine engine : ENGINES) {
+			Closure closure = engine.calculate(graph);
+			assertDescendants(engine, graph, closure, "A", "B", "C", "E", "F", "G", "H");
+			assertDescendants(engine, graph, closure, "E", "F", "H");
+			assertDescendants(engine, graph, closure, "H");
+		}
+	}
+
+	/**
+	 * Test the closure of a graph with a circular reference, every member of the cycle reaches itself.
+	 */
+	@Test
+	public void testCircular() {
+		DependencyGraph graph = createGraph(Arrays.asList("A B", "B C", "C A D", "D E"));
+		for (ClosureEngine engine : ENGINES) {
+			Closure closure = engine.calculate(graph);
+			assertDescendants(engine, graph, closure, "A", "A", "B", "C", "D", "E");
+			assertDescendants(engine, graph, closure, "C", "A", "B", "C", "D", "E");
+			assertDescendants(engine, graph, closure, "D", "E");
+		}
+	}
+
+	/**
+	 * Test the closure of a node that depends on itself.
+	 */
+	@Test
+	public void testSelfReference() {
+		DependencyGraph graph = createGraph(Arrays.asList("A A B"));
+		for (ClosureEngine engine : ENGINES) {
+			Closure closure = engine.calculate(graph);
+			assertDescendants(engine, graph, closure, "A", "A", "B");
+			assertTrue("Self reference not contained for " + engine, closure.contains(0, 0));
+		}
+	}
+
+	/**
+	 * Test a long chain, where every closure is a suffix of the chain.
+	 */
+	@Test
+	public void testLongChain() {
+		GraphBuilder builder = new GraphBuilder();
+		int length = 5000;
+		for (int i = 0; i < length; i++) {
+			int parent = builder.getKeys().intern("N" + i);
+			builder.addParent(parent);
+			builder.addEdge(parent, builder.getKeys().intern("N" + (i + 1)));
+		}
+		DependencyGraph graph = builder.build();
+		for (ClosureEngine engine : ENGINES) {
+			Closure closure = engine.calculate(graph);
+			assertEquals("Chain closure size not as expected for " + engine, length, closure.size(0));
+			assertEquals("Chain end closure size not as expected for " + engine, 1, closure.size(length - 1));
+		}
+	}
+
+	/**
+	 * Test that the condensation collapses the cycle and orders the components successors first.
+	 */
+	@Test
+	public void testCondensation() {
+		DependencyGraph graph = createGraph(Arrays.asList("A B", "B C", "C A D", "D E", "E E"));
+		KeyTable keys = graph.getKeys();
+		Condensation condensation = new Condensation(graph);
+		
+		int cycle = condensation.component(keys.find("A"));
+		int d = condensation.component(keys.find("D"));
+		int e = condensation.component(keys.find("E"));
+		assertEquals("Component count not as expected", 3, condensation.componentCount());
+		assertEquals("B not in the cycle component", cycle, condensation.component(keys.find("B")));
+		assertEquals("C not in the cycle component", cycle, condensation.component(keys.find("C")));
+		assertTrue("Cycle component should be cyclic", condensation.isCyclic(cycle));
+		assertFalse("D component should not be cyclic", condensation.isCyclic(d));
+		assertTrue("Self referencing E component should be cyclic", condensation.isCyclic(e));
+		assertTrue("Components not in reverse topological order", e < d && d < cycle);
+		assertEquals("Cycle successors not as expected", 1, 
+				condensation.successorEnd(cycle) - condensation.successorStart(cycle));
+	}
+
+	/**
+	 * Test that the levels put every component above all of its successors.
+	 */
+	@Test
+	public void testLevels() {
+		DependencyGraph graph = createGraph(Arrays.asList("A B C", "B C", "C D", "D C", "E F"));
+		KeyTable keys = graph.getKeys();
+		Condensation condensation = new Condensation(graph);
+		int[] levels = ParallelClosureEngine.levels(condensation);
+		
+		assertEquals("C/D cycle level not as expected", 0, levels[condensation.component(keys.find("C"))]);
+		assertEquals("B level not as expected", 1, levels[condensation.component(keys.find("B"))]);
+		assertEquals("A level not as expected", 2, levels[condensation.component(keys.find("A"))]);
+		assertEquals("E level not as expected", 1, levels[condensation.component(keys.find("E"))]);
+	}
+
+	/**
+	 * Test that the parallel engine produces the same closure as the sequential engine on a wide graph
+	 * whose levels are split into several tasks.
+	 */
+	@Test
+	public void testParallelMatchesSequential() {
+		GraphBuilder builder = new GraphBuilder();
+		// A binary tree with extra edges to the grandchildren, the lowest levels hold hundreds of nodes.
+		for (int i = 0; i < 1000; i++) {
+			int parent = builder.getKeys().intern("N" + i);
+			builder.addParent(parent);
+			for (int child = 2 * i + 1; child <= 4 * i + 4 && child < 2000; child++) {
+				builder.addEdge(parent, builder.getKeys().intern("N" + child));
+			}
+		}
+		DependencyGraph graph = builder.build();
+		Closure sequential = new BitSetClosureEngine().calculate(graph);
+		Closure parallel = new ParallelClosureEngine(4).calculate(graph);
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			assertArrayEquals("Parallel closure not as expected", sequential.descendants(node), parallel.descendants(node));
+		}
+	}
+
+	/**
+	 * Test the ranked closure keeps its descendants in key order when the keys were interned out of order,
+	 * and writes the same output as an unranked closure.
+	 */
+	@Test
+	public void testRanked() throws IOException {
+		DependencyGraph graph = createGraph(Arrays.asList("Z y X", "y b a Z", "X \u00e9 B", "b Z"));
+		KeyTable keys = graph.getKeys();
+		RankedClosure ranked = (RankedClosure) new RankedClosureEngine(new BitSetClosureEngine()).calculate(graph);
+		
+		int[] order = ranked.order();
+		for (int r = 1; r < order.length; r++) {
+			assertTrue("Ranks not in key order", keys.getKey(order[r - 1]).compareTo(keys.getKey(order[r])) < 0);
+		}
+		int[] descendants = ranked.rankedDescendants(ranked.rank()[keys.find("Z")]);
+		for (int i = 1; i < descendants.length; i++) {
+			assertTrue("Ranked descendants not ascending", descendants[i - 1] < descendants[i]);
+		}
+		assertTrue("Contains not mapped to ranks", ranked.contains(keys.find("b"), keys.find("\u00e9")));
+		assertFalse("Contains not mapped to ranks", ranked.contains(keys.find("X"), keys.find("Z")));
+		
+		StringWriter expected = new StringWriter();
+		new ClosureWriter(graph, new TraversalClosureEngine().calculate(graph)).write(expected);
+		StringWriter actual = new StringWriter();
+		new ClosureWriter(graph, ranked).write(actual);
+		assertEquals("Ranked output not as expected", expected.toString(), actual.toString());
+	}
+
+	/**
+	 * Build a graph from input rows in the 'Key dependency [dependency...]' form.
+	 */
+	static DependencyGraph createGraph(List<String> rows) {
+		GraphBuilder builder = new GraphBuilder();
+		for (String row : rows) {
+			String[] elements = row.split(" ");
+			int parent = builder.getKeys().intern(elements[0]);
+			builder.addParent(parent);
+			for (int i = 1; i < elements.length; i++) {
+				builder.addEdge(parent, builder.getKeys().intern(elements[i]));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Assert the descendants of key match the expected keys.
+	 */
+	private static void assertDescendants(ClosureEngine engine, DependencyGraph graph, Closure closure, 
+			String key, String... expected) {
+		KeyTable keys = graph.getKeys();
+		int node = keys.find(key);
+		String[] actual = new String[closure.size(node)];
+		int i = 0;
+		for (int descendant : closure.descendants(node)) {
+			actual[i++] = keys.getKey(descendant);
+		}
+		Arrays.sort(actual);
+		assertArrayEquals("Descendants of " + key + " not as expected for " + engine.getClass().getSimpleName(), 
+				expected, actual);
+	}
+}
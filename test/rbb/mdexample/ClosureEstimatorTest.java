@@ -0,0 +1,170 @@
+/**
+ * The jUnit tests for the ClosureEstimator and the STREAMING closure mode it recommends.
+ *
+ * The estimates must be exact where the graph allows it and close to the calculated sizes otherwise,
+ * and the heaviest keys and recommended modes must follow from them.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ClosureEstimatorTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test the sizes of the sample data, whose sets are small enough to be counted exactly.
+	 */
+	@Test
+	public void testSample() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		ClosureEstimator estimator = de.estimate();
+		KeyTable keys = estimator.getGraph().getKeys();
+		String[] expected = { "A 6", "B 5", "C 1", "D 7", "E 2", "F 1", "G 0", "H 0" };
+		for (String sizes : expected) {
+			String[] keyAndSize = sizes.split(" ");
+			assertEquals("Size of " + keyAndSize[0] + " not as expected", Long.parseLong(keyAndSize[1]),
+					estimator.estimatedSize(keys.find(keyAndSize[0])));
+		}
+		assertEquals("Total not as expected", 22, estimator.estimatedTotalSize());
+		assertEquals("Output bytes not as expected", de.generateOutput().getBytes(StandardCharsets.UTF_8).length,
+				estimator.estimatedOutputBytes());
+		int[] heaviest = estimator.heaviest(3);
+		assertEquals("Heaviest count not as expected", 3, heaviest.length);
+		assertEquals("Heaviest not as expected", "D", keys.getKey(heaviest[0]));
+		assertEquals("Second heaviest not as expected", "A", keys.getKey(heaviest[1]));
+		assertEquals("Third heaviest not as expected", "B", keys.getKey(heaviest[2]));
+		assertEquals("Only the parents are heaviest", 6, estimator.heaviest(10).length);
+	}
+
+	/**
+	 * Test chains, trees and circular references are counted exactly however large they are.
+	 */
+	@Test
+	public void testExact() {
+		GraphBuilder builder = new GraphBuilder();
+		int length = 10000;
+		for (int i = 0; i < length; i++) {
+			int parent = builder.getKeys().intern("N" + i);
+			builder.addParent(parent);
+			builder.addEdge(parent, builder.getKeys().intern("N" + (i + 1)));
+		}
+		// A cycle at the end of the chain, and a tree below it.
+		int end = builder.getKeys().intern("N" + length);
+		builder.addParent(end);
+		builder.addEdge(end, builder.getKeys().intern("N" + (length - 1)));
+		builder.addEdge(end, builder.getKeys().intern("T0"));
+		for (int i = 0; i < 1000; i++) {
+			int parent = builder.getKeys().intern("T" + i);
+			builder.addParent(parent);
+			builder.addEdge(parent, builder.getKeys().intern("L" + i));
+		}
+		DependencyGraph graph = builder.build();
+		ClosureEstimator estimator = new ClosureEstimator(graph);
+		Closure closure = new TraversalClosureEngine().calculate(graph);
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			assertEquals("Size of " + graph.getKeys().getKey(node) + " not exact", closure.size(node),
+					estimator.estimatedSize(node));
+		}
+	}
+
+	/**
+	 * Test the estimates of random graphs with many merges are close to the calculated sizes.
+	 */
+	@Test
+	public void testRandom() {
+		Random random = new Random(24);
+		for (int precision : new int[] { 6, 10 }) {
+			DependencyGraph graph = TestGraphs.forwardGraph(random, 20000, 3, 2000);
+			ClosureEstimator estimator = new ClosureEstimator(graph, precision);
+			Closure closure = new BitSetClosureEngine().calculate(graph);
+
+			double tolerance = 4 * 1.04 / Math.sqrt(1 << precision);
+			long total = 0;
+			long estimatedTotal = 0;
+			for (int node = 0; node < graph.nodeCount(); node++) {
+				long size = closure.size(node);
+				long estimate = estimator.estimatedSize(node);
+				assertEquals("Size of node " + node + " not close for precision " + precision, size, estimate,
+						Math.max(2, size * tolerance));
+				total += size;
+				estimatedTotal += estimate;
+			}
+			assertEquals("Total not close for precision " + precision, total, estimator.estimatedTotalSize(),
+					total * tolerance / 4);
+			assertEquals("Estimated total not the sum", estimatedTotal, estimator.estimatedTotalSize());
+		}
+	}
+
+	/**
+	 * Test the recommended mode follows the density of the closure and the memory available.
+	 */
+	@Test
+	public void testRecommendMode() {
+		DependencyEvaluator sparse = new DependencyEvaluator();
+		DependencyEvaluator dense = new DependencyEvaluator();
+		for (int i = 0; i < 1000; i++) {
+			sparse.setInputData(Arrays.asList("T" + i + " L" + i));
+			dense.setInputData(Arrays.asList("N" + i + " N" + (i + 1)));
+		}
+		ClosureEstimator sparseEstimator = sparse.estimate();
+		ClosureEstimator denseEstimator = dense.estimate();
+		assertTrue("Sparse id lists not smaller",
+				sparseEstimator.estimatedIdListBytes() < sparseEstimator.estimatedBitSetBytes());
+		assertTrue("Dense bitsets not smaller",
+				denseEstimator.estimatedBitSetBytes() < denseEstimator.estimatedIdListBytes());
+
+		long memory = 1024 * 1024 * 1024;
+		assertEquals("Sparse mode not as expected", ClosureMode.TRAVERSAL, sparseEstimator.recommendMode(memory, 4));
+		assertEquals("Dense mode not as expected", ClosureMode.PARALLEL, denseEstimator.recommendMode(memory, 4));
+		assertEquals("Single thread dense mode not as expected", ClosureMode.BITSET, denseEstimator.recommendMode(memory, 1));
+		assertEquals("Low memory mode not as expected", ClosureMode.STREAMING, denseEstimator.recommendMode(1024, 4));
+	}
+
+	/**
+	 * Test the STREAMING mode writes the same output as a mode that stores the closure, recalculating after
+	 * updates, and is not used where a stored closure is needed.
+	 */
+	@Test
+	public void testStreaming() throws Exception {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setClosureMode(ClosureMode.STREAMING);
+		de.setQueryCacheSize(0);
+		assertEquals("Streaming output not as expected",
+				"A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n", de.generateOutput());
+		assertTrue("Streaming dependsOn not as expected", de.dependsOn("D", "H"));
+		de.addEdge("H", "Z");
+		assertFalse("Streaming update kept the closure", de.isCalculated());
+		assertEquals("Streaming descendants not as expected", Arrays.asList("F", "H", "Z"), de.descendantsOf("E"));
+		assertEquals("Streaming output after update not as expected",
+				"A  B C E F G H Z\nB  C E F G H Z\nC  G\nD  A B C E F G H Z\nE  F H Z\nF  H Z\nH  Z\n", de.generateOutput());
+		try {
+			de.snapshot(1);
+			fail("Streaming snapshot accepted");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+	}
+}
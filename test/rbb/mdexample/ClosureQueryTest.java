@@ -0,0 +1,158 @@
+/**
+ * The jUnit tests for ClosureQuery and the QueryClosureEngine.
+ *
+ * The output for a query must be limited to its roots, depth and filters, the filtered keys must not be
+ * searched through, and an unbounded query must write the same output as no query.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ClosureQueryTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test an unbounded query writes the same output as no query in every closure mode.
+	 */
+	@Test
+	public void testUnbounded() {
+		for (ClosureMode mode : ClosureMode.values()) {
+			DependencyEvaluator de = new DependencyEvaluator(INPUT);
+			de.setClosureMode(mode);
+			ClosureQuery query = new ClosureQuery();
+			assertTrue("New query not unbounded", query.isUnbounded());
+			assertEquals("Unbounded output not as expected for " + mode, de.generateOutput(), de.generateOutput(query));
+		}
+	}
+
+	/**
+	 * Test the descendants are limited to the maximum depth.
+	 */
+	@Test
+	public void testMaxDepth() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		ClosureQuery query = new ClosureQuery();
+		query.setMaxDepth(1);
+		assertEquals("Depth 1 output not as expected", "A  B C\nB  C E\nC  G\nD  A F\nE  F\nF  H\n",
+				de.generateOutput(query));
+		query.setMaxDepth(2);
+		assertEquals("Depth 2 output not as expected", "A  B C E G\nB  C E F G\nC  G\nD  A B C F H\nE  F H\nF  H\n",
+				de.generateOutput(query));
+		query.setMaxDepth(0);
+		assertEquals("Depth 0 output not as expected", "A \nB \nC \nD \nE \nF \n", de.generateOutput(query));
+		try {
+			query.setMaxDepth(-1);
+			fail("Negative depth accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Test a key reaches itself through a circular reference once the depth allows it.
+	 */
+	@Test
+	public void testCircularDepth() {
+		DependencyEvaluator de = new DependencyEvaluator(Arrays.asList("A B", "B A"));
+		ClosureQuery query = new ClosureQuery();
+		query.setMaxDepth(1);
+		assertEquals("Depth 1 output not as expected", "A  B\nB  A\n", de.generateOutput(query));
+		query.setMaxDepth(2);
+		assertEquals("Depth 2 output not as expected", "A  A B\nB  A B\n", de.generateOutput(query));
+	}
+
+	/**
+	 * Test the filtered keys are left out, and the keys only reachable through them are left out too.
+	 */
+	@Test
+	public void testFilters() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		ClosureQuery query = new ClosureQuery();
+		query.setExclude(ClosureQuery.startsWith("F"));
+		assertEquals("Excluded output not as expected", "A  B C E G\nB  C E G\nC  G\nD  A B C E G\nE \n",
+				de.generateOutput(query));
+
+		query = new ClosureQuery();
+		query.setInclude(ClosureQuery.startsWith("A", "B", "C"));
+		assertEquals("Included output not as expected", "A  B C\nB  C\nC \n", de.generateOutput(query));
+
+		query.setExclude(ClosureQuery.startsWith("C"));
+		assertEquals("Included and excluded output not as expected", "A  B\nB \n", de.generateOutput(query));
+	}
+
+	/**
+	 * Test only the lines of the known parent keys among the roots are written.
+	 */
+	@Test
+	public void testRoots() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		ClosureQuery query = new ClosureQuery();
+		query.setRoots(Arrays.asList("Z", "H", "D"));
+		assertEquals("Roots output not as expected", "D  A B C E F G H\n", de.generateOutput(query));
+		query.setMaxDepth(2);
+		assertEquals("Roots depth 2 output not as expected", "D  A B C F H\n", de.generateOutput(query));
+	}
+
+	/**
+	 * Test each key is tested once at most, and the keys behind a rejected key are never reached.
+	 */
+	@Test
+	public void testPruned() {
+		DependencyEvaluator de = new DependencyEvaluator(Arrays.asList("A B C D", "B X", "C D", "D C", "X Y"));
+		List<String> tested = new ArrayList<>();
+		ClosureQuery query = new ClosureQuery();
+		query.setRoots(Arrays.asList("A"));
+		query.setInclude(key -> {
+			tested.add(key);
+			return !"B".equals(key);
+		});
+		assertEquals("Pruned output not as expected", "A  C D\n", de.generateOutput(query));
+		assertEquals("Keys tested not as expected", Arrays.asList("A", "B", "C", "D"), tested);
+	}
+
+	/**
+	 * Test a query answers from the current graph after the calculated closure has been updated,
+	 * and the channel output matches the Writer output.
+	 */
+	@Test
+	public void testAfterUpdate() throws IOException {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setClosureMode(ClosureMode.BITSET);
+		de.calculate();
+		de.addEdge("H", "Z");
+		ClosureQuery query = new ClosureQuery();
+		query.setRoots(Arrays.asList("F", "H"));
+		assertEquals("Updated output not as expected", "F  H Z\nH  Z\n", de.generateOutput(query));
+		assertTrue("Update not kept calculated", de.isCalculated());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		de.writeOutput(Channels.newChannel(bytes), query);
+		assertEquals("Channel output not as expected", "F  H Z\nH  Z\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+}
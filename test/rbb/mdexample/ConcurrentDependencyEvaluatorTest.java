@@ -0,0 +1,242 @@
+/**
+ * The jUnit tests for ConcurrentDependencyEvaluator and DependencySnapshot.
+ *
+ * A published snapshot must never change, must answer the same as a DependencyEvaluator given the same
+ * input and updates, and must show each update batch either entirely or not at all.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ConcurrentDependencyEvaluatorTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+	private final static String OUTPUT = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test a snapshot keeps answering the same after updates are published.
+	 */
+	@Test
+	public void testSnapshotIsolation() {
+		ConcurrentDependencyEvaluator cde = new ConcurrentDependencyEvaluator(new DependencyEvaluator(INPUT));
+		DependencySnapshot first = cde.getSnapshot();
+		assertEquals("First version not as expected", 1, first.getVersion());
+		assertEquals("Output not as expected", OUTPUT, first.generateOutput());
+
+		DependencySnapshot second = cde.update(evaluator -> {
+			evaluator.addEdge("H", "Z");
+			evaluator.removeEdge("D", "A");
+		});
+		assertEquals("Second version not as expected", 2, second.getVersion());
+		assertSame("Latest version not published", second, cde.getSnapshot());
+		assertEquals("Updated descendants not as expected", Arrays.asList("F", "H", "Z"), cde.descendantsOf("D"));
+		assertEquals("Updated ancestors not as expected", Arrays.asList("A", "B", "D", "E", "F", "H"), cde.ancestorsOf("Z"));
+		assertTrue("Updated dependency not found", cde.dependsOn("A", "Z"));
+
+		assertEquals("Output of the first version changed", OUTPUT, first.generateOutput());
+		assertEquals("Descendants of the first version changed", Arrays.asList("A", "B", "C", "E", "F", "G", "H"),
+				first.descendantsOf("D"));
+		assertEquals("Ancestors of the first version changed", Arrays.asList(), first.ancestorsOf("Z"));
+		assertFalse("Dependency of the first version changed", first.dependsOn("A", "Z"));
+
+		cde.clear();
+		assertEquals("Cleared output not as expected", "", cde.generateOutput());
+		assertEquals("Output of the second version changed", "A  B C E F G H Z\nB  C E F G H Z\nC  G\nD  F H Z\nE  F H Z\nF  H Z\nH  Z\n",
+				second.generateOutput());
+	}
+
+	/**
+	 * Test the snapshots answer the same as a DependencyEvaluator after the same random updates, in each mode.
+	 */
+	@Test
+	public void testMatchesEvaluator() {
+		Random random = new Random(19);
+		for (ClosureMode mode : new ClosureMode[] { ClosureMode.TRAVERSAL, ClosureMode.BITSET, ClosureMode.PARALLEL }) {
+			List<String> rows = new ArrayList<>();
+			for (int i = 0; i < 60; i++) {
+				rows.add("K" + i + " K" + random.nextInt(80) + " K" + random.nextInt(80));
+			}
+			DependencyEvaluator expected = new DependencyEvaluator(rows);
+			expected.setClosureMode(mode);
+			DependencyEvaluator owned = new DependencyEvaluator(rows);
+			owned.setClosureMode(mode);
+			ConcurrentDependencyEvaluator cde = new ConcurrentDependencyEvaluator(owned);
+			expected.calculate();
+
+			for (int round = 0; round < 10; round++) {
+				List<String[]> changes = new ArrayList<>();
+				for (int i = 0; i < 5; i++) {
+					changes.add(new String[] { "K" + random.nextInt(90), "K" + random.nextInt(90), random.nextBoolean() ? "add" : "remove" });
+				}
+				for (String[] change : changes) {
+					apply(expected, change);
+				}
+				cde.update(evaluator -> changes.forEach(change -> apply(evaluator, change)));
+
+				DependencySnapshot snapshot = cde.getSnapshot();
+				assertEquals(mode + " output not as expected", expected.generateOutput(), snapshot.generateOutput());
+				for (int i = 0; i < 90; i++) {
+					String key = "K" + i;
+					assertEquals(mode + " descendants of " + key + " not as expected",
+							expected.descendantsOf(key), snapshot.descendantsOf(key));
+					assertEquals(mode + " ancestors of " + key + " not as expected",
+							expected.ancestorsOf(key), snapshot.ancestorsOf(key));
+					String other = "K" + random.nextInt(90);
+					assertEquals(mode + " " + key + " depends on " + other + " not as expected",
+							expected.dependsOn(key, other), snapshot.dependsOn(key, other));
+				}
+				assertEquals(mode + " union not as expected", expected.descendantsOf(Arrays.asList("K1", "K2", "X")),
+						snapshot.descendantsOf(Arrays.asList("K1", "K2", "X")));
+			}
+		}
+	}
+
+	/**
+	 * Test every version keeps its answers while single updates are published across a graph larger than
+	 * the chunks the versions share.
+	 */
+	@Test
+	public void testSharedVersions() {
+		Random random = new Random(7);
+		int keyCount = 3000;
+		List<String> rows = new ArrayList<>();
+		for (int i = 0; i < keyCount; i++) {
+			rows.add("K" + i + " K" + random.nextInt(keyCount));
+		}
+		DependencyEvaluator evaluator = new DependencyEvaluator(rows);
+		evaluator.setClosureMode(ClosureMode.BITSET);
+		ConcurrentDependencyEvaluator cde = new ConcurrentDependencyEvaluator(evaluator);
+
+		List<DependencySnapshot> snapshots = new ArrayList<>();
+		List<List<List<String>>> answers = new ArrayList<>();
+		for (int update = 0; update < 40; update++) {
+			String parent = "K" + random.nextInt(keyCount);
+			String child = "K" + random.nextInt(keyCount + 20);
+			if (random.nextInt(3) == 0) {
+				cde.removeNode(parent);
+			} else {
+				cde.addEdge(parent, child);
+			}
+			DependencySnapshot snapshot = cde.getSnapshot();
+			snapshots.add(snapshot);
+			answers.add(answers(snapshot, keyCount));
+		}
+		for (int i = 0; i < snapshots.size(); i++) {
+			assertEquals("Answers of version " + snapshots.get(i).getVersion() + " changed", answers.get(i),
+					answers(snapshots.get(i), keyCount));
+		}
+	}
+
+	/**
+	 * Returns the descendants and ancestors of every 100th key and of the keys added past the input.
+	 */
+	private static List<List<String>> answers(DependencySnapshot snapshot, int keyCount) {
+		List<List<String>> answers = new ArrayList<>();
+		for (int i = 0; i < keyCount + 20; i += i < keyCount ? 100 : 1) {
+			answers.add(snapshot.descendantsOf("K" + i));
+			answers.add(snapshot.ancestorsOf("K" + i));
+		}
+		answers.add(Arrays.asList(Integer.toString(snapshot.keyCount())));
+		return answers;
+	}
+
+	/**
+	 * Test readers on several threads see each update batch entirely or not at all, and never an older version.
+	 */
+	@Test(timeout = 60000)
+	public void testConcurrentReaders() throws Exception {
+		ConcurrentDependencyEvaluator cde = new ConcurrentDependencyEvaluator(new DependencyEvaluator(INPUT));
+		AtomicBoolean writing = new AtomicBoolean(true);
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> readers = new ArrayList<>();
+			for (int r = 0; r < 3; r++) {
+				readers.add(threads.submit(() -> {
+					long version = 0;
+					int reads = 0;
+					while (writing.get() || reads < 100) {
+						DependencySnapshot snapshot = cde.getSnapshot();
+						assertTrue("Version went backwards", snapshot.getVersion() >= version);
+						version = snapshot.getVersion();
+						// Both edges are added and removed in one batch.
+						boolean z = snapshot.dependsOn("A", "Z");
+						assertEquals("Half a batch seen in version " + version, z, snapshot.dependsOn("A", "Y"));
+						assertEquals("Descendants not as expected in version " + version,
+								z ? Arrays.asList("Y", "Z") : Arrays.asList(), snapshot.descendantsOf("G"));
+						assertEquals("Unchanged descendants not as expected", Arrays.asList("F", "H"), snapshot.descendantsOf("E"));
+						reads++;
+					}
+					return null;
+				}));
+			}
+			for (int i = 0; i < 200; i++) {
+				cde.update(evaluator -> {
+					evaluator.addEdge("G", "Z");
+					evaluator.addEdge("Z", "Y");
+				});
+				cde.update(evaluator -> {
+					evaluator.removeEdge("G", "Z");
+					evaluator.removeEdge("Z", "Y");
+				});
+			}
+			writing.set(false);
+			for (Future<?> reader : readers) {
+				reader.get();
+			}
+		} finally {
+			threads.shutdown();
+		}
+		assertEquals("Last version not as expected", 401, cde.getSnapshot().getVersion());
+	}
+
+	/**
+	 * Test the modes without a closure are rejected.
+	 */
+	@Test
+	public void testNodesMode() {
+		for (ClosureMode mode : new ClosureMode[] { ClosureMode.NODES, ClosureMode.STREAMING }) {
+			DependencyEvaluator de = new DependencyEvaluator(INPUT);
+			de.setClosureMode(mode);
+			try {
+				new ConcurrentDependencyEvaluator(de);
+				fail(mode + " mode accepted");
+			} catch (IllegalArgumentException e) {
+				// Expected.
+			}
+		}
+	}
+
+	private static void apply(DependencyEvaluator evaluator, String[] change) {
+		if ("add".equals(change[2])) {
+			evaluator.addEdge(change[0], change[1]);
+		} else {
+			evaluator.removeEdge(change[0], change[1]);
+		}
+	}
+}
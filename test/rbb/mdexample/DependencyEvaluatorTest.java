@@ -7,6 +7,14 @@ package rbb.mdexample;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -100,6 +108,226 @@ public class DependencyEvaluatorTest {
 		assertEquals("Empty String is expected output for invalid data", "", output);
 	}	
 	
+	/**
+	 * Test that each closure mode generates the README example output.
+	 */
+	@Test
+	public void testClosureModes() {
+		ArrayList<String> exampleData = new ArrayList<>(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H"));
+		String expected = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+		
+		for (ClosureMode mode : ClosureMode.values()) {
+			DependencyEvaluator de = new DependencyEvaluator();
+			de.setClosureMode(mode);
+			de.setInputData(exampleData);
+			assertEquals("Output not as expected for " + mode, expected, de.generateOutput());
+		}
+	}
+	
+	/**
+	 * Test the streaming input from a Reader, an InputStream and an Iterator gives the same output.
+	 */
+	@Test
+	public void testAddInputStreams() throws IOException {
+		String example = "A B C\nB C E\nC G\nD A F\nE F\nF H";
+		String expected = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+		
+		DependencyEvaluator readerEvaluator = new DependencyEvaluator();
+		readerEvaluator.addInput(new StringReader(example));
+		assertEquals("Reader output not as expected", expected, readerEvaluator.generateOutput());
+		
+		DependencyEvaluator streamEvaluator = new DependencyEvaluator();
+		streamEvaluator.addInput(new ByteArrayInputStream(example.getBytes(StandardCharsets.UTF_8)));
+		assertEquals("InputStream output not as expected", expected, streamEvaluator.generateOutput());
+		
+		DependencyEvaluator iteratorEvaluator = new DependencyEvaluator();
+		iteratorEvaluator.addInput(Arrays.asList(example.split("\n")).iterator());
+		assertEquals("Iterator output not as expected", expected, iteratorEvaluator.generateOutput());
+	}
+
+	/**
+	 * Test a Reader row longer than the read buffer.
+	 */
+	@Test
+	public void testAddInputLongRow() throws IOException {
+		StringBuilder row = new StringBuilder("A");
+		for (int i = 0; i < 5000; i++) {
+			row.append(" N").append(i);
+		}
+		
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.addInput(new StringReader(row.toString() + "\nN0 B"));
+		String output = de.generateOutput();
+		assertTrue("Long row dependency missing", output.contains(" N4999"));
+		assertTrue("Row after the long row missing", output.contains("N0  B\n"));
+	}
+
+	/**
+	 * Test appending chunks that split rows and fields, reusing the same chunk buffer.
+	 */
+	@Test
+	public void testAppendInput() {
+		byte[] example = "A B C\nB C E\nC G\nD A F\nE F\nF H".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer chunk = ByteBuffer.allocate(4);
+		
+		DependencyEvaluator de = new DependencyEvaluator();
+		for (int i = 0; i < example.length; i += chunk.capacity()) {
+			chunk.clear();
+			chunk.put(example, i, Math.min(chunk.capacity(), example.length - i));
+			chunk.flip();
+			de.appendInput(chunk);
+		}
+		de.finishInput();
+		assertEquals("Appended output not as expected", 
+				"A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n", de.generateOutput());
+	}
+	
+	/**
+	 * Test that streaming the output to a Writer, OutputStream or channel matches generateOutput() in every mode.
+	 */
+	@Test
+	public void testWriteOutput() throws IOException {
+		String expected = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+		for (ClosureMode mode : ClosureMode.values()) {
+			DependencyEvaluator de = new DependencyEvaluator();
+			de.setClosureMode(mode);
+			de.setInputData(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H"));
+
+			StringWriter writer = new StringWriter();
+			de.writeOutput(writer);
+			assertEquals("Writer output not as expected for " + mode, expected, writer.toString());
+
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			de.writeOutput(stream);
+			assertEquals("Stream output not as expected for " + mode, expected, stream.toString("UTF-8"));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			de.writeOutput(Channels.newChannel(bytes));
+			assertEquals("Channel output not as expected for " + mode, expected, bytes.toString("UTF-8"));
+			assertEquals("Generated output not as expected for " + mode, expected, de.generateOutput());
+		}
+	}
+
+	/**
+	 * Test writing keys that are longer than the output buffer to a channel.
+	 */
+	@Test
+	public void testWriteOutputLongKey() throws IOException {
+		char[] chars = new char[100 * 1024];
+		Arrays.fill(chars, '\u00e9');
+		String longKey = new String(chars);
+
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.setInputData(Arrays.asList("A " + longKey, longKey + " B"));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		de.writeOutput(Channels.newChannel(bytes));
+		assertEquals("Long key output not as expected", 
+				"A  B " + longKey + "\n" + longKey + "  B\n", bytes.toString("UTF-8"));
+	}
+
+	/**
+	 * Test that adding & removing dependencies after calculate() gives the output of the changed input in every mode.
+	 */
+	@Test
+	public void testIncrementalUpdates() {
+		for (ClosureMode mode : ClosureMode.values()) {
+			DependencyEvaluator de = new DependencyEvaluator();
+			de.setClosureMode(mode);
+			de.setInputData(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H"));
+			de.calculate();
+
+			de.addEdge("G", "I");
+			de.addNode("J");
+			assertEquals("Output after adding G I not as expected for " + mode, 
+					"A  B C E F G H I\nB  C E F G H I\nC  G I\nD  A B C E F G H I\nE  F H\nF  H\nG  I\n", 
+					de.generateOutput());
+
+			de.removeEdge("B", "E");
+			de.removeEdge("X", "Y");
+			assertEquals("Output after removing B E not as expected for " + mode, 
+					"A  B C G I\nB  C G I\nC  G I\nD  A B C F G H I\nE  F H\nF  H\nG  I\n", 
+					de.generateOutput());
+
+			de.removeNode("C");
+			de.removeEdge("G", "I");
+			assertEquals("Output after removing C not as expected for " + mode, 
+					"A  B\nD  A B F H\nE  F H\nF  H\n", de.generateOutput());
+
+			de.clear();
+			de.setInputData(Arrays.asList("X Y"));
+			assertEquals("Output after clear not as expected for " + mode, "X  Y\n", de.generateOutput());
+		}
+	}
+
+	/**
+	 * Test descendantsOf() before and after calculate().
+	 */
+	@Test
+	public void testDescendantsOf() {
+		for (ClosureMode mode : ClosureMode.values()) {
+			DependencyEvaluator de = new DependencyEvaluator();
+			de.setClosureMode(mode);
+			de.setInputData(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H"));
+			assertEquals("Lazy descendants of B not as expected for " + mode, 
+					Arrays.asList("C", "E", "F", "G", "H"), de.descendantsOf("B"));
+			assertEquals("Lazy descendants of H not as expected for " + mode, 
+					Arrays.asList(), de.descendantsOf("H"));
+			assertEquals("Unknown key not empty for " + mode, Arrays.asList(), de.descendantsOf("Z"));
+
+			de.setInputData(Arrays.asList("H A"));
+			assertEquals("Descendants of B after more input not as expected for " + mode, 
+					Arrays.asList("A", "B", "C", "E", "F", "G", "H"), de.descendantsOf("B"));
+			de.calculate();
+			de.addEdge("G", "I");
+			assertEquals("Calculated descendants of C not as expected for " + mode, 
+					Arrays.asList("G", "I"), de.descendantsOf("C"));
+			assertEquals("Calculated descendants of H not as expected for " + mode, 
+					Arrays.asList("A", "B", "C", "E", "F", "G", "H", "I"), de.descendantsOf("H"));
+		}
+	}
+
+	/**
+	 * Test ancestorsOf() and the batch queries, including a circular reference and incremental updates.
+	 */
+	@Test
+	public void testAncestorsOf() {
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.setInputData(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H", "H E"));
+		assertEquals("Ancestors of G not as expected", Arrays.asList("A", "B", "C", "D"), de.ancestorsOf("G"));
+		assertEquals("Ancestors of F not as expected", 
+				Arrays.asList("A", "B", "D", "E", "F", "H"), de.ancestorsOf("F"));
+		assertEquals("Ancestors of D not as expected", Arrays.asList(), de.ancestorsOf("D"));
+		assertEquals("Batch ancestors not as expected", 
+				Arrays.asList("A", "B", "C", "D"), de.ancestorsOf(Arrays.asList("G", "A", "Z")));
+		assertEquals("Batch descendants not as expected", 
+				Arrays.asList("E", "F", "G", "H"), de.descendantsOf(Arrays.asList("C", "E")));
+
+		de.calculate();
+		assertEquals("Calculated batch descendants not as expected", 
+				Arrays.asList("E", "F", "G", "H"), de.descendantsOf(Arrays.asList("C", "E")));
+		de.removeEdge("C", "G");
+		assertEquals("Ancestors of G after update not as expected", Arrays.asList(), de.ancestorsOf("G"));
+	}
+
+	/**
+	 * Test dependsOn() before and after calculate().
+	 */
+	@Test
+	public void testDependsOn() {
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.setInputData(Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H"));
+		assertTrue("D should depend on H", de.dependsOn("D", "H"));
+		assertFalse("H should not depend on D", de.dependsOn("H", "D"));
+		assertFalse("Unknown key should not depend on anything", de.dependsOn("Z", "A"));
+
+		de.setInputData(Arrays.asList("H D"));
+		assertTrue("H should depend on itself", de.dependsOn("H", "H"));
+		de.calculate();
+		assertTrue("Calculated H should depend on A", de.dependsOn("H", "A"));
+		de.removeEdge("H", "D");
+		assertFalse("H should no longer depend on A", de.dependsOn("H", "A"));
+	}
+
 	/** 
 	 * Validate that the output string matches what we expect with the default 'A B' input data.
 	 * @param output The output string to validate.
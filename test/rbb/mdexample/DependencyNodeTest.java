@@ -136,4 +136,46 @@ public class DependencyNodeTest {
 		assertFalse("Post Calculate isProcessing is incorrect", dn.isProcessing());
 		assertEquals("Post Calculate circular Descendents is incorrect", descendentResult, dn.getAllDescendants());
 	}	
+
+	/**
+	 * Test the iterative calculate produces the same descendants as the recursive calculate, including the circular case.
+	 */
+	@Test
+	public void testIterativeCalculate() {
+		Map<String, DependencyNode> nodeMap = new HashMap<>();
+		DependencyNode dn = new DependencyNode(M_KEY, children);
+		nodeMap.put(M_KEY, dn);
+		nodeMap.put("B", new DependencyNode("B", new ArrayList<>(Arrays.asList("C", "A"))));
+		nodeMap.put("C", new DependencyNode("C", new ArrayList<>(Arrays.asList("D"))));
+	
+		Set<String> descendentResult = new HashSet<>(Arrays.asList("A", "B", "C", "D"));
+		
+		dn.determineDescendentsIterative(nodeMap);
+		assertTrue("Post Calculate isExpanded is incorrect", dn.isExpanded());
+		assertFalse("Post Calculate isProcessing is incorrect", dn.isProcessing());
+		assertEquals("Post Calculate iterative Descendents is incorrect", descendentResult, dn.getAllDescendants());
+		assertEquals("Post Calculate child Descendents is incorrect", 
+				new HashSet<>(Arrays.asList("D")), nodeMap.get("C").getAllDescendants());
+	}
+
+	/**
+	 * Test the iterative calculate on a chain that is deeper than the small thread stack allows to recurse.
+	 */
+	@Test
+	public void testIterativeDeepChain() throws InterruptedException {
+		final int depth = 1500;
+		final Map<String, DependencyNode> nodeMap = new HashMap<>();
+		for (int i = 0; i < depth; i++) {
+			nodeMap.put("N" + i, new DependencyNode("N" + i, new ArrayList<>(Arrays.asList("N" + (i + 1)))));
+		}
+		
+		final boolean[] expanded = new boolean[1];
+		Thread thread = new Thread(null, () -> expanded[0] = nodeMap.get("N0").determineDescendentsIterative(nodeMap), 
+				"smallStack", 64 * 1024);
+		thread.start();
+		thread.join();
+		
+		assertTrue("Post Calculate isExpanded is incorrect", expanded[0]);
+		assertEquals("Post Calculate deep chain Descendents size is incorrect", depth, nodeMap.get("N0").getAllDescendants().size());
+	}
 }
@@ -0,0 +1,163 @@
+/**
+ * The jUnit tests for DependencyServer.
+ *
+ * The requests are tested directly through handle(), then over sockets on the local host from several
+ * clients at once.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DependencyServerTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test each request and its errors without a socket.
+	 */
+	@Test
+	public void testHandle() throws IOException {
+		try (DependencyServer server = new DependencyServer(new ConcurrentDependencyEvaluator(new DependencyEvaluator(INPUT)), 0)) {
+			assertEquals("Ping not as expected", "OK", server.handle("PING"));
+			assertEquals("Descendants not as expected", "OK C E F G H", server.handle("DESCENDANTS B"));
+			assertEquals("Union of descendants not as expected", "OK F G H", server.handle("descendants\tC E"));
+			assertEquals("Unknown key not ignored", "OK", server.handle("DESCENDANTS X"));
+			assertEquals("Ancestors not as expected", "OK A B D E", server.handle("ANCESTORS F"));
+			assertEquals("Depends not as expected", "OK true", server.handle("DEPENDS D H"));
+			assertEquals("Depends not as expected", "OK false", server.handle("DEPENDS H D"));
+
+			assertEquals("Add not as expected", "OK", server.handle("ADD H A"));
+			assertEquals("Descendants not updated", "OK A B C E F G H", server.handle("DESCENDANTS H"));
+			assertEquals("Depends not updated", "OK true", server.handle("DEPENDS H G"));
+			assertEquals("Remove not as expected", "OK", server.handle("REMOVE H A"));
+			assertEquals("Depends not updated", "OK false", server.handle("DEPENDS H G"));
+			assertEquals("Remove not as expected", "OK", server.handle("REMOVE D A"));
+			assertEquals("Descendants not updated", "OK F H", server.handle("DESCENDANTS D"));
+			assertEquals("Remove node not as expected", "OK", server.handle("REMOVENODE F"));
+			assertEquals("Ancestors not updated", "OK", server.handle("ANCESTORS F"));
+			assertEquals("Add node not as expected", "OK", server.handle("ADDNODE X"));
+			assertEquals("Added node has descendants", "OK", server.handle("DESCENDANTS X"));
+
+			assertTrue("Unknown command accepted", server.handle("FIND A").startsWith("ERROR "));
+			assertTrue("Missing key accepted", server.handle("DESCENDANTS").startsWith("ERROR "));
+			assertTrue("Missing dependency accepted", server.handle("DEPENDS A").startsWith("ERROR "));
+			assertTrue("Extra key accepted", server.handle("ADD A B C").startsWith("ERROR "));
+			assertTrue("Empty request accepted", server.handle("").startsWith("ERROR "));
+		}
+	}
+
+	/**
+	 * Test clients querying at the same time as another client updates, then shutting the server down.
+	 */
+	@Test(timeout = 60000)
+	public void testConcurrentClients() throws Exception {
+		DependencyServer server = new DependencyServer(new ConcurrentDependencyEvaluator(new DependencyEvaluator(INPUT)), 0);
+		server.start();
+
+		ExecutorService clients = Executors.newFixedThreadPool(5);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int c = 0; c < 4; c++) {
+				futures.add(clients.submit(() -> {
+					try (Client client = new Client(server.getPort())) {
+						for (int i = 0; i < 200; i++) {
+							assertEquals("Descendants not as expected", "OK F H", client.request("DESCENDANTS E"));
+							String depends = client.request("DEPENDS C Z");
+							assertTrue("Depends not as expected: " + depends, depends.matches("OK (true|false)"));
+						}
+					}
+					return null;
+				}));
+			}
+			// The updates only change the descendants of G and its ancestors, which do not include E.
+			futures.add(clients.submit(() -> {
+				try (Client client = new Client(server.getPort())) {
+					for (int i = 0; i < 100; i++) {
+						assertEquals("Add not as expected", "OK", client.request("ADD G Z"));
+						assertEquals("Depends not updated", "OK true", client.request("DEPENDS C Z"));
+						assertEquals("Remove not as expected", "OK", client.request("REMOVE G Z"));
+						assertEquals("Depends not updated", "OK false", client.request("DEPENDS C Z"));
+					}
+				}
+				return null;
+			}));
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			clients.shutdown();
+		}
+
+		try (Client client = new Client(server.getPort())) {
+			assertEquals("Ping not as expected", "OK", client.request("PING"));
+			assertEquals("Shutdown not as expected", "OK", client.request("SHUTDOWN"));
+		}
+		server.awaitClose();
+		// A connection made as the server socket closes is closed without an answer.
+		try (Client client = new Client(server.getPort())) {
+			assertNull("Answered after shutdown", client.request("PING"));
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertTrue("Clients did not finish", clients.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A connection to the server sending one request at a time.
+	 */
+	private static class Client implements AutoCloseable {
+		private final Socket mSocket;
+		private final BufferedReader mInput;
+		private final Writer mOutput;
+
+		Client(int port) throws IOException {
+			mSocket = new Socket(InetAddress.getLoopbackAddress(), port);
+			mInput = new BufferedReader(new InputStreamReader(mSocket.getInputStream(), StandardCharsets.UTF_8));
+			mOutput = new OutputStreamWriter(mSocket.getOutputStream(), StandardCharsets.UTF_8);
+		}
+
+		String request(String request) throws IOException {
+			mOutput.write(request + "\n");
+			mOutput.flush();
+			return mInput.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			mSocket.close();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * The jUnit tests for EvaluatorMetrics.
+ *
+ * Each phase of an evaluation must be timed once, the counters must match the graph and output, and the
+ * metrics must be readable over JMX and as JSON.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import rbb.mdexample.EvaluatorMetrics.Counter;
+import rbb.mdexample.EvaluatorMetrics.Phase;
+
+public class EvaluatorMetricsTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private final static EvaluatorMetrics METRICS = EvaluatorMetrics.getInstance();
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+	private final static String OUTPUT = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Start each test from zero, since the metrics are shared by the whole JVM.
+	 */
+	@Before
+	public void reset() {
+		METRICS.reset();
+	}
+
+	/**
+	 * Leave the detailed metrics off for the other tests.
+	 */
+	@After
+	public void notDetailed() {
+		METRICS.setDetailed(false);
+	}
+
+	/**
+	 * Test one evaluation times each phase once and counts the graph, merges and output.
+	 */
+	@Test
+	public void testPhases() {
+		METRICS.setDetailed(true);
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setClosureMode(ClosureMode.BITSET);
+		assertEquals("Output not as expected", OUTPUT, de.generateOutput());
+
+		for (Phase phase : new Phase[] { Phase.PARSE, Phase.BUILD, Phase.CLOSURE, Phase.OUTPUT }) {
+			assertEquals(phase + " calls not as expected", 1, METRICS.getCalls(phase));
+			assertTrue(phase + " not timed", METRICS.getNanos(phase) > 0);
+		}
+		assertEquals("Update calls not as expected", 0, METRICS.getCalls(Phase.UPDATE));
+		assertEquals("Nodes not as expected", 8, METRICS.getCount(Counter.NODES));
+		assertEquals("Edges not as expected", 9, METRICS.getCount(Counter.EDGES));
+		assertEquals("Components not as expected", 8, METRICS.getCount(Counter.COMPONENTS));
+		assertEquals("Merges not as expected", 9, METRICS.getCount(Counter.SET_MERGES));
+		assertEquals("Output bytes not as expected", OUTPUT.length(), METRICS.getCount(Counter.OUTPUT_BYTES));
+		assertTrue("Graph bytes not estimated", METRICS.getCount(Counter.GRAPH_BYTES) > 0);
+		assertTrue("Closure bytes not estimated", METRICS.getCount(Counter.CLOSURE_BYTES) > 0);
+
+		de.addEdge("H", "Z");
+		assertEquals("Update calls not as expected", 1, METRICS.getCalls(Phase.UPDATE));
+		de.addNode("Y");
+		assertEquals("Add node not timed", 2, METRICS.getCalls(Phase.UPDATE));
+		// The gauges keep the latest graph, the counters add up.
+		de.clear();
+		de.setInputData(Arrays.asList("A B"));
+		de.generateOutput();
+		assertEquals("Nodes not replaced", 2, METRICS.getCount(Counter.NODES));
+		assertEquals("Output bytes not added", OUTPUT.length() + "A  B\n".length(), METRICS.getCount(Counter.OUTPUT_BYTES));
+	}
+
+	/**
+	 * Test the DependencyNode modes count their merges, and the first pass is not counted as reprocessing.
+	 */
+	@Test
+	public void testNodesMode() {
+		for (ClosureMode mode : new ClosureMode[] { ClosureMode.NODES, ClosureMode.NODES_ITERATIVE }) {
+			METRICS.reset();
+			DependencyEvaluator de = new DependencyEvaluator(INPUT);
+			de.setClosureMode(mode);
+			de.calculate();
+			assertEquals(mode + " closure calls not as expected", 1, METRICS.getCalls(Phase.CLOSURE));
+			assertEquals(mode + " reprocessing passes not as expected", 0, METRICS.getCount(Counter.REPROCESSING_PASSES));
+			assertEquals(mode + " merges not as expected", 9, METRICS.getCount(Counter.SET_MERGES));
+			assertEquals(mode + " components counted", 0, METRICS.getCount(Counter.COMPONENTS));
+		}
+	}
+
+	/**
+	 * Test the metrics are readable over JMX and as JSON.
+	 */
+	@Test
+	public void testJmxAndJson() throws Exception {
+		new DependencyEvaluator(INPUT).generateOutput();
+		EvaluatorMetrics.registerMBean();
+		// Registering again is ignored.
+		EvaluatorMetrics.registerMBean();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(EvaluatorMetrics.OBJECT_NAME);
+		TabularData counters = (TabularData) server.getAttribute(name, "Counters");
+		CompositeData nodes = counters.get(new Object[] { "nodes" });
+		assertEquals("Nodes over JMX not as expected", 8L, nodes.get("value"));
+		TabularData calls = (TabularData) server.getAttribute(name, "PhaseCalls");
+		assertEquals("Parse calls over JMX not as expected", 1L, calls.get(new Object[] { "parse" }).get("value"));
+		assertEquals("Detailed over JMX not as expected", false, server.getAttribute(name, "Detailed"));
+
+		String json = (String) server.getAttribute(name, "Summary");
+		assertTrue("Summary not as expected: " + json, json.startsWith("{\"phases\":{\"parse\":{\"calls\":1,\"millis\":"));
+		assertTrue("Summary not as expected: " + json, json.contains("\"counters\":{\"nodes\":8,\"edges\":9,"));
+		assertTrue("Summary not as expected: " + json, json.endsWith("\"output_bytes\":" + OUTPUT.length() + "}}"));
+		assertFalse("Allocations in summary when not detailed", json.contains("allocatedBytes"));
+
+		server.invoke(name, "reset", null, null);
+		assertEquals("Metrics not reset", 0, METRICS.getCalls(Phase.PARSE));
+	}
+
+	/**
+	 * Test a Timer adds its time when it is closed, even when the phase throws.
+	 */
+	@Test
+	public void testTimer() {
+		EvaluatorMetrics.Timer timer = METRICS.time(Phase.OUTPUT);
+		try {
+			throw new IOException("Test");
+		} catch (IOException e) {
+			// Expected.
+		} finally {
+			timer.close();
+		}
+		assertEquals("Timer not recorded", 1, METRICS.getCalls(Phase.OUTPUT));
+	}
+}
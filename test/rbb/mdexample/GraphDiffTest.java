@@ -0,0 +1,50 @@
+/**
+ * The jUnit tests for GraphDiff.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GraphDiffTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test the added and removed edges of graphs whose keys were interned in different orders.
+	 */
+	@Test
+	public void testDiff() {
+		DependencyGraph from = ClosureEngineTest.createGraph(Arrays.asList("A B C", "B C", "D A"));
+		DependencyGraph to = ClosureEngineTest.createGraph(Arrays.asList("X A", "B C D", "A B", "D A"));
+		GraphDiff diff = new GraphDiff(from, to);
+
+		List<String> added = new ArrayList<>();
+		diff.forEachAdded((parent, child) -> added.add(parent + " " + child));
+		List<String> removed = new ArrayList<>();
+		diff.forEachRemoved((parent, child) -> removed.add(parent + " " + child));
+		assertEquals("Added edges not as expected", Arrays.asList("X A", "B D"), added);
+		assertEquals("Removed edges not as expected", Arrays.asList("A C"), removed);
+		assertEquals("Size not as expected", 3, diff.size());
+
+		assertEquals("Same graph should have no differences", 0, new GraphDiff(from, from).size());
+	}
+}
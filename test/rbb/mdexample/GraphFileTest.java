@@ -0,0 +1,174 @@
+/**
+ * The jUnit tests for GraphFile.
+ *
+ * A saved graph and closure must load back with the same keys, edges, parents and descendants.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GraphFileTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static String INPUT = "A B C\nB C E\nC G\nD A F\nE F\nF H";
+	private final static String OUTPUT = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test a graph with a cycle loads back the same without a closure, with id lists and with bitsets.
+	 */
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B C", "B C E", "C A G", "D A F", "X"));
+		Closure[] closures = { null, new TraversalClosureEngine().calculate(graph), new BitSetClosureEngine().calculate(graph) };
+		for (Closure closure : closures) {
+			Path path = createTempFile();
+			GraphFile.save(path, graph, closure);
+			assertTrue("Saved file not recognized", GraphFile.isGraphFile(path));
+
+			GraphFile file = GraphFile.load(path);
+			DependencyGraph loaded = file.getGraph();
+			assertEquals("Node count not as expected", graph.nodeCount(), loaded.nodeCount());
+			assertEquals("Edge count not as expected", graph.edgeCount(), loaded.edgeCount());
+			assertArrayEquals("Keys not as expected", graph.getKeys().getKeys(), loaded.getKeys().getKeys());
+			for (int node = 0; node < graph.nodeCount(); node++) {
+				String key = graph.getKeys().getKey(node);
+				assertEquals("Id of " + key + " not as expected", node, loaded.getKeys().find(key));
+				assertEquals("Parent " + key + " not as expected", graph.isParent(node), loaded.isParent(node));
+				assertArrayEquals("Children of " + key + " not as expected",
+						Arrays.copyOfRange(graph.targets(), graph.childStart(node), graph.childEnd(node)),
+						Arrays.copyOfRange(loaded.targets(), loaded.childStart(node), loaded.childEnd(node)));
+				if (null == closure) {
+					assertNull("Closure loaded but not saved", file.getClosure());
+				} else {
+					assertArrayEquals("Descendants of " + key + " not as expected",
+							closure.descendants(node), file.getClosure().descendants(node));
+				}
+			}
+			// The loaded key table keeps working.
+			int id = loaded.getKeys().intern("NEW");
+			assertEquals("New key id not as expected", graph.nodeCount(), id);
+			assertEquals("New key not found", id, loaded.getKeys().find("NEW"));
+		}
+	}
+
+	/**
+	 * Test the evaluator saves and loads its input and closure, and can still be updated after loading.
+	 */
+	@Test
+	public void testEvaluatorSaveAndLoad() throws IOException {
+		Path input = createTempFile();
+		Files.write(input, INPUT.getBytes(StandardCharsets.UTF_8));
+		for (boolean includeClosure : new boolean[] { false, true }) {
+			DependencyEvaluator de = new DependencyEvaluator();
+			de.loadInputFile(input);
+			Path path = createTempFile();
+			de.saveGraph(path, includeClosure);
+
+			DependencyEvaluator loaded = new DependencyEvaluator();
+			loaded.loadGraph(path);
+			assertEquals("Output not as expected after loading", OUTPUT, loaded.generateOutput());
+
+			loaded.addEdge("H", "Z");
+			de.addEdge("H", "Z");
+			assertEquals("Output not as expected after an update", de.generateOutput(), loaded.generateOutput());
+			assertTrue("Output missing the update", loaded.generateOutput().startsWith("A  B C E F G H Z\n"));
+		}
+	}
+
+	/**
+	 * Test files that are not graph files, or are cut short, are rejected.
+	 */
+	@Test
+	public void testNotGraphFile() throws IOException {
+		Path text = createTempFile();
+		Files.write(text, INPUT.getBytes(StandardCharsets.UTF_8));
+		assertFalse("Text file recognized as a graph file", GraphFile.isGraphFile(text));
+		try {
+			GraphFile.load(text);
+			fail("Text file loaded as a graph file");
+		} catch (IOException e) {
+			// Expected.
+		}
+
+		Path path = createTempFile();
+		GraphFile.save(path, ClosureEngineTest.createGraph(Arrays.asList("A B C", "B C")), null);
+		byte[] bytes = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+		try {
+			GraphFile.load(path);
+			fail("Truncated file loaded");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Test files with damaged sections are rejected with an IOException instead of failing as they are loaded.
+	 */
+	@Test
+	public void testCorrupted() throws IOException {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B C", "B C E", "C A G", "D A F", "X"));
+		Closure[] closures = { null, new TraversalClosureEngine().calculate(graph), new BitSetClosureEngine().calculate(graph) };
+		for (Closure closure : closures) {
+			Path path = createTempFile();
+			GraphFile.save(path, graph, closure);
+			byte[] saved = Files.readAllBytes(path);
+
+			// The end of the file overwritten, as found in a damaged snapshot.
+			byte[] bytes = saved.clone();
+			Arrays.fill(bytes, bytes.length - 48, bytes.length, (byte) 0x7f);
+			Files.write(path, bytes);
+			try {
+				GraphFile.load(path);
+				fail("Damaged file loaded");
+			} catch (IOException e) {
+				assertTrue("Message not as expected: " + e.getMessage(), e.getMessage().contains("not valid"));
+			}
+
+			// Every value after the header replaced in turn must either load or be rejected.
+			for (int position = 32; position < saved.length; position += Integer.BYTES) {
+				for (int value : new int[] { -1, 0x7f7f7f7f, 1000 }) {
+					bytes = saved.clone();
+					ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(position, value);
+					Files.write(path, bytes);
+					try {
+						GraphFile.load(path);
+					} catch (IOException e) {
+						// Expected for most values.
+					}
+				}
+			}
+		}
+	}
+
+	private static Path createTempFile() throws IOException {
+		File file = File.createTempFile("GraphFileTest", ".rdg");
+		file.deleteOnExit();
+		return file.toPath();
+	}
+}
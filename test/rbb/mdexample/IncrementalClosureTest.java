@@ -0,0 +1,176 @@
+/**
+ * The jUnit tests for IncrementalClosure.
+ *
+ * Each update must leave the same descendants as calculating the updated graph from scratch.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class IncrementalClosureTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test adding edges, including one that closes a cycle.
+	 */
+	@Test
+	public void testAddEdge() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B", "B C", "D E"));
+		KeyTable keys = graph.getKeys();
+		IncrementalClosure closure = new IncrementalClosure(graph, new TraversalClosureEngine().calculate(graph));
+
+		assertTrue("New edge not added", closure.addEdge(keys.find("C"), keys.find("D")));
+		assertFalse("Existing edge added again", closure.addEdge(keys.find("C"), keys.find("D")));
+		assertDescendants(keys, closure, "A", "B", "C", "D", "E");
+		assertDescendants(keys, closure, "C", "D", "E");
+		assertDescendants(keys, closure, "E");
+
+		closure.addEdge(keys.find("E"), keys.find("A"));
+		assertDescendants(keys, closure, "A", "A", "B", "C", "D", "E");
+		assertDescendants(keys, closure, "E", "A", "B", "C", "D", "E");
+
+		int f = keys.intern("F");
+		closure.addEdge(keys.find("B"), f);
+		assertDescendants(keys, closure, "D", "A", "B", "C", "D", "E", "F");
+		assertTrue("C should be a parent", closure.isParent(keys.find("C")));
+		assertFalse("F should not be a parent", closure.isParent(f));
+	}
+
+	/**
+	 * Test removing edges, including one that breaks a cycle.
+	 */
+	@Test
+	public void testRemoveEdge() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B", "B C", "C A D", "D E", "X A"));
+		KeyTable keys = graph.getKeys();
+		IncrementalClosure closure = new IncrementalClosure(graph, new BitSetClosureEngine().calculate(graph));
+
+		assertTrue("Edge not removed", closure.removeEdge(keys.find("C"), keys.find("A")));
+		assertFalse("Missing edge removed", closure.removeEdge(keys.find("C"), keys.find("A")));
+		assertDescendants(keys, closure, "A", "B", "C", "D", "E");
+		assertDescendants(keys, closure, "C", "D", "E");
+		assertDescendants(keys, closure, "X", "A", "B", "C", "D", "E");
+
+		closure.removeEdge(keys.find("D"), keys.find("E"));
+		assertDescendants(keys, closure, "X", "A", "B", "C", "D");
+		assertFalse("D should no longer be a parent", closure.isParent(keys.find("D")));
+	}
+
+	/**
+	 * Test removing a node in a cycle.
+	 */
+	@Test
+	public void testRemoveNode() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B", "B C", "C A D", "D E"));
+		KeyTable keys = graph.getKeys();
+		IncrementalClosure closure = new IncrementalClosure(graph, new TraversalClosureEngine().calculate(graph));
+
+		closure.removeNode(keys.find("C"));
+		assertDescendants(keys, closure, "A", "B");
+		assertDescendants(keys, closure, "B");
+		assertDescendants(keys, closure, "C");
+		assertDescendants(keys, closure, "D", "E");
+		assertFalse("C should no longer be a parent", closure.isParent(keys.find("C")));
+	}
+
+	/**
+	 * Test adding new keys one at a time grows the per node arrays by doubling, not on every key.
+	 */
+	@Test
+	public void testAddKeys() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B"));
+		KeyTable keys = graph.getKeys();
+		IncrementalClosure closure = new IncrementalClosure(graph, new TraversalClosureEngine().calculate(graph));
+
+		int previous = keys.find("B");
+		for (int i = 0; i < 5000; i++) {
+			int node = keys.intern("K" + i);
+			closure.addEdge(previous, node);
+			previous = node;
+			assertTrue("Capacity " + closure.capacity() + " too large for " + closure.nodeCount() + " nodes",
+					closure.capacity() <= 2 * closure.nodeCount());
+		}
+		assertEquals("Size of A not as expected", 5001, closure.size(keys.find("A")));
+	}
+
+	/**
+	 * Test random updates against the closure of the same updates made to a GraphBuilder, starting from the
+	 * id lists the closure takes over and from bitsets it reads the unchanged nodes from.
+	 */
+	@Test
+	public void testRandomUpdates() {
+		randomUpdates(new TraversalClosureEngine());
+		randomUpdates(new BitSetClosureEngine());
+	}
+
+	private static void randomUpdates(ClosureEngine engine) {
+		Random random = new Random(10);
+		int nodeCount = 40;
+		GraphBuilder builder = TestGraphs.randomBuilder(random, nodeCount, 60, false);
+		DependencyGraph graph = builder.build();
+		IncrementalClosure closure = new IncrementalClosure(graph, engine.calculate(graph));
+
+		for (int update = 0; update < 400; update++) {
+			int parent = random.nextInt(nodeCount);
+			int child = random.nextInt(nodeCount);
+			int operation = random.nextInt(10);
+			if (operation < 5) {
+				builder.addParent(parent);
+				builder.addEdge(parent, child);
+				closure.addEdge(parent, child);
+			} else if (operation < 9) {
+				builder.removeEdge(parent, child);
+				closure.removeEdge(parent, child);
+			} else {
+				builder.removeNode(parent);
+				closure.removeNode(parent);
+			}
+
+			DependencyGraph expectedGraph = builder.build();
+			Closure expected = new TraversalClosureEngine().calculate(expectedGraph);
+			for (int node = 0; node < nodeCount; node++) {
+				int[] expectedDescendants = expected.descendants(node);
+				Arrays.sort(expectedDescendants);
+				int[] actualDescendants = closure.descendants(node);
+				Arrays.sort(actualDescendants);
+				assertArrayEquals("Descendants of " + node + " not as expected after update " + update,
+						expectedDescendants, actualDescendants);
+				assertEquals("Parent " + node + " not as expected after update " + update,
+						expectedGraph.isParent(node), closure.isParent(node));
+			}
+		}
+	}
+
+	/**
+	 * Assert the descendants of key match the expected keys.
+	 */
+	private static void assertDescendants(KeyTable keys, Closure closure, String key, String... expected) {
+		int node = keys.find(key);
+		String[] actual = new String[closure.size(node)];
+		int i = 0;
+		for (int descendant : closure.descendants(node)) {
+			actual[i++] = keys.getKey(descendant);
+		}
+		Arrays.sort(actual);
+		assertArrayEquals("Descendants of " + key + " not as expected", expected, actual);
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * The jUnit tests for InputParser.
+ * 
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class InputParserTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/** 
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.OFF);
+	}
+
+	/**
+	 * Test that runs of spaces & tabs, leading delimiters and carriage returns separate the fields.
+	 */
+	@Test
+	public void testDelimiters() {
+		GraphBuilder builder = new GraphBuilder();
+		InputParser parser = new InputParser(builder);
+		parser.parse(bytes("A  B\tC\r\n\t B   C \n"), true);
+		
+		DependencyGraph graph = builder.build();
+		KeyTable keys = graph.getKeys();
+		assertEquals("Key count not as expected", 3, keys.size());
+		assertEquals("Edge count not as expected", 3, graph.edgeCount());
+		assertTrue("B should be a parent", graph.isParent(keys.find("B")));
+		assertEquals("Line count not as expected", 2, parser.getLineNumber());
+	}
+
+	/**
+	 * Test that a row split across two buffers is completed by the second buffer.
+	 */
+	@Test
+	public void testSplitBuffers() {
+		GraphBuilder builder = new GraphBuilder();
+		InputParser parser = new InputParser(builder);
+		
+		ByteBuffer first = bytes("A B\nB C");
+		parser.parse(first, false);
+		assertEquals("Incomplete row should be left in the buffer", 4, first.position());
+		
+		parser.parse(bytes("B C D"), true);
+		DependencyGraph graph = builder.build();
+		assertEquals("Edge count not as expected", 3, graph.edgeCount());
+		assertEquals("Line count not as expected", 2, parser.getLineNumber());
+	}
+
+	/**
+	 * Test that rows without dependencies are skipped and counted, and blank lines are ignored.
+	 */
+	@Test
+	public void testInvalidRows() {
+		GraphBuilder builder = new GraphBuilder();
+		InputParser parser = new InputParser(builder);
+		parser.parse(bytes("W\n\n   \nA B\n"), true);
+		
+		assertEquals("Error count not as expected", 1, parser.getErrorCount());
+		assertEquals("Invalid key should not be interned", -1, builder.getKeys().find("W"));
+		assertEquals("Line count not as expected", 4, parser.getLineNumber());
+	}
+
+	/**
+	 * Test that a memory mapped file gives the same output as the same rows passed as Strings.
+	 */
+	@Test
+	public void testParseFile() throws IOException {
+		File file = File.createTempFile("InputParserTest", ".dat");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "A B C\nB C E\nC G\nD A F\nE F\nF H".getBytes(StandardCharsets.UTF_8));
+		
+		DependencyEvaluator de = new DependencyEvaluator();
+		de.loadInputFile(file.toPath());
+		assertEquals("Output not as expected", "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n", 
+				de.generateOutput());
+	}
+
+	private static ByteBuffer bytes(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test that parsing ranges of a file on several threads gives the same ids, edges and line count
+	 * as parsing it on one thread.
+	 */
+	@Test
+	public void testChunkedParse() throws IOException {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			input.append("N").append(i % 300).append("  N").append((i * 7) % 500).append("\tN").append(i % 11).append("\n");
+			if (i % 500 == 0) {
+				input.append("W").append(i).append("\n");
+			}
+		}
+		File file = File.createTempFile("InputParserTest", ".dat");
+		file.deleteOnExit();
+		Files.write(file.toPath(), input.toString().getBytes(StandardCharsets.UTF_8));
+		
+		GraphBuilder sequentialBuilder = new GraphBuilder();
+		InputParser sequential = new InputParser(sequentialBuilder);
+		sequential.parseFile(file.toPath());
+		DependencyGraph expected = sequentialBuilder.build();
+		
+		GraphBuilder chunkedBuilder = new GraphBuilder();
+		ChunkedFileParser chunked = new ChunkedFileParser(chunkedBuilder, 4);
+		chunked.setMinChunk(1000);
+		chunked.parseFile(file.toPath());
+		DependencyGraph actual = chunkedBuilder.build();
+		
+		assertEquals("Line count not as expected", sequential.getLineNumber(), chunked.getLineNumber());
+		assertEquals("Error count not as expected", sequential.getErrorCount(), chunked.getErrorCount());
+		assertEquals("Node count not as expected", expected.nodeCount(), actual.nodeCount());
+		assertEquals("Edge count not as expected", expected.edgeCount(), actual.edgeCount());
+		for (int node = 0; node < expected.nodeCount(); node++) {
+			assertEquals("Key not as expected", expected.getKeys().getKey(node), actual.getKeys().getKey(node));
+			assertEquals("Parent not as expected", expected.isParent(node), actual.isParent(node));
+			assertEquals("Child count not as expected", expected.childEnd(node) - expected.childStart(node), 
+					actual.childEnd(node) - actual.childStart(node));
+		}
+	}
+}
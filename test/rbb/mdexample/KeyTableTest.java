@@ -0,0 +1,125 @@
+/**
+ * The jUnit tests for KeyTable and GraphBuilder.
+ * 
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class KeyTableTest {
+
+	/**
+	 * Test that interning the same key returns the same id and new keys get the next id.
+	 */
+	@Test
+	public void testIntern() {
+		KeyTable keys = new KeyTable();
+		
+		assertEquals("First key id not as expected", 0, keys.intern("A"));
+		assertEquals("Second key id not as expected", 1, keys.intern("B"));
+		assertEquals("Repeated key id not as expected", 0, keys.intern("A"));
+		assertEquals("KeyTable size not as expected", 2, keys.size());
+		assertEquals("Key not as expected", "B", keys.getKey(1));
+	}
+
+	/**
+	 * Test that the String and byte forms of a key, including non ASCII keys, map to the same id.
+	 */
+	@Test
+	public void testInternBytes() {
+		KeyTable keys = new KeyTable();
+		int id = keys.intern("Grüße");
+		byte[] bytes = "xGrüßex".getBytes(StandardCharsets.UTF_8);
+		
+		assertEquals("Byte key id not as expected", id, keys.intern(bytes, 1, bytes.length - 2));
+		assertEquals("Key not as expected", "Grüße", keys.getKey(id));
+		assertEquals("Missing key should not be found", -1, keys.find("missing"));
+	}
+
+	/**
+	 * Test that ids stay stable while the table grows past its initial size.
+	 */
+	@Test
+	public void testGrowth() {
+		KeyTable keys = new KeyTable();
+		for (int i = 0; i < 5000; i++) {
+			assertEquals("Key id not as expected", i, keys.intern("key" + i));
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals("Key id not as expected after growth", i, keys.find("key" + i));
+		}
+	}
+
+	/**
+	 * Test a shared table keeps the keys it was shared with while the table it shares grows and rehashes.
+	 */
+	@Test
+	public void testShare() {
+		KeyTable keys = new KeyTable();
+		for (int i = 0; i < 100; i++) {
+			keys.intern("key" + i);
+		}
+		KeyTable shared = keys.share();
+		for (int i = 100; i < 5000; i++) {
+			keys.intern("key" + i);
+		}
+		assertEquals("Shared size not as expected", 100, shared.size());
+		for (int i = 0; i < 5000; i++) {
+			byte[] bytes = ("key" + i).getBytes(StandardCharsets.UTF_8);
+			assertEquals("Shared id not as expected", i < 100 ? i : -1, shared.find(ByteBuffer.wrap(bytes), 0, bytes.length));
+		}
+		assertEquals("Shared key not as expected", "key99", shared.getKey(99));
+		assertEquals("Existing key not interned", 7, shared.intern("key7"));
+		try {
+			shared.intern("key100");
+			fail("Interned into a shared table");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Test that sortedIds() returns the ids in key order.
+	 */
+	@Test
+	public void testSortedIds() {
+		KeyTable keys = new KeyTable();
+		keys.intern("C");
+		keys.intern("A");
+		keys.intern("B");
+		
+		assertArrayEquals("Sorted ids not as expected", new int[] {1, 2, 0}, keys.sortedIds());
+	}
+
+	/**
+	 * Test that the builder combines repeated rows and removes duplicate edges.
+	 */
+	@Test
+	public void testBuildGraph() {
+		GraphBuilder builder = new GraphBuilder();
+		KeyTable keys = builder.getKeys();
+		int a = keys.intern("A");
+		int b = keys.intern("B");
+		int c = keys.intern("C");
+		builder.addParent(a);
+		builder.addEdge(a, c);
+		builder.addEdge(a, b);
+		builder.addEdge(a, c);
+		
+		DependencyGraph graph = builder.build();
+		
+		assertEquals("Node count not as expected", 3, graph.nodeCount());
+		assertEquals("Edge count not as expected", 2, graph.edgeCount());
+		assertTrue("A should be a parent", graph.isParent(a));
+		assertFalse("B should not be a parent", graph.isParent(b));
+		assertEquals("Children of A not as expected", 2, graph.childEnd(a) - graph.childStart(a));
+		assertEquals("First child of A not as expected", b, graph.targets()[graph.childStart(a)]);
+		assertEquals("B should have no children", graph.childStart(b), graph.childEnd(b));
+	}
+}
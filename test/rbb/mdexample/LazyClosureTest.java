@@ -0,0 +1,116 @@
+/**
+ * The jUnit tests for LazyClosure.
+ *
+ * The lazily calculated descendants must match those of the TraversalClosureEngine whatever is in the cache.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LazyClosureTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test queries on a graph with a cycle, and that repeated queries come from the cache.
+	 */
+	@Test
+	public void testQueries() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B", "B C", "C A D", "D E", "X A"));
+		KeyTable keys = graph.getKeys();
+		LazyClosure closure = new LazyClosure(graph);
+
+		assertEquals("Size of D not as expected", 1, closure.size(keys.find("D")));
+		assertTrue("A should reach itself", closure.contains(keys.find("A"), keys.find("A")));
+		assertEquals("Size of X not as expected", 5, closure.size(keys.find("X")));
+		assertEquals("Size of E not as expected", 0, closure.size(keys.find("E")));
+		assertEquals("Misses not as expected", 3, closure.getMisses());
+
+		closure.size(keys.find("X"));
+		closure.size(keys.find("A"));
+		assertEquals("Hits not as expected", 2, closure.getHits());
+		assertEquals("Cached ids not as expected", 1 + 5 + 5, closure.getCachedIds());
+	}
+
+	/**
+	 * Test the reverse graph, and ancestor queries on it, on a graph with a cycle.
+	 */
+	@Test
+	public void testReverse() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B C", "B C", "C A D", "D E", "X A"));
+		KeyTable keys = graph.getKeys();
+		DependencyGraph reverse = graph.reverse();
+		assertSame("Reverse of the reverse not the graph", graph, reverse.reverse());
+		assertEquals("Reverse edge count not as expected", graph.edgeCount(), reverse.edgeCount());
+
+		int c = keys.find("C");
+		int[] parents = Arrays.copyOfRange(reverse.targets(), reverse.childStart(c), reverse.childEnd(c));
+		assertArrayEquals("Parents of C not as expected", new int[] { keys.find("A"), keys.find("B") }, parents);
+		assertTrue("E should be a parent in the reverse graph", reverse.isParent(keys.find("E")));
+		assertFalse("X should not be a parent in the reverse graph", reverse.isParent(keys.find("X")));
+
+		LazyClosure ancestors = new LazyClosure(reverse);
+		assertEquals("Ancestors of E not as expected", 5, ancestors.size(keys.find("E")));
+		assertFalse("X should not have ancestors", ancestors.contains(keys.find("X"), keys.find("A")));
+	}
+
+	/**
+	 * Test that a batch query is the union of the single queries, with and without cached answers.
+	 */
+	@Test
+	public void testBatchQueries() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A B", "B C", "D E", "E F", "G A"));
+		KeyTable keys = graph.getKeys();
+		LazyClosure closure = new LazyClosure(graph);
+		int[] nodes = { keys.find("B"), keys.find("D"), keys.find("F") };
+		int[] expected = { keys.find("C"), keys.find("E"), keys.find("F") };
+		Arrays.sort(expected);
+
+		assertArrayEquals("Batch descendants not as expected", expected, closure.descendants(nodes));
+		assertEquals("Batch query should not be cached", 0, closure.getCachedIds());
+		closure.size(keys.find("D"));
+		assertArrayEquals("Batch descendants with a cached node not as expected", expected, closure.descendants(nodes));
+	}
+
+	/**
+	 * Test random queries on random cyclic graphs with a cache small enough to keep evicting.
+	 */
+	@Test
+	public void testRandomQueries() {
+		Random random = new Random(11);
+		for (int graphNumber = 0; graphNumber < 20; graphNumber++) {
+			int nodeCount = 60;
+			DependencyGraph graph = TestGraphs.randomGraph(random, nodeCount, 90);
+			Closure expected = new TraversalClosureEngine().calculate(graph);
+			int cacheSize = 100;
+			LazyClosure closure = new LazyClosure(graph, cacheSize);
+
+			for (int query = 0; query < 200; query++) {
+				int node = random.nextInt(nodeCount);
+				int[] expectedDescendants = expected.descendants(node);
+				Arrays.sort(expectedDescendants);
+				assertArrayEquals("Descendants of " + node + " not as expected in graph " + graphNumber,
+						expectedDescendants, closure.descendants(node));
+				assertTrue("Cache larger than its size", closure.getCachedIds() <= cacheSize);
+			}
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * The jUnit tests for the closures stored off the heap by the OffHeapClosureEngine.
+ *
+ * The off heap closures must hold the same descendants as the BitSetClosureEngine calculates, in direct and
+ * mapped buffers, and their memory must be freed when the evaluator is cleared, closed or updated.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class OffHeapClosureTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+
+	private final static String OUTPUT = "A  B C E F G H\nB  C E F G H\nC  G\nD  A B C E F G H\nE  F H\nF  H\n";
+
+	private Path mDirectory;
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		mDirectory = Files.createTempDirectory("OffHeapClosureTest");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(mDirectory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(mDirectory);
+	}
+
+	/**
+	 * Test the output of each bitset mode is the same in each storage.
+	 */
+	@Test
+	public void testSample() {
+		for (ClosureMode mode : new ClosureMode[] { ClosureMode.BITSET, ClosureMode.PARALLEL, ClosureMode.SORTED }) {
+			for (ClosureStorage storage : ClosureStorage.values()) {
+				DependencyEvaluator de = new DependencyEvaluator(INPUT);
+				de.setClosureMode(mode);
+				de.setStorage(storage);
+				de.setScratchDirectory(mDirectory);
+				assertEquals("Off heap not as expected for " + mode + " " + storage, storage != ClosureStorage.HEAP,
+						de.isOffHeap());
+				assertEquals("Output not as expected for " + mode + " " + storage, OUTPUT, de.generateOutput());
+				assertTrue("Calculated dependsOn not as expected for " + mode + " " + storage, de.dependsOn("D", "H"));
+				assertEquals("Calculated descendants not as expected for " + mode + " " + storage,
+						Arrays.asList("F", "H"), de.descendantsOf("E"));
+				de.close();
+				assertEquals("Calculated after close for " + mode + " " + storage, storage == ClosureStorage.HEAP,
+						de.isCalculated());
+				assertEquals("Scratch file left for " + mode + " " + storage, 0, fileCount());
+			}
+		}
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setStorage(ClosureStorage.DIRECT);
+		assertFalse("Traversal mode off heap", de.isOffHeap());
+	}
+
+	/**
+	 * Test the off heap closures of random graphs with circular references hold the same descendants as the
+	 * closures on the heap, merged on one thread or several.
+	 */
+	@Test
+	public void testRandom() throws IOException {
+		Random random = new Random(25);
+		for (int round = 0; round < 20; round++) {
+			int nodeCount = 500 + random.nextInt(500);
+			DependencyGraph graph = TestGraphs.randomGraph(random, nodeCount, random.nextInt(nodeCount * 2));
+			Closure expected = new BitSetClosureEngine().calculate(graph);
+			try (OffHeapStore direct = OffHeapStore.direct(); OffHeapStore mapped = OffHeapStore.mapped(mDirectory)) {
+				Closure[] closures = { new OffHeapClosureEngine(direct).calculate(graph),
+						new OffHeapClosureEngine(mapped, 4).calculate(graph) };
+				for (Closure closure : closures) {
+					for (int node = 0; node < nodeCount; node++) {
+						int[] descendants = expected.descendants(node);
+						assertEquals("Size not as expected", descendants.length, closure.size(node));
+						assertArrayEquals("Descendants not as expected", descendants, closure.descendants(node));
+						int other = random.nextInt(nodeCount);
+						assertEquals("Contains not as expected", expected.contains(node, other), closure.contains(node, other));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test the memory is freed when the store is closed, and the closure can not be used afterwards.
+	 */
+	@Test
+	public void testClose() throws IOException {
+		DependencyGraph graph = ClosureEngineTest.createGraph(INPUT);
+		OffHeapStore store = OffHeapStore.mapped(mDirectory);
+		Closure closure = new OffHeapClosureEngine(store).calculate(graph);
+		assertTrue("Store is not mapped", store.isMapped());
+		assertTrue("Nothing allocated", store.allocatedBytes() > 0);
+		assertEquals("Closure bytes not as expected", store.allocatedBytes(), closure.memoryBytes());
+		assertEquals("Size not as expected", 7, closure.size(graph.getKeys().find("D")));
+		store.close();
+		assertTrue("Store not closed", store.isClosed());
+		assertEquals("Scratch file not deleted", 0, fileCount());
+		try {
+			closure.size(0);
+			fail("Closure used after it was freed");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			store.allocate(8);
+			fail("Allocated from a closed store");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		// Closing again does nothing.
+		store.close();
+	}
+
+	/**
+	 * Test the evaluator frees the closure when it is cleared or updated, and calculates it again when needed.
+	 */
+	@Test
+	public void testLifecycle() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setClosureMode(ClosureMode.BITSET);
+		de.setStorage(ClosureStorage.MAPPED);
+		de.setScratchDirectory(mDirectory);
+		de.calculate();
+		de.calculate();
+		assertTrue("Not calculated", de.isCalculated());
+
+		// An update frees the closure instead of updating it.
+		de.addEdge("H", "Z");
+		assertFalse("Update kept the off heap closure", de.isCalculated());
+		assertEquals("Output after update not as expected",
+				"A  B C E F G H Z\nB  C E F G H Z\nC  G\nD  A B C E F G H Z\nE  F H Z\nF  H Z\nH  Z\n", de.generateOutput());
+
+		de.close();
+		assertFalse("Close kept the closure", de.isCalculated());
+		assertEquals("Output after close not as expected", "A  B C E F G H Z\n", de.generateOutput().substring(0, 17));
+		assertTrue("Not calculated again", de.isCalculated());
+		de.clear();
+		assertFalse("Clear kept the closure", de.isCalculated());
+		assertEquals("Output after clear not as expected", "", de.generateOutput());
+
+		de.setInputData(INPUT);
+		de.setStorage(ClosureStorage.HEAP);
+		assertEquals("Heap output not as expected", OUTPUT, de.generateOutput());
+		de.close();
+		assertTrue("Close freed the heap closure", de.isCalculated());
+		assertEquals("Scratch file left", 0, fileCount());
+	}
+
+	/**
+	 * Test the closures off the heap are not shared by snapshots.
+	 */
+	@Test
+	public void testSnapshot() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		de.setClosureMode(ClosureMode.BITSET);
+		de.setStorage(ClosureStorage.DIRECT);
+		try {
+			de.snapshot(1);
+			fail("Off heap snapshot accepted");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			new ConcurrentDependencyEvaluator(de);
+			fail("Off heap concurrent evaluator accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Returns the number of files in the scratch directory.
+	 */
+	private int fileCount() {
+		String[] files = mDirectory.toFile().list();
+		return null == files ? 0 : files.length;
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ * The jUnit tests for the PathFinder and the DependencyEvaluator path queries.
+ *
+ * The shortest paths must be as short as a one way breadth first search finds, the k shortest paths must be
+ * the k shortest of all the simple paths, and the searches must stop at their limits.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PathFinderTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static List<String> INPUT = Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H");
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test the shortest paths between keys of the sample data.
+	 */
+	@Test
+	public void testShortestPath() {
+		DependencyEvaluator de = new DependencyEvaluator(INPUT);
+		assertEquals("D to H not as expected", Arrays.asList("D", "F", "H"), de.shortestPath("D", "H"));
+		assertEquals("D to G not as expected", Arrays.asList("D", "A", "C", "G"), de.shortestPath("D", "G"));
+		assertEquals("A to H not as expected", Arrays.asList("A", "B", "E", "F", "H"), de.shortestPath("A", "H"));
+		assertEquals("B to C not as expected", Arrays.asList("B", "C"), de.shortestPath("B", "C"));
+		assertTrue("H to A found", de.shortestPath("H", "A").isEmpty());
+		assertTrue("A to A found", de.shortestPath("A", "A").isEmpty());
+		assertTrue("Unknown key found", de.shortestPath("A", "Z").isEmpty());
+		assertFalse("Calculated for a path", de.isCalculated());
+	}
+
+	/**
+	 * Test the path from a key to itself is its shortest circular reference.
+	 */
+	@Test
+	public void testCircular() {
+		DependencyEvaluator de = new DependencyEvaluator(Arrays.asList("A B", "B C", "C A D", "D D"));
+		assertEquals("A to A not as expected", Arrays.asList("A", "B", "C", "A"), de.shortestPath("A", "A"));
+		assertEquals("D to D not as expected", Arrays.asList("D", "D"), de.shortestPath("D", "D"));
+		assertEquals("B to D not as expected", Arrays.asList("B", "C", "D"), de.shortestPath("B", "D"));
+	}
+
+	/**
+	 * Test the k shortest paths are returned shortest first, and no more than there are.
+	 */
+	@Test
+	public void testPathsBetween() {
+		DependencyEvaluator de = new DependencyEvaluator(Arrays.asList("A B C", "B D", "C D E", "E D", "D F"));
+		List<List<String>> paths = de.pathsBetween("A", "F", 5);
+		assertEquals("Path count not as expected", 3, paths.size());
+		assertEquals("Shortest paths not as expected",
+				new HashSet<>(Arrays.asList(Arrays.asList("A", "B", "D", "F"), Arrays.asList("A", "C", "D", "F"))),
+				new HashSet<>(paths.subList(0, 2)));
+		assertEquals("Longest path not as expected", Arrays.asList("A", "C", "E", "D", "F"), paths.get(2));
+		assertEquals("One path not as expected", paths.subList(0, 1), de.pathsBetween("A", "F", 1));
+
+		de = new DependencyEvaluator(Arrays.asList("A B C", "B A", "C A"));
+		assertEquals("Circular path count not as expected", 2, de.pathsBetween("A", "A", 5).size());
+		try {
+			de.pathsBetween("A", "A", 0);
+			fail("Zero paths accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Test the shortest paths on random graphs are valid and as short as a one way search finds.
+	 */
+	@Test
+	public void testRandomShortest() {
+		Random random = new Random(23);
+		for (int round = 0; round < 20; round++) {
+			DependencyGraph graph = TestGraphs.randomGraph(random, 200, 300);
+			PathFinder finder = new PathFinder(graph);
+			for (int from = 0; from < graph.nodeCount(); from += 7) {
+				int[] distance = distances(graph, from);
+				for (int to = 0; to < graph.nodeCount(); to++) {
+					int[] path = finder.shortestPath(from, to);
+					if (distance[to] < 0) {
+						assertNull("Path found to an unreachable node", path);
+					} else {
+						assertNotNull("Path not found to a reachable node", path);
+						assertEquals("Path not shortest", distance[to], path.length - 1);
+						assertPath(graph, from, to, path);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test the k shortest paths on small random graphs are the k shortest of all the simple paths.
+	 */
+	@Test
+	public void testRandomPaths() {
+		Random random = new Random(29);
+		for (int round = 0; round < 50; round++) {
+			DependencyGraph graph = TestGraphs.randomGraph(random, 8, 20);
+			PathFinder finder = new PathFinder(graph);
+			for (int from = 0; from < graph.nodeCount(); from++) {
+				for (int to = 0; to < graph.nodeCount(); to++) {
+					List<Integer> lengths = simplePathLengths(graph, from, to);
+					List<int[]> paths = finder.shortestPaths(from, to, 6);
+					assertEquals("Path count not as expected", Math.min(6, lengths.size()), paths.size());
+					Set<List<Integer>> distinct = new HashSet<>();
+					for (int i = 0; i < paths.size(); i++) {
+						int[] path = paths.get(i);
+						assertEquals("Path " + i + " length not as expected", (int) lengths.get(i), path.length - 1);
+						assertPath(graph, from, to, path);
+						List<Integer> nodes = new ArrayList<>();
+						for (int node : path) {
+							nodes.add(node);
+						}
+						assertTrue("Path repeated", distinct.add(nodes));
+						// Only the ends of a circular path are the same node.
+						assertEquals("Path not simple", path.length - (from == to ? 1 : 0),
+								new HashSet<>(nodes).size());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test the searches stop when they visit too many keys or take too long.
+	 */
+	@Test
+	public void testLimits() {
+		GraphBuilder builder = new GraphBuilder();
+		int length = 200000;
+		for (int i = 0; i < length; i++) {
+			int parent = builder.getKeys().intern("N" + i);
+			builder.addParent(parent);
+			builder.addEdge(parent, builder.getKeys().intern("N" + (i + 1)));
+		}
+		DependencyGraph graph = builder.build();
+		assertEquals("Chain path not as expected", length + 1, new PathFinder(graph).shortestPath(0, length).length);
+		try {
+			new PathFinder(graph, 100, 10000).shortestPath(0, length);
+			fail("Visited limit not reached");
+		} catch (SearchLimitException e) {
+			assertTrue("Message not as expected: " + e.getMessage(), e.getMessage().contains("100 keys"));
+		}
+		try {
+			new PathFinder(graph, length * 2, 1).shortestPaths(0, length, 2);
+			fail("Time limit not reached");
+		} catch (SearchLimitException e) {
+			assertTrue("Message not as expected: " + e.getMessage(), e.getMessage().contains("out of time"));
+		}
+
+		DependencyEvaluator de = new DependencyEvaluator(Arrays.asList("A B", "B C", "C D"));
+		de.setPathMaxVisited(3);
+		try {
+			de.shortestPath("A", "D");
+			fail("Evaluator visited limit not reached");
+		} catch (SearchLimitException e) {
+			// Expected.
+		}
+		de.setPathMaxVisited(PathFinder.DEFAULT_MAX_VISITED);
+		assertEquals("Path not found with the default limit", Arrays.asList("A", "B", "C", "D"), de.shortestPath("A", "D"));
+	}
+
+	/**
+	 * Returns the length of the shortest path of at least one edge from the node to every node, -1 if none.
+	 */
+	private static int[] distances(DependencyGraph graph, int from) {
+		int[] distance = new int[graph.nodeCount()];
+		Arrays.fill(distance, -1);
+		int[] queue = new int[graph.nodeCount()];
+		int head = 0;
+		int tail = 0;
+		int[] targets = graph.targets();
+		for (int i = graph.childStart(from); i < graph.childEnd(from); i++) {
+			if (distance[targets[i]] < 0) {
+				distance[targets[i]] = 1;
+				queue[tail++] = targets[i];
+			}
+		}
+		while (head < tail) {
+			int node = queue[head++];
+			for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+				if (distance[targets[i]] < 0) {
+					distance[targets[i]] = distance[node] + 1;
+					queue[tail++] = targets[i];
+				}
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Returns the lengths of every simple path from the node to the other node, shortest first.
+	 */
+	private static List<Integer> simplePathLengths(DependencyGraph graph, int from, int to) {
+		List<Integer> lengths = new ArrayList<>();
+		boolean[] onPath = new boolean[graph.nodeCount()];
+		onPath[from] = true;
+		addPathLengths(graph, from, to, 0, onPath, lengths);
+		Collections.sort(lengths);
+		return lengths;
+	}
+
+	private static void addPathLengths(DependencyGraph graph, int node, int to, int length, boolean[] onPath,
+			List<Integer> lengths) {
+		int[] targets = graph.targets();
+		for (int i = graph.childStart(node); i < graph.childEnd(node); i++) {
+			int child = targets[i];
+			if (child == to) {
+				lengths.add(length + 1);
+			} else if (!onPath[child]) {
+				onPath[child] = true;
+				addPathLengths(graph, child, to, length + 1, onPath, lengths);
+				onPath[child] = false;
+			}
+		}
+	}
+
+	/**
+	 * Assert the path goes from the node to the other node along edges of the graph.
+	 */
+	private static void assertPath(DependencyGraph graph, int from, int to, int[] path) {
+		assertEquals("Path start not as expected", from, path[0]);
+		assertEquals("Path end not as expected", to, path[path.length - 1]);
+		int[] targets = graph.targets();
+		for (int p = 1; p < path.length; p++) {
+			boolean edge = false;
+			for (int i = graph.childStart(path[p - 1]); i < graph.childEnd(path[p - 1]); i++) {
+				edge |= targets[i] == path[p];
+			}
+			assertTrue("Path step is not an edge", edge);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * The jUnit tests for ReachabilityIndex.
+ *
+ * Every pair of nodes must give the same answer as the closure from the TraversalClosureEngine.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ReachabilityIndexTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test the README example with a circular reference added.
+	 */
+	@Test
+	public void testDependsOn() {
+		DependencyGraph graph = ClosureEngineTest.createGraph(
+				Arrays.asList("A B C", "B C E", "C G", "D A F", "E F", "F H", "H E"));
+		KeyTable keys = graph.getKeys();
+		ReachabilityIndex index = new ReachabilityIndex(graph);
+		assertTrue("D should depend on H", index.dependsOn(keys.find("D"), keys.find("H")));
+		assertTrue("E should depend on itself", index.dependsOn(keys.find("E"), keys.find("E")));
+		assertFalse("A should not depend on itself", index.dependsOn(keys.find("A"), keys.find("A")));
+		assertFalse("C should not depend on E", index.dependsOn(keys.find("C"), keys.find("E")));
+		assertFalse("H should not depend on D", index.dependsOn(keys.find("H"), keys.find("D")));
+	}
+
+	/**
+	 * Test every pair of nodes in random graphs, from sparse & acyclic to dense & cyclic.
+	 */
+	@Test
+	public void testRandomGraphs() {
+		Random random = new Random(13);
+		for (int graphNumber = 0; graphNumber < 30; graphNumber++) {
+			int nodeCount = 80;
+			int edgeCount = 40 + graphNumber * 10;
+			boolean acyclic = graphNumber % 2 == 0;
+			DependencyGraph graph = TestGraphs.randomBuilder(random, nodeCount, edgeCount, acyclic).build();
+			Closure expected = new TraversalClosureEngine().calculate(graph);
+			ReachabilityIndex index = new ReachabilityIndex(graph);
+			for (int node = 0; node < nodeCount; node++) {
+				for (int dependency = 0; dependency < nodeCount; dependency++) {
+					assertEquals("dependsOn(" + node + ", " + dependency + ") not as expected in graph " + graphNumber,
+							expected.contains(node, dependency), index.dependsOn(node, dependency));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * The jUnit tests for SetInterner and the sharing of descendant sets by the closure engines.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SetInternerTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	private final static ClosureEngine[] ENGINES = {
+		new TraversalClosureEngine(),
+		new BitSetClosureEngine(),
+		new ParallelClosureEngine(4)
+	};
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	/**
+	 * Test equal sets are replaced by the first one, and different ones are kept.
+	 */
+	@Test
+	public void testIntern() {
+		SetInterner interner = new SetInterner();
+		int[] ids = { 1, 2, 3 };
+		assertSame("First set not kept", ids, interner.intern(ids));
+		assertSame("Equal set not shared", ids, interner.intern(new int[] { 1, 2, 3 }));
+		assertNotSame("Different set shared", ids, interner.intern(new int[] { 1, 2, 4 }));
+
+		long[] bits = { 14L };
+		assertSame("First bitset not kept", bits, interner.intern(bits));
+		assertSame("Equal bitset not shared", bits, interner.intern(new long[] { 14L }));
+		assertNull("Null not returned as it is", interner.intern((int[]) null));
+
+		assertEquals("Distinct sets not as expected", 3, interner.size());
+		assertEquals("Duplicates not as expected", 2, interner.getDuplicates());
+
+		// Enough sets to grow the table several times.
+		for (int i = 0; i < 10000; i++) {
+			interner.intern(new int[] { i, i + 1 });
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertArrayEquals("Set " + i + " changed", new int[] { i, i + 1 }, interner.intern(new int[] { i, i + 1 }));
+		}
+		assertEquals("Distinct sets not as expected after growing", 10003, interner.size());
+		assertEquals("Duplicates not as expected after growing", 10002, interner.getDuplicates());
+	}
+
+	/**
+	 * Test nodes with the same descendants share one set, so the closure uses less memory than
+	 * one set per node.
+	 */
+	@Test
+	public void testSharedClosures() {
+		// A and B have the same descendants, and so do the members of the C D cycle and E, which only points at it.
+		DependencyGraph graph = ClosureEngineTest.createGraph(Arrays.asList("A C F", "B C F", "C D", "D C", "E D"));
+		int nodeCount = graph.nodeCount();
+		for (ClosureEngine engine : ENGINES) {
+			String name = engine.getClass().getSimpleName();
+			Closure closure = engine.calculate(graph);
+			int[][] lists = new int[nodeCount][];
+			long[][] bits = new long[nodeCount][];
+			for (int node = 0; node < nodeCount; node++) {
+				if (closure.size(node) > 0) {
+					lists[node] = closure.descendants(node);
+					bits[node] = new long[BitSetClosure.words(nodeCount)];
+					for (int descendant : lists[node]) {
+						bits[node][descendant >>> 6] |= 1L << descendant;
+					}
+				}
+			}
+			Closure unshared = closure instanceof IdListClosure ? new IdListClosure(lists) : new BitSetClosure(bits);
+			assertTrue("Shared sets should use less memory for " + name, closure.memoryBytes() < unshared.memoryBytes());
+			assertEquals("Unshared sets not as expected for " + name,
+					SetInterner.memoryBytes(closure instanceof IdListClosure ? lists : bits), unshared.memoryBytes());
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * The jUnit tests for SnapshotCache.
+ *
+ * Whether the result is loaded, updated or calculated, the output must be the same as calculating the input.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SnapshotCacheTest {
+
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	// Enough rows that a few changed rows are updated rather than calculated again.
+	private final static String INPUT = "A B C\nB C E\nC G\nD A F\nE F\nF H\nN1 N2 N3\nN2 N3 N4\nN3 N4 N5\nN4 N5 N6\nN5 N6 A";
+
+	private Path mDirectory;
+
+	/**
+	 * Setup the Logger so that logging level is as expected during junit Tests.
+	 */
+	@BeforeClass
+	public static void init() {
+		LOGGER.setLevel(Level.SEVERE);
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		mDirectory = Files.createTempDirectory("SnapshotCacheTest");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		deleteAll(mDirectory);
+	}
+
+	/**
+	 * Test an unchanged input is loaded, a changed row is updated and a new input is calculated.
+	 */
+	@Test
+	public void testEvaluate() throws IOException {
+		SnapshotCache cache = new SnapshotCache(mDirectory.resolve("cache"));
+		Path input = mDirectory.resolve("input.dat");
+		Files.write(input, INPUT.getBytes(StandardCharsets.UTF_8));
+
+		assertLookup(cache, input, SnapshotCache.Lookup.MISS);
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+
+		Files.write(input, INPUT.replace("E F", "E F Z").getBytes(StandardCharsets.UTF_8));
+		assertLookup(cache, input, SnapshotCache.Lookup.UPDATED);
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+
+		// Removing a row is updated too.
+		Files.write(input, INPUT.replace("\nC G", "").getBytes(StandardCharsets.UTF_8));
+		assertLookup(cache, input, SnapshotCache.Lookup.UPDATED);
+
+		// Too many changes are calculated again.
+		Files.write(input, "P Q\nQ R S\nS P".getBytes(StandardCharsets.UTF_8));
+		assertLookup(cache, input, SnapshotCache.Lookup.MISS);
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+
+		// Going back to the first input finds its snapshot by its hash.
+		Files.write(input, INPUT.getBytes(StandardCharsets.UTF_8));
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+
+		// A snapshot that can not be loaded is deleted and calculated again.
+		Path snapshot = cache.snapshotPath(SnapshotCache.hash(input));
+		Files.write(snapshot, Arrays.copyOf(Files.readAllBytes(snapshot), 20));
+		assertLookup(cache, input, SnapshotCache.Lookup.MISS);
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+	}
+
+	/**
+	 * Test a snapshot whose sections are damaged is deleted and calculated again, not loaded or failed on.
+	 */
+	@Test
+	public void testDamaged() throws IOException {
+		SnapshotCache cache = new SnapshotCache(mDirectory.resolve("cache"));
+		Path input = mDirectory.resolve("input.dat");
+		Files.write(input, INPUT.getBytes(StandardCharsets.UTF_8));
+		assertLookup(cache, input, SnapshotCache.Lookup.MISS);
+
+		Path snapshot = cache.snapshotPath(SnapshotCache.hash(input));
+		byte[] damaged = Files.readAllBytes(snapshot);
+		Arrays.fill(damaged, damaged.length - 48, damaged.length, (byte) 0x7f);
+		Files.write(snapshot, damaged);
+		assertLookup(cache, input, SnapshotCache.Lookup.MISS);
+		assertFalse("Damaged snapshot not replaced", Arrays.equals(damaged, Files.readAllBytes(snapshot)));
+		assertLookup(cache, input, SnapshotCache.Lookup.HIT);
+	}
+
+	/**
+	 * Test the least recently used snapshots are evicted.
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		Path directory = mDirectory.resolve("cache");
+		SnapshotCache cache = new SnapshotCache(directory, 2, SnapshotCache.DEFAULT_MAX_BYTES);
+		Path[] inputs = new Path[3];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = mDirectory.resolve("input" + i + ".dat");
+			Files.write(inputs[i], (INPUT + "\nX" + i + " Y").getBytes(StandardCharsets.UTF_8));
+		}
+		assertLookup(cache, inputs[0], SnapshotCache.Lookup.MISS);
+		assertLookup(cache, inputs[1], SnapshotCache.Lookup.MISS);
+		assertLookup(cache, inputs[2], SnapshotCache.Lookup.MISS);
+		assertFalse("Oldest snapshot not evicted", Files.exists(cache.snapshotPath(SnapshotCache.hash(inputs[0]))));
+		assertLookup(cache, inputs[1], SnapshotCache.Lookup.HIT);
+		assertLookup(cache, inputs[2], SnapshotCache.Lookup.HIT);
+
+		// A cache too small for any snapshot keeps none, but still evaluates.
+		cache = new SnapshotCache(directory, 2, 16);
+		assertLookup(cache, inputs[0], SnapshotCache.Lookup.MISS);
+		assertLookup(cache, inputs[0], SnapshotCache.Lookup.MISS);
+	}
+
+	/**
+	 * Assert the cache is used as expected and gives the same output as calculating the input.
+	 */
+	private static void assertLookup(SnapshotCache cache, Path input, SnapshotCache.Lookup expected) throws IOException {
+		DependencyEvaluator cached = new DependencyEvaluator();
+		assertEquals("Lookup not as expected", expected, cache.evaluate(cached, input));
+		DependencyEvaluator calculated = new DependencyEvaluator();
+		calculated.loadInputFile(input);
+		assertEquals("Output not as expected after " + expected, calculated.generateOutput(), cached.generateOutput());
+	}
+
+	/**
+	 * Delete the directory and everything in it.
+	 */
+	private static void deleteAll(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				if (Files.isDirectory(file)) {
+					deleteAll(file);
+				} else {
+					Files.delete(file);
+				}
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * The random graphs shared by the jUnit tests.
+ *
+ * The nodes are keyed N0, N1, ... in id order, and the same Random gives the same graph.
+ *
+ * @author reed
+ */
+package rbb.mdexample;
+
+import java.util.Random;
+
+final class TestGraphs {
+
+	private TestGraphs() {
+		// Do nothing - only static methods.
+	}
+
+	/**
+	 * Build a random graph with the number of nodes and edges, which may have circular references.
+	 */
+	static DependencyGraph randomGraph(Random random, int nodes, int edges) {
+		return randomBuilder(random, nodes, edges, false).build();
+	}
+
+	/**
+	 * Returns a builder holding a random graph.  Each edge joins two random nodes, and is left out if the
+	 * graph is acyclic and the child's id is not above the parent's, so there may be fewer edges.
+	 *
+	 * @param random   The source of the graph.
+	 * @param nodes    The number of nodes.
+	 * @param edges    The number of edges to try.
+	 * @param acyclic  True for a graph without circular references.
+	 * @return         The builder.
+	 */
+	static GraphBuilder randomBuilder(Random random, int nodes, int edges, boolean acyclic) {
+		GraphBuilder builder = new GraphBuilder();
+		for (int n = 0; n < nodes; n++) {
+			builder.getKeys().intern("N" + n);
+		}
+		for (int e = 0; e < edges; e++) {
+			int parent = random.nextInt(nodes);
+			int child = random.nextInt(nodes);
+			if (acyclic && child <= parent) {
+				continue;
+			}
+			builder.addParent(parent);
+			builder.addEdge(parent, child);
+		}
+		return builder;
+	}
+
+	/**
+	 * Build a random graph of mostly edges to higher ids within the span, with one child in 50 anywhere
+	 * in the graph for the circular references.  Every node but the last is a parent.
+	 *
+	 * @param random    The source of the graph.
+	 * @param nodes     The number of nodes.
+	 * @param children  The number of children of each node.
+	 * @param span      The furthest a child after the node may be.
+	 * @return          The graph.
+	 */
+	static DependencyGraph forwardGraph(Random random, int nodes, int children, int span) {
+		GraphBuilder builder = new GraphBuilder();
+		for (int n = 0; n < nodes; n++) {
+			builder.getKeys().intern("N" + n);
+		}
+		for (int n = 0; n < nodes - 1; n++) {
+			builder.addParent(n);
+			for (int c = 0; c < children; c++) {
+				int child = random.nextInt(50) == 0 ? random.nextInt(nodes)
+						: n + 1 + random.nextInt(Math.min(nodes - n - 1, span));
+				builder.addEdge(n, child);
+			}
+		}
+		return builder.build();
+	}
+}